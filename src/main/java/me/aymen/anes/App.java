@@ -30,8 +30,9 @@ public class App
 
 
                 status = cpu.tick();
-                String message = String.format("%-50s%s", Deassembler
-                        .analyse(status), Deassembler.showStatus(status));
+                String message = String.format("%-50s%s",
+                        Deassembler.analyse(status, bus),
+                        Deassembler.showStatus(status));
                 System.out.println(message + " TICK: " + i);
 
             } catch(Exception e){
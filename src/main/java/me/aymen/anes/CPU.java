@@ -1,19 +1,57 @@
 package me.aymen.anes;
 
+import me.aymen.anes.analysis.Coverage;
+import me.aymen.anes.debug.FlightRecorder;
+import me.aymen.anes.exception.UnsupportedOpcodeException;
 import me.aymen.anes.memory.Bus;
+import me.aymen.anes.metrics.CPUStats;
+import me.aymen.anes.metrics.Profiler;
 import me.aymen.anes.util.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import static me.aymen.anes.AddressMode.*;
 
 public class CPU {
     private static Logger logger = LoggerFactory.getLogger(CPU.class);
 
+    /**
+     * Whether execution counting is compiled in, from the anes.cpu.stats
+     * system property. When false, the JIT removes all counting code
+     */
+    public static final boolean STATS = Boolean.getBoolean("anes.cpu.stats");
+
+    /**
+     * Whether profiling is compiled in, from the anes.cpu.profile system
+     * property
+     */
+    public static final boolean PROFILE =
+            Boolean.getBoolean("anes.cpu.profile");
+
+    /**
+     * Whether coverage tracking is compiled in, from the anes.cpu.coverage
+     * system property
+     */
+    public static final boolean COVERAGE =
+            Boolean.getBoolean("anes.cpu.coverage");
+
     // CPU Components
     private Bus bus;
     private int cycles;
 
+    // Execution counters, or null when not counting
+    private CPUStats stats;
+    // Profiler, or null when not profiling
+    private Profiler profiler;
+    // Coverage maps, or null when not tracking
+    private Coverage coverage;
+    // Last executed instructions, or null when not recording
+    private FlightRecorder recorder;
+
     // Registers
     private int A;          // Accumulator
     private int X;          // X Index
@@ -32,402 +70,408 @@ public class CPU {
     // The value at memory address
     // populated by addressing mode if needed
     private int value;
+    // Whether the executing instruction reads the value at its address
+    private boolean reads;
 
     // All 6502 OPCodes. Unsupported unofficial instructions are
-    // set to null, which will lead to crashing
-    private Inst[] opcodes = new Inst[256];
+    // set to null, and executing them throws an exception. Shared by all
+    // instances, so creating a CPU costs next to nothing
+    private static final Inst[] opcodes = new Inst[256];
 
-    private Function[] addressMode = new Function[AddressMode.SIZE];
+    private static final Function[] addressMode =
+            new Function[AddressMode.SIZE];
 
     // All Address modes
 
-    public CPU(Bus bus) {
-        this.bus = bus;
-        reset();
-
+    static {
         // populates addressModes
-        addressMode[IMPL] =  () -> {};
-        addressMode[ACC] = this::acc;
-        addressMode[IMM] = this::imm;
-        addressMode[ZPG] = this::zpg;
-        addressMode[ZPGX] = this::zpgx;
-        addressMode[ZPGY] = this::zpgy;
-        addressMode[REL] = this::rel;
-        addressMode[ABS] = this::abs;
-        addressMode[ABSX_P] = this::absx;
-        addressMode[ABSX_O] = this::absxPlus;
-        addressMode[ABSY_P] = this::absy;
-        addressMode[ABSY_O] = this::absyPlus;
-        addressMode[IND] = this::ind;
-        addressMode[INDX] = this::indx;
-        addressMode[INDY_P] = this::indy;
-        addressMode[INDY_O] = this::indyPlus;
+        addressMode[IMPL] =  cpu -> {};
+        addressMode[ACC] = CPU::acc;
+        addressMode[IMM] = CPU::imm;
+        addressMode[ZPG] = CPU::zpg;
+        addressMode[ZPGX] = CPU::zpgx;
+        addressMode[ZPGY] = CPU::zpgy;
+        addressMode[REL] = CPU::rel;
+        addressMode[ABS] = CPU::abs;
+        addressMode[ABSX_P] = CPU::absx;
+        addressMode[ABSX_O] = CPU::absxPlus;
+        addressMode[ABSY_P] = CPU::absy;
+        addressMode[ABSY_O] = CPU::absyPlus;
+        addressMode[IND] = CPU::ind;
+        addressMode[INDX] = CPU::indx;
+        addressMode[INDY_P] = CPU::indy;
+        addressMode[INDY_O] = CPU::indyPlus;
 
         // 0x0#
-        opcodes[0x00] = new Inst("BRK", 7, IMPL, this::brk);
-        opcodes[0x01] = new Inst("ORA", 6, INDX, this::ora);
+        opcodes[0x00] = new Inst("BRK", 7, IMPL, CPU::brk);
+        opcodes[0x01] = new Inst("ORA", 6, INDX, CPU::ora);
         opcodes[0x02] = null;
         opcodes[0x03] = null;
         opcodes[0x04] = null;
-        opcodes[0x05] = new Inst("ORA", 3, ZPG, this::ora);
-        opcodes[0x06] = new Inst("ASL", 5, ZPG, this::aslM);
+        opcodes[0x05] = new Inst("ORA", 3, ZPG, CPU::ora);
+        opcodes[0x06] = new Inst("ASL", 5, ZPG, CPU::aslM);
         opcodes[0x07] = null;
-        opcodes[0x08] = new Inst("PHP", 3, IMPL, this::php);
-        opcodes[0x09] = new Inst("ORA", 2, IMM, this::ora);
-        opcodes[0x0A] = new Inst("ASL", 2, ACC, this::aslA);
+        opcodes[0x08] = new Inst("PHP", 3, IMPL, CPU::php);
+        opcodes[0x09] = new Inst("ORA", 2, IMM, CPU::ora);
+        opcodes[0x0A] = new Inst("ASL", 2, ACC, CPU::aslA);
         opcodes[0x0B] = null;
         opcodes[0x0C] = null;
-        opcodes[0x0D] = new Inst("ORA", 4, ABS, this::ora);
-        opcodes[0x0E] = new Inst("ASL", 6, ABS, this::aslM);
+        opcodes[0x0D] = new Inst("ORA", 4, ABS, CPU::ora);
+        opcodes[0x0E] = new Inst("ASL", 6, ABS, CPU::aslM);
         opcodes[0x0F] = null;
 
         // 0x1#
-        opcodes[0x10] = new Inst("BPL", 2, REL, this::bpl);
-        opcodes[0x11] = new Inst("ORA", 5, INDY_P, this::ora);
+        opcodes[0x10] = new Inst("BPL", 2, REL, CPU::bpl);
+        opcodes[0x11] = new Inst("ORA", 5, INDY_P, CPU::ora);
         opcodes[0x12] = null;
         opcodes[0x13] = null;
         opcodes[0x14] = null;
-        opcodes[0x15] = new Inst("ORA", 4, ZPGX, this::ora);
-        opcodes[0x16] = new Inst("ASL", 6, ZPGX, this::aslM);
+        opcodes[0x15] = new Inst("ORA", 4, ZPGX, CPU::ora);
+        opcodes[0x16] = new Inst("ASL", 6, ZPGX, CPU::aslM);
         opcodes[0x17] = null;
-        opcodes[0x18] = new Inst("CLC", 2, IMPL, this::clc);
-        opcodes[0x19] = new Inst("ORA", 4, ABSY_P, this::ora);
+        opcodes[0x18] = new Inst("CLC", 2, IMPL, CPU::clc);
+        opcodes[0x19] = new Inst("ORA", 4, ABSY_P, CPU::ora);
         opcodes[0x1A] = null;
         opcodes[0x1B] = null;
         opcodes[0x1C] = null;
-        opcodes[0x1D] = new Inst("ORA", 4, ABSX_P, this::ora);
-        opcodes[0x1E] = new Inst("ASL", 7, ABSX_O, this::aslM);
+        opcodes[0x1D] = new Inst("ORA", 4, ABSX_P, CPU::ora);
+        opcodes[0x1E] = new Inst("ASL", 7, ABSX_O, CPU::aslM);
         opcodes[0x1F] = null;
 
         // 0x2#
-        opcodes[0x20] = new Inst("JSR", 6, ABS, this::jsr);
-        opcodes[0x21] = new Inst("AND", 6, INDX, this::and);
+        opcodes[0x20] = new Inst("JSR", 6, ABS, CPU::jsr);
+        opcodes[0x21] = new Inst("AND", 6, INDX, CPU::and);
         opcodes[0x22] = null;
         opcodes[0x23] = null;
-        opcodes[0x24] = new Inst("BIT", 3, ZPG, this::bit);
-        opcodes[0x25] = new Inst("AND", 3, ZPG, this::and);
-        opcodes[0x26] = new Inst("ROL", 5, ZPG, this::rolM);
+        opcodes[0x24] = new Inst("BIT", 3, ZPG, CPU::bit);
+        opcodes[0x25] = new Inst("AND", 3, ZPG, CPU::and);
+        opcodes[0x26] = new Inst("ROL", 5, ZPG, CPU::rolM);
         opcodes[0x27] = null;
-        opcodes[0x28] = new Inst("PLP", 4, IMPL, this::plp);
-        opcodes[0x29] = new Inst("AND", 2, IMM, this::and);
-        opcodes[0x2A] = new Inst("ROL", 2, ACC, this::rolA);
+        opcodes[0x28] = new Inst("PLP", 4, IMPL, CPU::plp);
+        opcodes[0x29] = new Inst("AND", 2, IMM, CPU::and);
+        opcodes[0x2A] = new Inst("ROL", 2, ACC, CPU::rolA);
         opcodes[0x2B] = null;
-        opcodes[0x2C] = new Inst("BIT", 4, ABS, this::bit);
-        opcodes[0x2D] = new Inst("AND", 4, ABS, this::and);
-        opcodes[0x2E] = new Inst("ROL", 6, ABS, this::rolM);
+        opcodes[0x2C] = new Inst("BIT", 4, ABS, CPU::bit);
+        opcodes[0x2D] = new Inst("AND", 4, ABS, CPU::and);
+        opcodes[0x2E] = new Inst("ROL", 6, ABS, CPU::rolM);
         opcodes[0x2F] = null;
 
         // 0x3#
-        opcodes[0x30] = new Inst("BMI", 2, REL, this::bmi);
-        opcodes[0x31] = new Inst("AND", 5, INDY_P, this::and);
+        opcodes[0x30] = new Inst("BMI", 2, REL, CPU::bmi);
+        opcodes[0x31] = new Inst("AND", 5, INDY_P, CPU::and);
         opcodes[0x32] = null;
         opcodes[0x33] = null;
         opcodes[0x34] = null;
-        opcodes[0x35] = new Inst("AND", 4, ZPGX, this::and);
-        opcodes[0x36] = new Inst("ROL", 6, ZPGX, this::rolM);
+        opcodes[0x35] = new Inst("AND", 4, ZPGX, CPU::and);
+        opcodes[0x36] = new Inst("ROL", 6, ZPGX, CPU::rolM);
         opcodes[0x37] = null;
-        opcodes[0x38] = new Inst("SEC", 2, IMPL, this::sec);
-        opcodes[0x39] = new Inst("AND", 4, ABSY_P, this::and);
+        opcodes[0x38] = new Inst("SEC", 2, IMPL, CPU::sec);
+        opcodes[0x39] = new Inst("AND", 4, ABSY_P, CPU::and);
         opcodes[0x3A] = null;
         opcodes[0x3B] = null;
         opcodes[0x3C] = null;
-        opcodes[0x3D] = new Inst("AND", 4, ABSX_P, this::and);
-        opcodes[0x3E] = new Inst("ROL", 7, ABSX_O, this::rolM);
+        opcodes[0x3D] = new Inst("AND", 4, ABSX_P, CPU::and);
+        opcodes[0x3E] = new Inst("ROL", 7, ABSX_O, CPU::rolM);
         opcodes[0x3F] = null;
 
         // 0x4#
-        opcodes[0x40] = new Inst("RTI", 6, IMPL, this::rti);
-        opcodes[0x41] = new Inst("EOR", 6, INDX, this::eor);
+        opcodes[0x40] = new Inst("RTI", 6, IMPL, CPU::rti);
+        opcodes[0x41] = new Inst("EOR", 6, INDX, CPU::eor);
         opcodes[0x42] = null;
         opcodes[0x43] = null;
         opcodes[0x44] = null;
-        opcodes[0x45] = new Inst("EOR", 3, ZPG, this::eor);
-        opcodes[0x46] = new Inst("LSR", 5, ZPG, this::lsrM);
+        opcodes[0x45] = new Inst("EOR", 3, ZPG, CPU::eor);
+        opcodes[0x46] = new Inst("LSR", 5, ZPG, CPU::lsrM);
         opcodes[0x47] = null;
-        opcodes[0x48] = new Inst("PHA", 3, IMPL, this::pha);
-        opcodes[0x49] = new Inst("EOR", 2, IMM, this::eor);
-        opcodes[0x4A] = new Inst("LSR", 2, ACC, this::lsrA);
+        opcodes[0x48] = new Inst("PHA", 3, IMPL, CPU::pha);
+        opcodes[0x49] = new Inst("EOR", 2, IMM, CPU::eor);
+        opcodes[0x4A] = new Inst("LSR", 2, ACC, CPU::lsrA);
         opcodes[0x4B] = null;
-        opcodes[0x4C] = new Inst("JMP", 3, ABS, this::jmp);
-        opcodes[0x4D] = new Inst("EOR", 4, ABS, this::eor);
-        opcodes[0x4E] = new Inst("LSR", 6, ABS, this::lsrM);
+        opcodes[0x4C] = new Inst("JMP", 3, ABS, CPU::jmp);
+        opcodes[0x4D] = new Inst("EOR", 4, ABS, CPU::eor);
+        opcodes[0x4E] = new Inst("LSR", 6, ABS, CPU::lsrM);
         opcodes[0x4F] = null;
 
         // 0x5#
-        opcodes[0x50] = new Inst("BVC", 2, REL, this::bvc);
-        opcodes[0x51] = new Inst("EOR", 5, INDY_P, this::eor);
+        opcodes[0x50] = new Inst("BVC", 2, REL, CPU::bvc);
+        opcodes[0x51] = new Inst("EOR", 5, INDY_P, CPU::eor);
         opcodes[0x52] = null;
         opcodes[0x53] = null;
         opcodes[0x54] = null;
-        opcodes[0x55] = new Inst("EOR", 4, ZPGX, this::eor);
-        opcodes[0x56] = new Inst("LSR", 6, ZPGX, this::lsrM);
+        opcodes[0x55] = new Inst("EOR", 4, ZPGX, CPU::eor);
+        opcodes[0x56] = new Inst("LSR", 6, ZPGX, CPU::lsrM);
         opcodes[0x57] = null;
-        opcodes[0x58] = new Inst("CLI", 2, IMPL, this::cli);
-        opcodes[0x59] = new Inst("EOR", 4, ABSY_P, this::eor);
+        opcodes[0x58] = new Inst("CLI", 2, IMPL, CPU::cli);
+        opcodes[0x59] = new Inst("EOR", 4, ABSY_P, CPU::eor);
         opcodes[0x5A] = null;
         opcodes[0x5B] = null;
         opcodes[0x5C] = null;
-        opcodes[0x5D] = new Inst("EOR", 4, ABSX_P, this::eor);
-        opcodes[0x5E] = new Inst("LSR", 7, ABSX_O, this::lsrM);
+        opcodes[0x5D] = new Inst("EOR", 4, ABSX_P, CPU::eor);
+        opcodes[0x5E] = new Inst("LSR", 7, ABSX_O, CPU::lsrM);
         opcodes[0x5F] = null;
 
         // 0x6#
-        opcodes[0x60] = new Inst("RTS", 6, IMPL, this::rts);
-        opcodes[0x61] = new Inst("ADC", 6, INDX, this::adc);
+        opcodes[0x60] = new Inst("RTS", 6, IMPL, CPU::rts);
+        opcodes[0x61] = new Inst("ADC", 6, INDX, CPU::adc);
         opcodes[0x62] = null;
         opcodes[0x63] = null;
         opcodes[0x64] = null;
-        opcodes[0x65] = new Inst("ADC", 3, ZPG, this::adc);
-        opcodes[0x66] = new Inst("ROR", 5, ZPG, this::rorM);
+        opcodes[0x65] = new Inst("ADC", 3, ZPG, CPU::adc);
+        opcodes[0x66] = new Inst("ROR", 5, ZPG, CPU::rorM);
         opcodes[0x67] = null;
-        opcodes[0x68] = new Inst("PLA", 4, IMPL, this::pla);
-        opcodes[0x69] = new Inst("ADC", 2, IMM, this::adc);
-        opcodes[0x6A] = new Inst("ROR", 2, ACC, this::rorA);
+        opcodes[0x68] = new Inst("PLA", 4, IMPL, CPU::pla);
+        opcodes[0x69] = new Inst("ADC", 2, IMM, CPU::adc);
+        opcodes[0x6A] = new Inst("ROR", 2, ACC, CPU::rorA);
         opcodes[0x6B] = null;
-        opcodes[0x6C] = new Inst("JMP", 5, IND, this::jmp);
-        opcodes[0x6D] = new Inst("ADC", 4, ABS, this::adc);
-        opcodes[0x6E] = new Inst("ROR", 6, ABS, this::rorM);
+        opcodes[0x6C] = new Inst("JMP", 5, IND, CPU::jmp);
+        opcodes[0x6D] = new Inst("ADC", 4, ABS, CPU::adc);
+        opcodes[0x6E] = new Inst("ROR", 6, ABS, CPU::rorM);
         opcodes[0x6F] = null;
 
         // 0x7#
-        opcodes[0x70] = new Inst("BVS", 2, REL, this::bvs);
-        opcodes[0x71] = new Inst("ADC", 5, INDY_P, this::adc);
+        opcodes[0x70] = new Inst("BVS", 2, REL, CPU::bvs);
+        opcodes[0x71] = new Inst("ADC", 5, INDY_P, CPU::adc);
         opcodes[0x72] = null;
         opcodes[0x73] = null;
         opcodes[0x74] = null;
-        opcodes[0x75] = new Inst("ADC", 4, ZPGX, this::adc);
-        opcodes[0x76] = new Inst("ROR", 6, ZPGX, this::rorM);
+        opcodes[0x75] = new Inst("ADC", 4, ZPGX, CPU::adc);
+        opcodes[0x76] = new Inst("ROR", 6, ZPGX, CPU::rorM);
         opcodes[0x77] = null;
-        opcodes[0x78] = new Inst("SEI", 2, IMPL, this::sei);
-        opcodes[0x79] = new Inst("ADC", 4, ABSY_P, this::adc);
+        opcodes[0x78] = new Inst("SEI", 2, IMPL, CPU::sei);
+        opcodes[0x79] = new Inst("ADC", 4, ABSY_P, CPU::adc);
         opcodes[0x7A] = null;
         opcodes[0x7B] = null;
         opcodes[0x7C] = null;
-        opcodes[0x7D] = new Inst("ADC", 4, ABSX_P, this::adc);
-        opcodes[0x7E] = new Inst("ROR", 7, ABSX_O, this::rorM);
+        opcodes[0x7D] = new Inst("ADC", 4, ABSX_P, CPU::adc);
+        opcodes[0x7E] = new Inst("ROR", 7, ABSX_O, CPU::rorM);
         opcodes[0x7F] = null;
 
         // 0x8#
         opcodes[0x80] = null;
-        opcodes[0x81] = new Inst("STA", 6, INDX, this::sta);
+        opcodes[0x81] = new Inst("STA", 6, INDX, CPU::sta);
         opcodes[0x82] = null;
         opcodes[0x83] = null;
-        opcodes[0x84] = new Inst("STY", 3, ZPG, this::sty);
-        opcodes[0x85] = new Inst("STA", 3, ZPG, this::sta);
-        opcodes[0x86] = new Inst("STX", 3, ZPG, this::stx);
+        opcodes[0x84] = new Inst("STY", 3, ZPG, CPU::sty);
+        opcodes[0x85] = new Inst("STA", 3, ZPG, CPU::sta);
+        opcodes[0x86] = new Inst("STX", 3, ZPG, CPU::stx);
         opcodes[0x87] = null;
-        opcodes[0x88] = new Inst("DEY", 2, IMPL, this::dey);
+        opcodes[0x88] = new Inst("DEY", 2, IMPL, CPU::dey);
         opcodes[0x89] = null;
-        opcodes[0x8A] = new Inst("TXA", 2, IMPL, this::txa);
+        opcodes[0x8A] = new Inst("TXA", 2, IMPL, CPU::txa);
         opcodes[0x8B] = null;
-        opcodes[0x8C] = new Inst("STY", 4, ABS, this::sty);
-        opcodes[0x8D] = new Inst("STA", 4, ABS, this::sta);
-        opcodes[0x8E] = new Inst("STX", 4, ABS, this::stx);
+        opcodes[0x8C] = new Inst("STY", 4, ABS, CPU::sty);
+        opcodes[0x8D] = new Inst("STA", 4, ABS, CPU::sta);
+        opcodes[0x8E] = new Inst("STX", 4, ABS, CPU::stx);
         opcodes[0x8F] = null;
 
         // 0x9#
-        opcodes[0x90] = new Inst("BCC", 2, REL, this::bcc);
-        opcodes[0x91] = new Inst("STA", 6, INDY_O, this::sta);
+        opcodes[0x90] = new Inst("BCC", 2, REL, CPU::bcc);
+        opcodes[0x91] = new Inst("STA", 6, INDY_O, CPU::sta);
         opcodes[0x92] = null;
         opcodes[0x93] = null;
-        opcodes[0x94] = new Inst("STY", 4, ZPGX, this::sty);
-        opcodes[0x95] = new Inst("STA", 4, ZPGX, this::sta);
-        opcodes[0x96] = new Inst("STX", 4, ZPGY, this::stx);
+        opcodes[0x94] = new Inst("STY", 4, ZPGX, CPU::sty);
+        opcodes[0x95] = new Inst("STA", 4, ZPGX, CPU::sta);
+        opcodes[0x96] = new Inst("STX", 4, ZPGY, CPU::stx);
         opcodes[0x97] = null;
-        opcodes[0x98] = new Inst("TYA", 2, IMPL, this::tya);
-        opcodes[0x99] = new Inst("STA", 5, ABSY_O, this::sta);
-        opcodes[0x9A] = new Inst("TXS", 2, IMPL, this::txs);
+        opcodes[0x98] = new Inst("TYA", 2, IMPL, CPU::tya);
+        opcodes[0x99] = new Inst("STA", 5, ABSY_O, CPU::sta);
+        opcodes[0x9A] = new Inst("TXS", 2, IMPL, CPU::txs);
         opcodes[0x9B] = null;
         opcodes[0x9C] = null;
-        opcodes[0x9D] = new Inst("STA", 5, ABSX_O, this::sta);
+        opcodes[0x9D] = new Inst("STA", 5, ABSX_O, CPU::sta);
         opcodes[0x9E] = null;
         opcodes[0x9F] = null;
 
         // 0xA#
-        opcodes[0xA0] = new Inst("LDY", 2, IMM, this::ldy);
-        opcodes[0xA1] = new Inst("LDA", 6, INDX, this::lda);
-        opcodes[0xA2] = new Inst("LDX", 2, IMM, this::ldx);
+        opcodes[0xA0] = new Inst("LDY", 2, IMM, CPU::ldy);
+        opcodes[0xA1] = new Inst("LDA", 6, INDX, CPU::lda);
+        opcodes[0xA2] = new Inst("LDX", 2, IMM, CPU::ldx);
         opcodes[0xA3] = null;
-        opcodes[0xA4] = new Inst("LDY", 3, ZPG, this::ldy);
-        opcodes[0xA5] = new Inst("LDA", 3, ZPG, this::lda);
-        opcodes[0xA6] = new Inst("LDX", 3, ZPG, this::ldx);
+        opcodes[0xA4] = new Inst("LDY", 3, ZPG, CPU::ldy);
+        opcodes[0xA5] = new Inst("LDA", 3, ZPG, CPU::lda);
+        opcodes[0xA6] = new Inst("LDX", 3, ZPG, CPU::ldx);
         opcodes[0xA7] = null;
-        opcodes[0xA8] = new Inst("TAY", 2, IMPL, this::tay);
-        opcodes[0xA9] = new Inst("LDA", 2, IMM, this::lda);
-        opcodes[0xAA] = new Inst("TAX", 2, IMPL, this::tax);
+        opcodes[0xA8] = new Inst("TAY", 2, IMPL, CPU::tay);
+        opcodes[0xA9] = new Inst("LDA", 2, IMM, CPU::lda);
+        opcodes[0xAA] = new Inst("TAX", 2, IMPL, CPU::tax);
         opcodes[0xAB] = null;
-        opcodes[0xAC] = new Inst("LDY", 4, ABS, this::ldy);
-        opcodes[0xAD] = new Inst("LDA", 4, ABS, this::lda);
-        opcodes[0xAE] = new Inst("LDX", 4, ABS, this::ldx);
+        opcodes[0xAC] = new Inst("LDY", 4, ABS, CPU::ldy);
+        opcodes[0xAD] = new Inst("LDA", 4, ABS, CPU::lda);
+        opcodes[0xAE] = new Inst("LDX", 4, ABS, CPU::ldx);
         opcodes[0xAF] = null;
 
         // 0xB#
-        opcodes[0xB0] = new Inst("BCS", 2, REL, this::bcs);
-        opcodes[0xB1] = new Inst("LDA", 5, INDY_P, this::lda);
+        opcodes[0xB0] = new Inst("BCS", 2, REL, CPU::bcs);
+        opcodes[0xB1] = new Inst("LDA", 5, INDY_P, CPU::lda);
         opcodes[0xB2] = null;
         opcodes[0xB3] = null;
-        opcodes[0xB4] = new Inst("LDY", 4, ZPGX, this::ldy);
-        opcodes[0xB5] = new Inst("LDA", 4, ZPGX, this::lda);
-        opcodes[0xB6] = new Inst("LDX", 4, ZPGY, this::ldx);
+        opcodes[0xB4] = new Inst("LDY", 4, ZPGX, CPU::ldy);
+        opcodes[0xB5] = new Inst("LDA", 4, ZPGX, CPU::lda);
+        opcodes[0xB6] = new Inst("LDX", 4, ZPGY, CPU::ldx);
         opcodes[0xB7] = null;
-        opcodes[0xB8] = new Inst("CLV", 2, IMPL, this::clv);
-        opcodes[0xB9] = new Inst("LDA", 4, ABSY_P, this::lda);
-        opcodes[0xBA] = new Inst("TSX", 2, IMPL, this::tsx);
+        opcodes[0xB8] = new Inst("CLV", 2, IMPL, CPU::clv);
+        opcodes[0xB9] = new Inst("LDA", 4, ABSY_P, CPU::lda);
+        opcodes[0xBA] = new Inst("TSX", 2, IMPL, CPU::tsx);
         opcodes[0xBB] = null;
-        opcodes[0xBC] = new Inst("LDY", 4, ABSX_P, this::ldy);
-        opcodes[0xBD] = new Inst("LDA", 4, ABSX_P, this::lda);
-        opcodes[0xBE] = new Inst("LDX", 4, ABSY_P, this::ldx);
+        opcodes[0xBC] = new Inst("LDY", 4, ABSX_P, CPU::ldy);
+        opcodes[0xBD] = new Inst("LDA", 4, ABSX_P, CPU::lda);
+        opcodes[0xBE] = new Inst("LDX", 4, ABSY_P, CPU::ldx);
         opcodes[0xBF] = null;
 
         // 0xC#
-        opcodes[0xC0] = new Inst("CPY", 2, IMM, this::cpy);
-        opcodes[0xC1] = new Inst("CMP", 6, INDX, this::cmp);
+        opcodes[0xC0] = new Inst("CPY", 2, IMM, CPU::cpy);
+        opcodes[0xC1] = new Inst("CMP", 6, INDX, CPU::cmp);
         opcodes[0xC2] = null;
         opcodes[0xC3] = null;
-        opcodes[0xC4] = new Inst("CPY", 3, ZPG, this::cpy);
-        opcodes[0xC5] = new Inst("CMP", 3, ZPG, this::cmp);
-        opcodes[0xC6] = new Inst("DEC", 5, ZPG, this::dec);
+        opcodes[0xC4] = new Inst("CPY", 3, ZPG, CPU::cpy);
+        opcodes[0xC5] = new Inst("CMP", 3, ZPG, CPU::cmp);
+        opcodes[0xC6] = new Inst("DEC", 5, ZPG, CPU::dec);
         opcodes[0xC7] = null;
-        opcodes[0xC8] = new Inst("INY", 2, IMPL, this::iny);
-        opcodes[0xC9] = new Inst("CMP", 2, IMM, this::cmp);
-        opcodes[0xCA] = new Inst("DEX", 2, IMPL, this::dex);
+        opcodes[0xC8] = new Inst("INY", 2, IMPL, CPU::iny);
+        opcodes[0xC9] = new Inst("CMP", 2, IMM, CPU::cmp);
+        opcodes[0xCA] = new Inst("DEX", 2, IMPL, CPU::dex);
         opcodes[0xCB] = null;
-        opcodes[0xCC] = new Inst("CPY", 4, ABS, this::cpy);
-        opcodes[0xCD] = new Inst("CMP", 4, ABS, this::cmp);
-        opcodes[0xCE] = new Inst("DEC", 6, ABS, this::dec);
+        opcodes[0xCC] = new Inst("CPY", 4, ABS, CPU::cpy);
+        opcodes[0xCD] = new Inst("CMP", 4, ABS, CPU::cmp);
+        opcodes[0xCE] = new Inst("DEC", 6, ABS, CPU::dec);
         opcodes[0xCF] = null;
 
         // 0xD#
-        opcodes[0xD0] = new Inst("BNE", 2, REL, this::bne);
-        opcodes[0xD1] = new Inst("CMP", 5, INDY_P, this::cmp);
+        opcodes[0xD0] = new Inst("BNE", 2, REL, CPU::bne);
+        opcodes[0xD1] = new Inst("CMP", 5, INDY_P, CPU::cmp);
         opcodes[0xD2] = null;
         opcodes[0xD3] = null;
         opcodes[0xD4] = null;
-        opcodes[0xD5] = new Inst("CMP", 4, ZPGX, this::cmp);
-        opcodes[0xD6] = new Inst("DEC", 6, ZPGX, this::dec);
+        opcodes[0xD5] = new Inst("CMP", 4, ZPGX, CPU::cmp);
+        opcodes[0xD6] = new Inst("DEC", 6, ZPGX, CPU::dec);
         opcodes[0xD7] = null;
-        opcodes[0xD8] = new Inst("CLD", 2, IMPL, this::cld);
-        opcodes[0xD9] = new Inst("CMP", 4, ABSY_P, this::cmp);
+        opcodes[0xD8] = new Inst("CLD", 2, IMPL, CPU::cld);
+        opcodes[0xD9] = new Inst("CMP", 4, ABSY_P, CPU::cmp);
         opcodes[0xDA] = null;
         opcodes[0xDB] = null;
         opcodes[0xDC] = null;
-        opcodes[0xDD] = new Inst("CMP", 4, ABSX_P, this::cmp);
-        opcodes[0xDE] = new Inst("DEC", 7, ABSX_O, this::dec);
+        opcodes[0xDD] = new Inst("CMP", 4, ABSX_P, CPU::cmp);
+        opcodes[0xDE] = new Inst("DEC", 7, ABSX_O, CPU::dec);
         opcodes[0xDF] = null;
 
         // 0xE#
-        opcodes[0xE0] = new Inst("CPX", 2, IMM, this::cpx);
-        opcodes[0xE1] = new Inst("SBC", 6, INDX, this::sbc);
+        opcodes[0xE0] = new Inst("CPX", 2, IMM, CPU::cpx);
+        opcodes[0xE1] = new Inst("SBC", 6, INDX, CPU::sbc);
         opcodes[0xE2] = null;
         opcodes[0xE3] = null;
-        opcodes[0xE4] = new Inst("CPX", 3, ZPG, this::cpx);
-        opcodes[0xE5] = new Inst("SBC", 3, ZPG, this::sbc);
-        opcodes[0xE6] = new Inst("INC", 5, ZPG, this::inc);
+        opcodes[0xE4] = new Inst("CPX", 3, ZPG, CPU::cpx);
+        opcodes[0xE5] = new Inst("SBC", 3, ZPG, CPU::sbc);
+        opcodes[0xE6] = new Inst("INC", 5, ZPG, CPU::inc);
         opcodes[0xE7] = null;
-        opcodes[0xE8] = new Inst("INX", 2, IMPL, this::inx);
-        opcodes[0xE9] = new Inst("SBC", 2, IMM, this::sbc);
-        opcodes[0xEA] = new Inst("NOP", 2, IMPL, this::nop);
+        opcodes[0xE8] = new Inst("INX", 2, IMPL, CPU::inx);
+        opcodes[0xE9] = new Inst("SBC", 2, IMM, CPU::sbc);
+        opcodes[0xEA] = new Inst("NOP", 2, IMPL, CPU::nop);
         opcodes[0xEB] = null;
-        opcodes[0xEC] = new Inst("CPX", 4, ABS, this::cpx);
-        opcodes[0xED] = new Inst("SBC", 4, ABS, this::sbc);
-        opcodes[0xEE] = new Inst("INC", 6, ABS, this::inc);
+        opcodes[0xEC] = new Inst("CPX", 4, ABS, CPU::cpx);
+        opcodes[0xED] = new Inst("SBC", 4, ABS, CPU::sbc);
+        opcodes[0xEE] = new Inst("INC", 6, ABS, CPU::inc);
         opcodes[0xEF] = null;
 
         // 0xF#
-        opcodes[0xF0] = new Inst("BEQ", 2, REL, this::beq);
-        opcodes[0xF1] = new Inst("SBC", 5, INDY_P, this::sbc);
+        opcodes[0xF0] = new Inst("BEQ", 2, REL, CPU::beq);
+        opcodes[0xF1] = new Inst("SBC", 5, INDY_P, CPU::sbc);
         opcodes[0xF2] = null;
         opcodes[0xF3] = null;
         opcodes[0xF4] = null;
-        opcodes[0xF5] = new Inst("SBC", 4, ZPGX, this::sbc);
-        opcodes[0xF6] = new Inst("INC", 6, ZPGX, this::inc);
+        opcodes[0xF5] = new Inst("SBC", 4, ZPGX, CPU::sbc);
+        opcodes[0xF6] = new Inst("INC", 6, ZPGX, CPU::inc);
         opcodes[0xF7] = null;
-        opcodes[0xF8] = new Inst("SED", 2, IMPL, this::sed);
-        opcodes[0xF9] = new Inst("SBC", 4, ABSY_P, this::sbc);
+        opcodes[0xF8] = new Inst("SED", 2, IMPL, CPU::sed);
+        opcodes[0xF9] = new Inst("SBC", 4, ABSY_P, CPU::sbc);
         opcodes[0xFA] = null;
         opcodes[0xFB] = null;
         opcodes[0xFC] = null;
-        opcodes[0xFD] = new Inst("SBC", 4, ABSX_P, this::sbc);
-        opcodes[0xFE] = new Inst("INC", 7, ABSX_O, this::inc);
+        opcodes[0xFD] = new Inst("SBC", 4, ABSX_P, CPU::sbc);
+        opcodes[0xFE] = new Inst("INC", 7, ABSX_O, CPU::inc);
         opcodes[0xFF] = null;
 
         // Unofficial opcodes
-        opcodes[0x03] = new Inst("*SLO", 8, INDX, this::_slo);
-        opcodes[0x04] = new Inst("*NOP", 3, ZPG, ()-> {});
-        opcodes[0x07] = new Inst("*SLO", 4, ZPG, this::_slo);
-        opcodes[0x0C] = new Inst("*NOP", 4, ABS, ()-> {});
-        opcodes[0x0F] = new Inst("*SLO", 6, ABS, this::_slo);
-        opcodes[0x13] = new Inst("*SLO", 8, INDY_O, this::_slo);
-        opcodes[0x14] = new Inst("*NOP", 4, ZPGX, ()-> {});
-        opcodes[0x17] = new Inst("*SLO", 6, ZPGX, this::_slo);
-        opcodes[0x1A] = new Inst("*NOP", 2, IMPL, ()-> {});
-        opcodes[0x1B] = new Inst("*SLO", 7, ABSY_O, this::_slo);
-        opcodes[0x1C] = new Inst("*NOP", 4, ABSX_P, ()-> {});
-        opcodes[0x1F] = new Inst("*SLO", 7, ABSX_O, this::_slo);
-        opcodes[0x23] = new Inst("*RLA", 8, INDX, this::_rla);
-        opcodes[0x27] = new Inst("*RLA", 5, ZPG, this::_rla);
-        opcodes[0x2F] = new Inst("*RLA", 6, ABS, this::_rla);
-        opcodes[0x33] = new Inst("*RLA", 8, INDY_O, this::_rla);
-        opcodes[0x34] = new Inst("*NOP", 4, ZPGX, ()-> {});
-        opcodes[0x37] = new Inst("*RLA", 6, ZPGX, this::_rla);
-        opcodes[0x3A] = new Inst("*NOP", 2, IMPL, ()-> {});
-        opcodes[0x3B] = new Inst("*RLA", 7, ABSY_O, this::_rla);
-        opcodes[0x3C] = new Inst("*NOP", 4, ABSX_P, ()-> {});
-        opcodes[0x3F] = new Inst("*RLA", 7, ABSX_O, this::_rla);
-        opcodes[0x43] = new Inst("*SRE", 8, INDX, this::_sre);
-        opcodes[0x44] = new Inst("*NOP", 3, ZPG, ()-> {});
-        opcodes[0x47] = new Inst("*SRE", 5, ZPG, this::_sre);
-        opcodes[0x4F] = new Inst("*SRE", 6, ABS, this::_sre);
-        opcodes[0x53] = new Inst("*SRE", 8, INDY_O, this::_sre);
-        opcodes[0x54] = new Inst("*NOP", 4, ZPGX, ()-> {});
-        opcodes[0x57] = new Inst("*SRE", 6, ZPGX, this::_sre);
-        opcodes[0x5A] = new Inst("*NOP", 2, IMPL, ()-> {});
-        opcodes[0x5B] = new Inst("*SRE", 7, ABSY_O, this::_sre);
-        opcodes[0x5C] = new Inst("*NOP", 4, ABSX_P, ()-> {});
-        opcodes[0x5F] = new Inst("*SRE", 7, ABSX_O, this::_sre);
-        opcodes[0x63] = new Inst("*RRA", 8, INDX, this::_rra);
-        opcodes[0x64] = new Inst("*NOP", 3, ZPG, ()-> {});
-        opcodes[0x67] = new Inst("*RRA", 5, ZPG, this::_rra);
-        opcodes[0x6F] = new Inst("*RRA", 6, ABS, this::_rra);
-        opcodes[0x73] = new Inst("*RRA", 8, INDY_O, this::_rra);
-        opcodes[0x74] = new Inst("*NOP", 4, ZPGX, ()-> {});
-        opcodes[0x77] = new Inst("*RRA", 6, ZPGX, this::_rra);
-        opcodes[0x7A] = new Inst("*NOP", 2, IMPL, ()-> {});
-        opcodes[0x7B] = new Inst("*RRA", 7, ABSY_O, this::_rra);
-        opcodes[0x7C] = new Inst("*NOP", 4, ABSX_P, ()-> {});
-        opcodes[0x7F] = new Inst("*RRA", 7, ABSX_O, this::_rra);
-        opcodes[0x80] = new Inst("*NOP", 2, IMM, ()-> {});
-        opcodes[0x83] = new Inst("*SAX", 6, INDX, this::_sax);
-        opcodes[0x87] = new Inst("*SAX", 3, ZPG, this::_sax);
-        opcodes[0x8F] = new Inst("*SAX", 4, ABS, this::_sax);
-        opcodes[0x97] = new Inst("*SAX", 4, ZPGY, this::_sax);
-        opcodes[0xA3] = new Inst("*LAX", 6, INDX, this::_lax);
-        opcodes[0xA7] = new Inst("*LAX", 3, ZPG, this::_lax);
-        opcodes[0xAF] = new Inst("*LAX", 4, ABS, this::_lax);
-        opcodes[0xB3] = new Inst("*LAX", 5, INDY_P, this::_lax);
-        opcodes[0xB7] = new Inst("*LAX", 4, ZPGY, this::_lax);
-        opcodes[0xBF] = new Inst("*LAX", 4, ABSY_P, this::_lax);
-        opcodes[0xC3] = new Inst("*DCP", 8, INDX, this::_dcp);
-        opcodes[0xC7] = new Inst("*DCP", 5, ZPG, this::_dcp);
-        opcodes[0xCF] = new Inst("*DCP", 6, ABS, this::_dcp);
-        opcodes[0xD3] = new Inst("*DCP", 8, INDY_O, this::_dcp);
-        opcodes[0xD4] = new Inst("*NOP", 4, ZPGX, ()-> {});
-        opcodes[0xD7] = new Inst("*DCP", 6, ZPGX, this::_dcp);
-        opcodes[0xDA] = new Inst("*NOP", 2, IMPL, ()-> {});
-        opcodes[0xDB] = new Inst("*DCP", 7, ABSY_O, this::_dcp);
-        opcodes[0xDC] = new Inst("*NOP", 4, ABSX_P, ()-> {});
-        opcodes[0xDF] = new Inst("*DCP", 7, ABSX_O, this::_dcp);
-        opcodes[0xE3] = new Inst("*ISB", 8, INDX, this::_isb);
-        opcodes[0xE7] = new Inst("*ISB", 5, ZPG, this::_isb);
-        opcodes[0xEB] = new Inst("*SBC", 2, IMM, this::sbc);
-        opcodes[0xEF] = new Inst("*ISB", 6, ABS, this::_isb);
-        opcodes[0xF3] = new Inst("*ISB", 8, INDY_O, this::_isb);
-        opcodes[0xF4] = new Inst("*NOP", 4, ZPGX, ()-> {});
-        opcodes[0xF7] = new Inst("*ISB", 6, ZPGX, this::_isb);
-        opcodes[0xFA] = new Inst("*NOP", 2, IMPL, ()-> {});
-        opcodes[0xFB] = new Inst("*ISB", 7, ABSY_O, this::_isb);
-        opcodes[0xFC] = new Inst("*NOP", 4, ABSX_P, ()-> {});
-        opcodes[0xFF] = new Inst("*ISB", 7, ABSX_O, this::_isb);
+        opcodes[0x03] = new Inst("*SLO", 8, INDX, CPU::_slo);
+        opcodes[0x04] = new Inst("*NOP", 3, ZPG, cpu -> {});
+        opcodes[0x07] = new Inst("*SLO", 4, ZPG, CPU::_slo);
+        opcodes[0x0C] = new Inst("*NOP", 4, ABS, cpu -> {});
+        opcodes[0x0F] = new Inst("*SLO", 6, ABS, CPU::_slo);
+        opcodes[0x13] = new Inst("*SLO", 8, INDY_O, CPU::_slo);
+        opcodes[0x14] = new Inst("*NOP", 4, ZPGX, cpu -> {});
+        opcodes[0x17] = new Inst("*SLO", 6, ZPGX, CPU::_slo);
+        opcodes[0x1A] = new Inst("*NOP", 2, IMPL, cpu -> {});
+        opcodes[0x1B] = new Inst("*SLO", 7, ABSY_O, CPU::_slo);
+        opcodes[0x1C] = new Inst("*NOP", 4, ABSX_P, cpu -> {});
+        opcodes[0x1F] = new Inst("*SLO", 7, ABSX_O, CPU::_slo);
+        opcodes[0x23] = new Inst("*RLA", 8, INDX, CPU::_rla);
+        opcodes[0x27] = new Inst("*RLA", 5, ZPG, CPU::_rla);
+        opcodes[0x2F] = new Inst("*RLA", 6, ABS, CPU::_rla);
+        opcodes[0x33] = new Inst("*RLA", 8, INDY_O, CPU::_rla);
+        opcodes[0x34] = new Inst("*NOP", 4, ZPGX, cpu -> {});
+        opcodes[0x37] = new Inst("*RLA", 6, ZPGX, CPU::_rla);
+        opcodes[0x3A] = new Inst("*NOP", 2, IMPL, cpu -> {});
+        opcodes[0x3B] = new Inst("*RLA", 7, ABSY_O, CPU::_rla);
+        opcodes[0x3C] = new Inst("*NOP", 4, ABSX_P, cpu -> {});
+        opcodes[0x3F] = new Inst("*RLA", 7, ABSX_O, CPU::_rla);
+        opcodes[0x43] = new Inst("*SRE", 8, INDX, CPU::_sre);
+        opcodes[0x44] = new Inst("*NOP", 3, ZPG, cpu -> {});
+        opcodes[0x47] = new Inst("*SRE", 5, ZPG, CPU::_sre);
+        opcodes[0x4F] = new Inst("*SRE", 6, ABS, CPU::_sre);
+        opcodes[0x53] = new Inst("*SRE", 8, INDY_O, CPU::_sre);
+        opcodes[0x54] = new Inst("*NOP", 4, ZPGX, cpu -> {});
+        opcodes[0x57] = new Inst("*SRE", 6, ZPGX, CPU::_sre);
+        opcodes[0x5A] = new Inst("*NOP", 2, IMPL, cpu -> {});
+        opcodes[0x5B] = new Inst("*SRE", 7, ABSY_O, CPU::_sre);
+        opcodes[0x5C] = new Inst("*NOP", 4, ABSX_P, cpu -> {});
+        opcodes[0x5F] = new Inst("*SRE", 7, ABSX_O, CPU::_sre);
+        opcodes[0x63] = new Inst("*RRA", 8, INDX, CPU::_rra);
+        opcodes[0x64] = new Inst("*NOP", 3, ZPG, cpu -> {});
+        opcodes[0x67] = new Inst("*RRA", 5, ZPG, CPU::_rra);
+        opcodes[0x6F] = new Inst("*RRA", 6, ABS, CPU::_rra);
+        opcodes[0x73] = new Inst("*RRA", 8, INDY_O, CPU::_rra);
+        opcodes[0x74] = new Inst("*NOP", 4, ZPGX, cpu -> {});
+        opcodes[0x77] = new Inst("*RRA", 6, ZPGX, CPU::_rra);
+        opcodes[0x7A] = new Inst("*NOP", 2, IMPL, cpu -> {});
+        opcodes[0x7B] = new Inst("*RRA", 7, ABSY_O, CPU::_rra);
+        opcodes[0x7C] = new Inst("*NOP", 4, ABSX_P, cpu -> {});
+        opcodes[0x7F] = new Inst("*RRA", 7, ABSX_O, CPU::_rra);
+        opcodes[0x80] = new Inst("*NOP", 2, IMM, cpu -> {});
+        opcodes[0x83] = new Inst("*SAX", 6, INDX, CPU::_sax);
+        opcodes[0x87] = new Inst("*SAX", 3, ZPG, CPU::_sax);
+        opcodes[0x8F] = new Inst("*SAX", 4, ABS, CPU::_sax);
+        opcodes[0x97] = new Inst("*SAX", 4, ZPGY, CPU::_sax);
+        opcodes[0xA3] = new Inst("*LAX", 6, INDX, CPU::_lax);
+        opcodes[0xA7] = new Inst("*LAX", 3, ZPG, CPU::_lax);
+        opcodes[0xAF] = new Inst("*LAX", 4, ABS, CPU::_lax);
+        opcodes[0xB3] = new Inst("*LAX", 5, INDY_P, CPU::_lax);
+        opcodes[0xB7] = new Inst("*LAX", 4, ZPGY, CPU::_lax);
+        opcodes[0xBF] = new Inst("*LAX", 4, ABSY_P, CPU::_lax);
+        opcodes[0xC3] = new Inst("*DCP", 8, INDX, CPU::_dcp);
+        opcodes[0xC7] = new Inst("*DCP", 5, ZPG, CPU::_dcp);
+        opcodes[0xCF] = new Inst("*DCP", 6, ABS, CPU::_dcp);
+        opcodes[0xD3] = new Inst("*DCP", 8, INDY_O, CPU::_dcp);
+        opcodes[0xD4] = new Inst("*NOP", 4, ZPGX, cpu -> {});
+        opcodes[0xD7] = new Inst("*DCP", 6, ZPGX, CPU::_dcp);
+        opcodes[0xDA] = new Inst("*NOP", 2, IMPL, cpu -> {});
+        opcodes[0xDB] = new Inst("*DCP", 7, ABSY_O, CPU::_dcp);
+        opcodes[0xDC] = new Inst("*NOP", 4, ABSX_P, cpu -> {});
+        opcodes[0xDF] = new Inst("*DCP", 7, ABSX_O, CPU::_dcp);
+        opcodes[0xE3] = new Inst("*ISB", 8, INDX, CPU::_isb);
+        opcodes[0xE7] = new Inst("*ISB", 5, ZPG, CPU::_isb);
+        opcodes[0xEB] = new Inst("*SBC", 2, IMM, CPU::sbc);
+        opcodes[0xEF] = new Inst("*ISB", 6, ABS, CPU::_isb);
+        opcodes[0xF3] = new Inst("*ISB", 8, INDY_O, CPU::_isb);
+        opcodes[0xF4] = new Inst("*NOP", 4, ZPGX, cpu -> {});
+        opcodes[0xF7] = new Inst("*ISB", 6, ZPGX, CPU::_isb);
+        opcodes[0xFA] = new Inst("*NOP", 2, IMPL, cpu -> {});
+        opcodes[0xFB] = new Inst("*ISB", 7, ABSY_O, CPU::_isb);
+        opcodes[0xFC] = new Inst("*NOP", 4, ABSX_P, cpu -> {});
+        opcodes[0xFF] = new Inst("*ISB", 7, ABSX_O, CPU::_isb);
+    }
+
+    public CPU(Bus bus) {
+        this.bus = bus;
+        reset();
     }
 
     /**
@@ -436,6 +480,73 @@ public class CPU {
      * Code
      */
     public CPUStatus tick() {
+        int currentPC = PC;
+        int currentCycles = cycles;
+        int op = execute();
+
+        // Retrieve status after each tick
+        CPUStatus status = new CPUStatus();
+        status.PC = currentPC;
+        status.op = op;
+        status.op1 = op1;
+        status.op2 = op2;
+        status.opcode = opcodes[op];
+        status.A = A;
+        status.X = X;
+        status.Y = Y;
+        status.P = P;
+        status.SP = SP;
+        status.cycle = cycles - currentCycles;
+        status.cycleCount = cycles;
+        status.address = address;
+
+        return status;
+    }
+
+    /**
+     * Executes one opcode statement without reporting its status.
+     * Used when running in batches, where building a status for each
+     * instruction is not needed
+     * @return number of cycles consumed
+     */
+    public int step() {
+        int currentCycles = cycles;
+        execute();
+        return cycles - currentCycles;
+    }
+
+    /**
+     * Services a Non-Maskable Interrupt
+     * @return number of cycles consumed
+     */
+    public int nmi() {
+        return interrupt(0xFFFA);
+    }
+
+    /**
+     * Services an Interrupt Request, unless interrupts are disabled
+     * @return number of cycles consumed
+     */
+    public int irq() {
+        if (P.I)
+            return 0;
+
+        return interrupt(0xFFFE);
+    }
+
+    /**
+     * Stall the CPU, such as while DMA holds the bus
+     * @param cycles number of cycles to stall for
+     */
+    public void stall(int cycles) {
+        this.cycles += cycles;
+    }
+
+    /**
+     * Executes one opcode statement
+     * @return the opcode executed
+     */
+    private int execute() {
         /*
          *  TODO: According to nesdev wiki
          *  Emulator authors may wish to emulate the NTSC NES/Famicom CPU at
@@ -452,16 +563,10 @@ public class CPU {
 
         // Read the current PC then increment it
         int currentPC = incPC();
-        int currentCycles = cycles;
 
         // Retrieve the operation mnemonic
         int op = bus.read(currentPC);
 
-        // TODO delete me
-        if (currentPC == 0xEE0E) {
-            System.out.println("What up!");
-        }
-
         /**
          * Retrieve the relavent opcode then:
          * 1. Invoke the address mode then update the following variables
@@ -474,30 +579,36 @@ public class CPU {
          *  3. Update cycles count
          */
         Inst opcode = opcodes[op];
-        if (opcode == null)
-            logger.error(
-                    String.format("Detected unsupported opcode: $%02X", op));
-        addressMode[opcode.mode].process();
-        opcode.operation.process();
+        if (opcode == null) {
+            // Leave PC at the opcode, so the state shows where it failed
+            PC = currentPC;
+            UnsupportedOpcodeException e =
+                    new UnsupportedOpcodeException(op, currentPC);
+            if (recorder != null)
+                logger.error("{}. Last instructions:\n{}", e.getMessage(),
+                        recorder.dump());
+            else
+                logger.error(e.getMessage());
+            throw e;
+        }
+
+        int before = cycles;
+        reads = opcode.read;
+        addressMode[opcode.mode].process(this);
+        opcode.operation.process(this);
         cycles += opcode.cycles;
 
-        // Retrieve status after each tick
-        CPUStatus status = new CPUStatus();
-        status.PC = currentPC;
-        status.op = op;
-        status.op1 = op1;
-        status.op2 = op2;
-        status.opcode = opcode;
-        status.A = A;
-        status.X = X;
-        status.Y = Y;
-        status.P = P;
-        status.SP = SP;
-        status.cycle = cycles - currentCycles;
-        status.cycleCount = cycles;
-        status.address = address;
+        if (STATS && stats != null)
+            stats.instruction(op, opcode.mode, cycles - before);
+        if (PROFILE && profiler != null)
+            profiler.instruction(currentPC, op, cycles - before, PC);
+        if (COVERAGE && coverage != null)
+            coverage.instruction(currentPC, op, PC);
+        if (recorder != null)
+            recorder.record(currentPC, op, op1, op2, address, A, X, Y,
+                    P.getStatus(), SP, cycles - before, cycles);
 
-        return status;
+        return op;
     }
 
     /**
@@ -532,6 +643,36 @@ public class CPU {
         cycles+=7;
     }
 
+    /**
+     * Write registers and cycle count
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    public void save(DataOutput out) throws IOException {
+        out.writeInt(cycles);
+        out.writeByte(A);
+        out.writeByte(X);
+        out.writeByte(Y);
+        out.writeShort(PC);
+        out.writeByte(SP);
+        out.writeByte(P.getStatus());
+    }
+
+    /**
+     * Restore registers and cycle count
+     * @param in source
+     * @throws IOException if reading fails
+     */
+    public void load(DataInput in) throws IOException {
+        cycles = in.readInt();
+        A = in.readUnsignedByte();
+        X = in.readUnsignedByte();
+        Y = in.readUnsignedByte();
+        PC = in.readUnsignedShort();
+        SP = in.readUnsignedByte();
+        P.setStatus(in.readUnsignedByte());
+    }
+
     public int getA() {
         return A;
     }
@@ -564,6 +705,14 @@ public class CPU {
         Y = y;
     }
 
+    public int getSP() {
+        return SP;
+    }
+
+    public void setSP(int SP) {
+        this.SP = SP;
+    }
+
     /**
      * Increment PC by one
      * @return previous PC value before incremental
@@ -615,6 +764,67 @@ public class CPU {
         return P;
     }
 
+    /**
+     * Attach execution counters. Counting only happens if {@link #STATS}
+     * is true
+     * @param stats counters, or null to stop counting
+     */
+    public void setStats(CPUStats stats) {
+        this.stats = stats;
+    }
+
+    public CPUStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Attach a profiler. Profiling only happens if {@link #PROFILE} is
+     * true
+     * @param profiler profiler, or null to stop profiling
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Attach coverage maps. Tracking only happens if {@link #COVERAGE} is
+     * true
+     * @param coverage coverage, or null to stop tracking
+     */
+    public void setCoverage(Coverage coverage) {
+        this.coverage = coverage;
+    }
+
+    public Coverage getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * Attach a recorder of executed instructions. Unlike counting and
+     * profiling, recording is always compiled in
+     * @param recorder recorder, or null to stop recording
+     */
+    public void setRecorder(FlightRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public FlightRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Instruction of an opcode
+     * @param op opcode
+     * @return instruction, or null if the opcode is not supported
+     */
+    public static Inst getInst(int op) {
+        return opcodes[op];
+    }
+
     public int getCycles() {
         return cycles;
     }
@@ -1223,7 +1433,7 @@ public class CPU {
         // Read first byte only after instruction for memory address
         op1 = bus.read(incPC());
         address = op1;
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1233,7 +1443,7 @@ public class CPU {
         op1 = bus.read(incPC());
         // Wrap around if needed
         address = (op1 + X) & 0xFF;
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1244,7 +1454,7 @@ public class CPU {
         op1 = bus.read(incPC());
         // Wrap around if needed
         address = (op1 + Y) & 0xFF;
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1260,11 +1470,17 @@ public class CPU {
      * Absolute
      */
     private void abs() {
-        // Read the first and second byte after instruction for memory address
+        absAddress();
+        fetch();
+    }
+
+    /**
+     * Read the first and second byte after instruction for memory address
+     */
+    private void absAddress() {
         op1 = bus.read(incPC());
         op2 = bus.read(incPC());
         address = buildAddress(op1, op2);
-        value = bus.read(address);
     }
 
     /**
@@ -1272,13 +1488,13 @@ public class CPU {
      * Adds a cycle if cross page occurs
      */
     private void absx() {
-        abs();
+        absAddress();
 
         if ((address & 0xFF00) != ((address + X) & 0xFF00))
-            cycles++;
+            pageCross();
 
         address = (X + address) & 0xFFFF;
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1286,9 +1502,9 @@ public class CPU {
      * No extra cycles are incremented when cross page happens
      */
     private void absxPlus() {
-        abs();
+        absAddress();
         address = (X + address) & 0xFFFF;
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1296,13 +1512,13 @@ public class CPU {
      * Adds a cycle if cross page occurs
      */
     private void absy() {
-        abs();
+        absAddress();
 
         if ((address & 0xFF00) != ((address + Y) & 0xFF00))
-            cycles++;
+            pageCross();
 
         address = (Y + address) & 0xFFFF;
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1310,9 +1526,9 @@ public class CPU {
      * No extra cycles are incremented when cross page happens
      */
     private void absyPlus() {
-        abs();
+        absAddress();
         address = (Y + address) & 0xFFFF;
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1342,7 +1558,7 @@ public class CPU {
         int low = (op1 + X) & 0xFF;
         int high = (low + 1) & 0xFF;
         address = buildAddress(bus.read(low), bus.read(high));
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1359,12 +1575,13 @@ public class CPU {
         int high = bus.read((op1 + 1) & 0xFF);
         int index = buildAddress(low, high);
 
-        // Increment cycle if cross page happens
-        if( low != ((low + Y) & 0xFF))
-            cycles++;
+        // Increment cycle if cross page happens, that is when adding Y
+        // carries into the high byte
+        if (low + Y > 0xFF)
+            pageCross();
 
         address = (index + Y) & 0xFFFF;
-        value = bus.read(address);
+        fetch();
     }
 
     /**
@@ -1378,7 +1595,16 @@ public class CPU {
         int high = bus.read((op1 + 1) & 0xFF);
         int index = buildAddress(low, high);
         address = (index + Y) & 0xFFFF;
-        value = bus.read(address);
+        fetch();
+    }
+
+    /**
+     * Read the value at the effective address, unless the instruction
+     * being executed does not read it, such as stores
+     */
+    private void fetch() {
+        if (reads)
+            value = bus.read(address);
     }
 
     //endregion
@@ -1430,6 +1656,9 @@ public class CPU {
      * @param cond condition flag whether to branch or not
      */
     private void branch(boolean cond) {
+        if (STATS && stats != null)
+            stats.branch(cond);
+
         if (!cond)
             return;
 
@@ -1444,6 +1673,15 @@ public class CPU {
             cycles+=1;
     }
 
+    /**
+     * Add the extra cycle of an indexed access crossing a page
+     */
+    private void pageCross() {
+        cycles++;
+        if (STATS && stats != null)
+            stats.pageCross();
+    }
+
     /**
      * Compare value and set C, F and N flags accordingly
      * @param cmp Value to compare
@@ -1455,6 +1693,26 @@ public class CPU {
         P.setNFlag(result);
     }
 
+    /**
+     * Pushes PC and processor status, then jumps to the interrupt vector
+     * @param vector address of the interrupt vector
+     * @return number of cycles consumed
+     */
+    private int interrupt(int vector) {
+        ph(PC >> 8);
+        ph(PC & 0xFF);
+        // Break flag is only set when pushed by BRK or PHP
+        ph(P.getStatus() & 0xEF);
+        P.I = true;
+        PC = bus.read(vector) | (bus.read(vector + 1) << 8);
+        cycles += 7;
+
+        if (PROFILE && profiler != null)
+            profiler.interrupt(PC, 7);
+
+        return 7;
+    }
+
     /**
      * Logical Shift Right of Accumulator or Memory
      * @return
@@ -1,6 +1,8 @@
 package me.aymen.anes;
 
+import me.aymen.anes.memory.Bus;
 
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import static me.aymen.anes.AddressMode.*;
@@ -16,8 +18,8 @@ public class Deassembler {
             new Function[AddressMode.SIZE];
     
     // Used to show memory address and content according to address mode
-    private static Function<CPUStatus, String>[] mem =
-            new Function[AddressMode.SIZE]; 
+    private static BiFunction<CPUStatus, Bus, String>[] mem =
+            new BiFunction[AddressMode.SIZE];
     
     static {
         modes[IMPL] =  v -> "";
@@ -47,6 +49,22 @@ public class Deassembler {
         modes[INDX] = v -> String.format("($%02X,X) -> $%04X", v.op1, v.address);
         modes[INDY_P] = v -> String.format("($%02X),Y -> $%04X", v.op1, v.address);
         modes[INDY_O] = modes[INDY_P];
+
+        // Content at the effective address, peeked so that showing it
+        // has no side effect on registers
+        BiFunction<CPUStatus, Bus, String> content = (v, bus) ->
+                String.format(" = %02X", bus.peek(v.address));
+        mem[ZPG] = content;
+        mem[ZPGX] = content;
+        mem[ZPGY] = content;
+        mem[ABS] = content;
+        mem[ABSX_P] = content;
+        mem[ABSX_O] = content;
+        mem[ABSY_P] = content;
+        mem[ABSY_O] = content;
+        mem[INDX] = content;
+        mem[INDY_P] = content;
+        mem[INDY_O] = content;
     }
 
     /**
@@ -64,6 +82,26 @@ public class Deassembler {
                 op2, s.opcode.name, modes[s.opcode.mode].apply(s));
     }
 
+    /**
+     * Analyse an instruction, followed by the memory content at its
+     * effective address. The content is read after the instruction ran.
+     * Example:
+     * C000  8D 00 03  STA $0300 = 05
+     * @param s cpu status
+     * @param bus bus the instruction ran on
+     * @return String representation
+     */
+    public static String analyse(CPUStatus s, Bus bus) {
+        String text = analyse(s);
+        BiFunction<CPUStatus, Bus, String> content = mem[s.opcode.mode];
+        // Jumps use the address as target rather than accessing it
+        if (content == null || s.address < 0 || s.opcode.name.equals("JMP")
+                || s.opcode.name.equals("JSR"))
+            return text;
+
+        return text + content.apply(s, bus);
+    }
+
     /**
      * Shows the CPU and PPU status in String format
      * @param s CPU Status
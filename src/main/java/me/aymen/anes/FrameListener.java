@@ -0,0 +1,15 @@
+package me.aymen.anes;
+
+/**
+ * Notified by the PPU each time a frame is completed
+ */
+@FunctionalInterface
+public interface FrameListener {
+
+    /**
+     * Invoked on the emulation thread once the visible part of a frame has
+     * been produced. The frame buffer is only valid until the call returns
+     * @param ppu PPU that produced the frame
+     */
+    void frameCompleted(PPU ppu);
+}
@@ -29,10 +29,20 @@ public class Inst {
      */
     public Function operation;
 
+    /**
+     * Whether the operation reads the value at its effective address.
+     * Stores and jumps only use the address, and must not read it, as
+     * reading some registers has side effects
+     */
+    public boolean read;
+
     public Inst(String name, int cycles, int mode, Function operation) {
         this.name = name;
         this.cycles = cycles;
         this.mode = mode;
         this.operation = operation;
+        read = !name.equals("STA") && !name.equals("STX")
+                && !name.equals("STY") && !name.equals("*SAX")
+                && !name.equals("JMP") && !name.equals("JSR");
     }
 }
@@ -0,0 +1,388 @@
+package me.aymen.anes;
+
+import me.aymen.anes.apu.APU;
+import me.aymen.anes.debug.Debugger;
+import me.aymen.anes.exception.InvalidStateException;
+import me.aymen.anes.hash.Hash64;
+import me.aymen.anes.input.ControllerPorts;
+import me.aymen.anes.memory.Bus;
+import me.aymen.anes.memory.Cartridge;
+import me.aymen.anes.metrics.FrameEvent;
+import me.aymen.anes.metrics.InterruptEvent;
+import me.aymen.anes.metrics.SaveStateEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The NES board. Connects CPU, PPU, APU and Cartridge through the Bus and
+ * keeps them in step with each other
+ */
+public class NES {
+
+    /**
+     * Version of emulation behaviour. Must be raised by any change that
+     * makes the same input lead to a different state, so that states
+     * cached from an older version are not reused
+     */
+    public static final int EMULATION_VERSION = 5;
+
+    /**
+     * Version of the save state layout. States of other versions are
+     * rejected
+     */
+    public static final int STATE_VERSION = 1;
+
+    // "ANST"
+    private static final int STATE_MAGIC = 0x414E5354;
+
+    private final Bus bus;
+    private final Cartridge cartridge;
+    private final CPU cpu;
+    private final PPU ppu;
+    private final APU apu;
+    private final ControllerPorts controllers;
+
+    // Attached debugger, and pages it holds breakpoints on
+    private Debugger debugger;
+    private boolean[] breakPages;
+    private boolean suspended;
+
+    // Steps run since created
+    private long steps;
+
+    public NES() {
+        this(new Bus());
+    }
+
+    /**
+     * Build a board around a given Bus. Allows Bus variants to be used
+     * @param bus Bus to use
+     */
+    public NES(Bus bus) {
+        this(bus, new Cartridge(bus), new PPU());
+    }
+
+    private NES(Bus bus, Cartridge cartridge, PPU ppu) {
+        this.bus = bus;
+        this.cartridge = cartridge;
+        this.ppu = ppu;
+        bus.attach(ppu, 0x2000, 0x2007);
+        cpu = new CPU(bus);
+        apu = new APU(bus, cpu);
+        bus.attachWrite(new OAMDMA(bus, ppu, cpu), 0x4014, 0x4014);
+        bus.attach(apu, 0x4000, 0x4013);
+        bus.attach(apu, 0x4015, 0x4015);
+        bus.attach(apu, 0x4017, 0x4017);
+        controllers = new ControllerPorts();
+        bus.attach(controllers, 0x4016, 0x4016);
+        // 0x4017 is only the second controller on read
+        bus.attachRead(controllers, 0x4017, 0x4017);
+        ppu.addFrameListener(controllers);
+    }
+
+    /**
+     * Load a ROM file and reset the CPU
+     * @param file path to file
+     */
+    public void load(String file) {
+        cartridge.load(file);
+        cpu.reset();
+        apu.reset();
+    }
+
+    /**
+     * Service a pending interrupt, execute one CPU instruction, then bring
+     * the PPU up to date. The APU is only brought up to date when it has an
+     * event due. Frames complete at the very end of a step, so frame
+     * listeners see a state that can be saved and resumed
+     * @return number of CPU cycles consumed
+     */
+    public int step() {
+        int cycles = 0;
+        if (cpu.getCycles() - apu.getNextEvent() >= 0) {
+            // DMC sample fetches stall the CPU
+            int start = cpu.getCycles();
+            apu.catchUp();
+            cycles = cpu.getCycles() - start;
+        }
+
+        if (ppu.pollNMI()) {
+            cycles += cpu.nmi();
+            InterruptEvent.commit(true, cpu.getPC(), cpu.getCycles());
+        } else if (apu.isIRQ()) {
+            int irq = cpu.irq();
+            if (irq > 0)
+                InterruptEvent.commit(false, cpu.getPC(), cpu.getCycles());
+            cycles += irq;
+        }
+
+        // Breakpoints stop before the instruction runs
+        if (breakPages != null && breakPages[cpu.getPC() >> 8]
+                && debugger.breakAt(cpu.getPC())) {
+            ppu.clock(cycles);
+            return cycles;
+        }
+
+        cycles += cpu.step();
+        steps++;
+        ppu.clock(cycles);
+
+        return cycles;
+    }
+
+    /**
+     * Stop {@link #runFrame()} at the end of the current step, until
+     * resumed. Meant for debuggers
+     */
+    public void suspend() {
+        suspended = true;
+    }
+
+    public void resume() {
+        suspended = false;
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * Attach a debugger, checked before each instruction on pages it holds
+     * breakpoints on. Done by {@link Debugger} itself
+     * @param debugger debugger, or null to detach
+     */
+    public void setDebugger(Debugger debugger) {
+        this.debugger = debugger;
+        breakPages = debugger == null ? null : debugger.getBreakPages();
+    }
+
+    public Debugger getDebugger() {
+        return debugger;
+    }
+
+    /**
+     * Number of steps run since created
+     * @return steps
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Run until the PPU completes the current frame, then bring the APU up
+     * to date so the frame's samples can be read. Returns early if
+     * suspended, see {@link #suspend()}
+     */
+    public void runFrame() {
+        FrameEvent event = new FrameEvent();
+        event.begin();
+
+        int frame = ppu.getFrameCount();
+        int start = cpu.getCycles();
+        while (ppu.getFrameCount() == frame && !suspended)
+            step();
+
+        apu.catchUp();
+
+        if (event.shouldCommit()) {
+            event.frame = ppu.getFrameCount();
+            event.cycles = cpu.getCycles() - start;
+            event.emulatedTime = (long) (event.cycles * 1e9 / APU.CLOCK_RATE);
+            event.commit();
+        }
+    }
+
+    /**
+     * Create an independent copy of the machine in its current state, for
+     * branching in a search. Memory is forked page by page (see
+     * {@link Bus#fork()}), so the copy costs little more than constructing
+     * the components, and memory use only grows with pages written. The
+     * PPU frame is shared the same way until either machine draws. Frame
+     * listeners other than the controllers, and published buttons, are
+     * not copied. Must be called between steps
+     * @return forked machine
+     */
+    public NES fork() {
+        Bus forked = bus.fork();
+        NES child = new NES(forked, new Cartridge(forked, cartridge),
+                new PPU(ppu));
+
+        // Components other than memory hold a few hundred bytes of state
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+        try {
+            saveComponents(new DataOutputStream(buffer));
+            child.loadComponents(new DataInputStream(
+                    new ByteArrayInputStream(buffer.toByteArray())));
+        } catch (IOException e) {
+            // Not thrown by a byte array
+            throw new IllegalStateException(e);
+        }
+
+        return child;
+    }
+
+    /**
+     * Save the state of all components other than memory: CPU, PPU, APU
+     * and controllers. A few hundred bytes
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    public void saveComponents(DataOutput out) throws IOException {
+        cpu.save(out);
+        ppu.save(out);
+        apu.save(out);
+        controllers.save(out);
+    }
+
+    /**
+     * Restore state saved by {@link #saveComponents(DataOutput)}
+     * @param in source
+     * @throws IOException if reading fails
+     */
+    public void loadComponents(DataInput in) throws IOException {
+        cpu.load(in);
+        ppu.load(in);
+        apu.load(in);
+        controllers.load(in);
+    }
+
+    /**
+     * Save the state of all components. ROM is not included, so the state
+     * can only be loaded with the same cartridge
+     * @return saved state
+     */
+    public byte[] saveState() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(0x8400);
+        try {
+            saveState(out);
+        } catch (IOException e) {
+            // Not thrown by a byte array
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Save the state of all components to a stream
+     * @param stream destination. Not closed
+     * @throws IOException if writing fails
+     */
+    public void saveState(OutputStream stream) throws IOException {
+        SaveStateEvent event = new SaveStateEvent();
+        event.begin();
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(STATE_MAGIC);
+        out.writeInt(STATE_VERSION);
+        cpu.save(out);
+        bus.save(out);
+        ppu.save(out);
+        apu.save(out);
+        controllers.save(out);
+        out.flush();
+
+        if (event.shouldCommit()) {
+            event.size = out.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Restore a state returned by {@link #saveState()}
+     * @param state saved state
+     */
+    public void loadState(byte[] state) {
+        try {
+            loadState(new ByteArrayInputStream(state));
+        } catch (IOException e) {
+            throw new InvalidStateException("Truncated state");
+        }
+    }
+
+    /**
+     * Restore a state from a stream
+     * @param stream source. Not closed
+     * @throws IOException if reading fails
+     */
+    public void loadState(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != STATE_MAGIC)
+            throw new InvalidStateException("Invalid state header");
+        int version = in.readInt();
+        if (version != STATE_VERSION)
+            throw new InvalidStateException("Unsupported state version "
+                    + version);
+
+        try {
+            cpu.load(in);
+            bus.load(in);
+            ppu.load(in);
+            apu.load(in);
+            controllers.load(in);
+        } catch (EOFException e) {
+            throw new InvalidStateException("Truncated state");
+        }
+    }
+
+    /**
+     * Fingerprint of the machine state in constant time, combining the
+     * incremental memory hash (see {@link Bus#getHash()}) with CPU
+     * registers and flags. PPU and APU state are not included, so states
+     * differing only in timing within a frame share a fingerprint.
+     * Collisions are as likely as those of the memory hash
+     * @return 64 bit fingerprint
+     */
+    public long getStateHash() {
+        long registers = cpu.getA()
+                | (long) cpu.getX() << 8
+                | (long) cpu.getY() << 16
+                | (long) cpu.getSP() << 24
+                | (long) cpu.getFlags().getStatus() << 32
+                | (long) cpu.getPC() << 40;
+        return bus.getHash() ^ Hash64.mix(registers);
+    }
+
+    /**
+     * Hash of the ROM as mapped at 0x8000 to 0xFFFF. Identifies the
+     * cartridge a state or recording belongs to
+     * @return 64 bit hash
+     */
+    public long getROMHash() {
+        int[] rom = new int[0x8000];
+        bus.peek(0x8000, rom, 0, rom.length);
+        return Hash64.hash(rom, 0, rom.length);
+    }
+
+    public Bus getBus() {
+        return bus;
+    }
+
+    public Cartridge getCartridge() {
+        return cartridge;
+    }
+
+    public CPU getCPU() {
+        return cpu;
+    }
+
+    public PPU getPPU() {
+        return ppu;
+    }
+
+    public APU getAPU() {
+        return apu;
+    }
+
+    public ControllerPorts getControllers() {
+        return controllers;
+    }
+}
@@ -0,0 +1,54 @@
+package me.aymen.anes;
+
+import me.aymen.anes.memory.Bus;
+import me.aymen.anes.memory.IODevice;
+import me.aymen.anes.metrics.DMAEvent;
+
+/**
+ * OAM DMA ($4014). Writing a page number copies that page of CPU memory
+ * to sprite memory through OAMDATA, stalling the CPU meanwhile
+ */
+class OAMDMA implements IODevice {
+
+    private final Bus bus;
+    private final PPU ppu;
+    private final CPU cpu;
+
+    OAMDMA(Bus bus, PPU ppu, CPU cpu) {
+        this.bus = bus;
+        this.ppu = ppu;
+        this.cpu = cpu;
+    }
+
+    @Override
+    public int read(int index) {
+        // Write only
+        return 0;
+    }
+
+    @Override
+    public int peek(int index) {
+        return 0;
+    }
+
+    @Override
+    public void write(int value, int index) {
+        DMAEvent event = new DMAEvent();
+        event.begin();
+
+        int base = value << 8;
+        for (int i = 0; i < 0x100; i++)
+            ppu.write(bus.dmaRead(base + i), 0x2004);
+
+        // One cycle to halt, one more to align on odd cycles, then a read
+        // and a write for each byte
+        int cycles = 513 + (cpu.getCycles() & 1);
+        cpu.stall(cycles);
+
+        if (event.shouldCommit()) {
+            event.page = value;
+            event.cycles = cycles;
+            event.commit();
+        }
+    }
+}
@@ -1,4 +1,303 @@
 package me.aymen.anes;
 
-public class PPU {
+import me.aymen.anes.memory.IODevice;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picture Processing Unit.
+ * Only timing, registers and the output side are present for now. The frame
+ * is kept as palette indices rather than colours, leaving colour conversion
+ * to {@link me.aymen.anes.video.Palette}.
+ */
+public class PPU implements IODevice {
+    public static final int WIDTH = 256;
+    public static final int HEIGHT = 240;
+
+    // NTSC timing
+    public static final int DOTS = 341;
+    public static final int SCANLINES = 262;
+    private static final int VBLANK_SCANLINE = 241;
+    private static final int PRE_RENDER_SCANLINE = 261;
+
+    // Each pixel holds the 6 bit palette index in bits 0 to 5, and the
+    // colour emphasis bits of PPUMASK in bits 6 to 8. The value can be
+    // used directly as an index to a Palette lookup table
+    private int[] frame;
+    // Whether the frame array is also used by a fork or the PPU forked
+    // from. Cleared once copied by frame()
+    private boolean frameShared;
+
+    // Object Attribute Memory
+    private final int[] oam;
+
+    private final List<FrameListener> listeners;
+
+    // Registers
+    private int ctrl;       // PPUCTRL ($2000)
+    private int mask;       // PPUMASK ($2001)
+    private int oamAddr;    // OAMADDR ($2003)
+    // Last value written to any register. Returned by write only registers
+    private int latch;
+
+    // Status
+    private boolean vblank;
+    private boolean nmi;
+
+    // Timing
+    private int dot;
+    private int scanline;
+    private int frameCount;
+
+    public PPU() {
+        frame = new int[WIDTH * HEIGHT];
+        oam = new int[256];
+        listeners = new ArrayList<>();
+    }
+
+    /**
+     * Create a PPU for a forked machine. The frame is shared with the PPU
+     * forked from rather than allocated, as both hold the same picture.
+     * Whichever draws first copies it, see {@link #frame()}
+     * @param parent PPU forked from
+     */
+    PPU(PPU parent) {
+        frame = parent.frame;
+        frameShared = true;
+        parent.frameShared = true;
+        oam = new int[256];
+        listeners = new ArrayList<>();
+    }
+
+    /**
+     * Advance the PPU by the given CPU cycles. The PPU runs three dots for
+     * each CPU cycle
+     * @param cycles CPU cycles elapsed
+     */
+    public void clock(int cycles) {
+        dot += cycles * 3;
+
+        while (dot >= DOTS) {
+            dot -= DOTS;
+            scanline++;
+
+            if (scanline == VBLANK_SCANLINE) {
+                vblank = true;
+                if ((ctrl & 0x80) == 0x80)
+                    nmi = true;
+                frameCount++;
+                frameCompleted();
+            } else if (scanline == PRE_RENDER_SCANLINE) {
+                vblank = false;
+            } else if (scanline == SCANLINES) {
+                scanline = 0;
+            }
+        }
+    }
+
+    /**
+     * Whether an NMI was raised since last call. The request is cleared
+     * once polled
+     * @return true if NMI must be serviced
+     */
+    public boolean pollNMI() {
+        boolean result = nmi;
+        nmi = false;
+        return result;
+    }
+
+    @Override
+    public int read(int index) {
+        switch (index) {
+            // PPUSTATUS
+            case 0x2002:
+                int status = (vblank ? 0x80 : 0) | (latch & 0x1F);
+                vblank = false;
+                return status;
+            // OAMDATA
+            case 0x2004:
+                return oam[oamAddr];
+            // Write only registers return what was last written
+            // TODO PPUDATA ($2007) once VRAM is implemented
+            default:
+                return latch;
+        }
+    }
+
+    @Override
+    public int peek(int index) {
+        switch (index) {
+            case 0x2002:
+                return (vblank ? 0x80 : 0) | (latch & 0x1F);
+            case 0x2004:
+                return oam[oamAddr];
+            default:
+                return latch;
+        }
+    }
+
+    @Override
+    public void write(int value, int index) {
+        latch = value;
+
+        switch (index) {
+            // PPUCTRL
+            case 0x2000:
+                // Enabling NMI during vertical blank triggers it immediately
+                if ((ctrl & 0x80) == 0 && (value & 0x80) == 0x80 && vblank)
+                    nmi = true;
+                ctrl = value;
+                break;
+            // PPUMASK
+            case 0x2001:
+                mask = value;
+                break;
+            // OAMADDR
+            case 0x2003:
+                oamAddr = value;
+                break;
+            // OAMDATA
+            case 0x2004:
+                oam[oamAddr] = value;
+                oamAddr = (oamAddr + 1) & 0xFF;
+                break;
+            // TODO PPUSCROLL, PPUADDR and PPUDATA once VRAM is implemented
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Write PPU state. The frame is output rather than state, and is not
+     * included
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    public void save(DataOutput out) throws IOException {
+        byte[] data = new byte[oam.length];
+        for (int i = 0; i < oam.length; i++)
+            data[i] = (byte) oam[i];
+        out.write(data);
+        out.writeByte(ctrl);
+        out.writeByte(mask);
+        out.writeByte(oamAddr);
+        out.writeByte(latch);
+        out.writeBoolean(vblank);
+        out.writeBoolean(nmi);
+        out.writeShort(dot);
+        out.writeShort(scanline);
+        out.writeInt(frameCount);
+    }
+
+    /**
+     * Restore PPU state
+     * @param in source
+     * @throws IOException if reading fails
+     */
+    public void load(DataInput in) throws IOException {
+        byte[] data = new byte[oam.length];
+        in.readFully(data);
+        for (int i = 0; i < oam.length; i++)
+            oam[i] = data[i] & 0xFF;
+        ctrl = in.readUnsignedByte();
+        mask = in.readUnsignedByte();
+        oamAddr = in.readUnsignedByte();
+        latch = in.readUnsignedByte();
+        vblank = in.readBoolean();
+        nmi = in.readBoolean();
+        dot = in.readUnsignedShort();
+        scanline = in.readUnsignedShort();
+        frameCount = in.readInt();
+    }
+
+    /**
+     * Converts a palette index to the value stored in the frame, applying
+     * the grayscale and colour emphasis bits of PPUMASK
+     * @param index palette index (0x00 to 0x3F)
+     * @return frame entry
+     */
+    public int pixel(int index) {
+        // Grayscale keeps the luminance column only
+        if ((mask & 0x01) == 0x01)
+            index &= 0x30;
+
+        return (index & 0x3F) | ((mask & 0xE0) << 1);
+    }
+
+    /**
+     * Register a listener to be notified of each completed frame
+     * @param listener listener to add
+     */
+    public void addFrameListener(FrameListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeFrameListener(FrameListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Current picture, for reading only. It may be shared with forks, and
+     * is replaced by a copy when first drawn into, so it must not be kept
+     * across steps
+     * @return frame
+     */
+    public int[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * Frame to draw into. A frame shared with a fork is copied first, so
+     * drawing never changes the other machine's picture. Rendering must
+     * write through this rather than the field
+     * @return frame owned by this PPU
+     */
+    int[] frame() {
+        if (frameShared) {
+            frame = frame.clone();
+            frameShared = false;
+        }
+        return frame;
+    }
+
+    public int[] getOAM() {
+        return oam;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public void setMask(int mask) {
+        this.mask = mask & 0xFF;
+    }
+
+    public int getCtrl() {
+        return ctrl;
+    }
+
+    public int getDot() {
+        return dot;
+    }
+
+    public int getScanline() {
+        return scanline;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Notify listeners that a frame is completed
+     */
+    private void frameCompleted() {
+        // Indexed loop avoids creating an iterator each frame
+        for (int i = 0; i < listeners.size(); i++)
+            listeners.get(i).frameCompleted(this);
+    }
 }
@@ -0,0 +1,256 @@
+package me.aymen.anes.analysis;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.exception.InvalidStateException;
+import me.aymen.anes.memory.Bus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Static disassembly of a ROM. Code is found by recursive descent: from the
+ * NMI, reset and IRQ vectors, following branches, jumps and calls, so that
+ * bytes never reached are left as data. Indirect jumps are not followed.
+ * <p>
+ * The PRG ROM is split into 16KB banks as mapped at 0x8000 to 0xFFFF, each
+ * analysed into a {@link CodeMap}. Banks are explored in parallel, in rounds:
+ * targets found in one bank become entries of another for the next round,
+ * until no new code is found.
+ * <p>
+ * Indexes are cached in a directory by ROM hash and {@link #VERSION}, see
+ * {@link #load(Path, NES)}.
+ */
+public class CodeIndex {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(CodeIndex.class);
+
+    /**
+     * Version of the analysis. Must be raised by any change to the results,
+     * so that cached indexes from an older version are not reused
+     */
+    public static final int VERSION = 1;
+
+    // "ANCI"
+    private static final int MAGIC = 0x414E4349;
+
+    private static final int BANK_SIZE = 0x4000;
+
+    private final long romHash;
+    private final List<CodeMap> banks;
+
+    private CodeIndex(long romHash, List<CodeMap> banks) {
+        this.romHash = romHash;
+        this.banks = Collections.unmodifiableList(banks);
+    }
+
+    /**
+     * Analyse the ROM of a machine, using the common pool
+     * @param nes machine with a ROM loaded
+     * @return index of the ROM
+     */
+    public static CodeIndex analyse(NES nes) {
+        return analyse(nes, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Analyse the ROM of a machine
+     * @param nes machine with a ROM loaded
+     * @param pool where banks are analysed
+     * @return index of the ROM
+     */
+    public static CodeIndex analyse(NES nes, ForkJoinPool pool) {
+        Bus bus = nes.getBus();
+        List<CodeMap> banks = new ArrayList<>();
+        if (nes.getCartridge().getPrgBank() == 1) {
+            // Mirrored at 0x8000 and 0xC000
+            banks.add(new CodeMap(peek(bus, 0xC000), 0x8000, 0x8000,
+                    0xC000));
+        } else {
+            banks.add(new CodeMap(peek(bus, 0x8000), 0x8000, BANK_SIZE,
+                    0x8000));
+            banks.add(new CodeMap(peek(bus, 0xC000), 0xC000, BANK_SIZE,
+                    0xC000));
+        }
+
+        List<Integer> entries = new ArrayList<>();
+        for (int vector = 0xFFFA; vector < 0x10000; vector += 2)
+            entries.add(bus.peek(vector) | bus.peek(vector + 1) << 8);
+
+        while (true) {
+            for (int entry : entries)
+                for (CodeMap bank : banks)
+                    bank.addEntry(entry);
+
+            List<Callable<List<Integer>>> tasks = new ArrayList<>();
+            for (CodeMap bank : banks)
+                if (bank.hasEntries())
+                    tasks.add(bank::explore);
+            if (tasks.isEmpty())
+                break;
+
+            entries.clear();
+            for (Future<List<Integer>> result : pool.invokeAll(tasks))
+                entries.addAll(join(result));
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (CodeMap bank : banks)
+            tasks.add(() -> {
+                bank.buildBlocks();
+                return null;
+            });
+        for (Future<Object> result : pool.invokeAll(tasks))
+            join(result);
+
+        return new CodeIndex(nes.getROMHash(), banks);
+    }
+
+    /**
+     * Index of the ROM of a machine from a cache directory, analysed and
+     * stored on the first call for a ROM
+     * @param directory where indexes are cached. Created if missing
+     * @param nes machine with a ROM loaded
+     * @return index of the ROM
+     */
+    public static CodeIndex load(Path directory, NES nes) {
+        Path file = directory.resolve(String.format("%016x-v%d.idx",
+                nes.getROMHash(), VERSION));
+
+        if (Files.exists(file)) {
+            try {
+                CodeIndex index = read(file);
+                if (index.romHash == nes.getROMHash())
+                    return index;
+                logger.warn("Discarding index {} of another ROM", file);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Discarding unreadable index {}", file, e);
+            }
+        }
+
+        CodeIndex index = analyse(nes);
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "index", ".tmp");
+            index.write(temporary);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not cache index {}", file, e);
+        }
+        return index;
+    }
+
+    /**
+     * Write the index to a file, compressed
+     * @param file destination
+     * @throws IOException if writing fails
+     */
+    public void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new DeflaterOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(romHash);
+            out.writeInt(banks.size());
+            for (CodeMap bank : banks)
+                bank.save(out);
+        }
+    }
+
+    /**
+     * Read an index written by {@link #write(Path)}
+     * @param file source
+     * @return index
+     * @throws IOException if reading fails
+     */
+    public static CodeIndex read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC)
+                throw new InvalidStateException("Invalid index header");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new InvalidStateException("Unsupported index version "
+                        + version);
+
+            long romHash = in.readLong();
+            int count = in.readInt();
+            List<CodeMap> banks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                banks.add(CodeMap.load(in));
+            return new CodeIndex(romHash, banks);
+        } catch (EOFException e) {
+            throw new InvalidStateException("Truncated index");
+        }
+    }
+
+    /**
+     * @return hash of the ROM analysed, see {@link NES#getROMHash()}
+     */
+    public long getROMHash() {
+        return romHash;
+    }
+
+    public List<CodeMap> getBanks() {
+        return banks;
+    }
+
+    /**
+     * Bank mapped at an address
+     * @param address CPU address
+     * @return bank, or null if not in ROM
+     */
+    public CodeMap getBank(int address) {
+        for (CodeMap bank : banks)
+            if (bank.contains(address))
+                return bank;
+        return null;
+    }
+
+    /**
+     * Whether an address holds code found by the analysis
+     * @param address CPU address
+     * @return true if code in ROM
+     */
+    public boolean isCode(int address) {
+        CodeMap bank = getBank(address);
+        return bank != null && bank.isCode(address);
+    }
+
+    private static int[] peek(Bus bus, int address) {
+        int[] data = new int[BANK_SIZE];
+        bus.peek(address, data, 0, data.length);
+        return data;
+    }
+
+    private static <T> T join(Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package me.aymen.anes.analysis;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.Inst;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static me.aymen.anes.AddressMode.*;
+
+/**
+ * Code and data of a PRG bank found by recursive descent, and the control
+ * flow graph of its basic blocks. Built by {@link CodeIndex}.
+ * <p>
+ * A bank is mapped in a window of CPU addresses, mirrored if the window is
+ * larger than the bank. Addresses returned are canonical: those of the
+ * mirror starting at the base address.
+ */
+public class CodeMap {
+
+    // Kinds of bytes
+    public static final int UNKNOWN = 0;
+    public static final int OPCODE = 1;
+    public static final int OPERAND = 2;
+
+    // How a block ends. Blocks ending otherwise fall through or jump
+    public static final int CALL = 0x01;        // JSR, returning after it
+    public static final int RETURN = 0x02;      // RTS or RTI
+    public static final int INDIRECT = 0x04;    // JMP ($xxxx)
+    public static final int STOP = 0x08;        // BRK, or runs into data
+
+    // Length of instructions by address mode
+    private static final int[] LENGTH = new int[SIZE];
+
+    static {
+        Arrays.fill(LENGTH, 2);
+        LENGTH[IMPL] = 1;
+        LENGTH[ACC] = 1;
+        LENGTH[ABS] = 3;
+        LENGTH[ABSX_P] = 3;
+        LENGTH[ABSX_O] = 3;
+        LENGTH[ABSY_P] = 3;
+        LENGTH[ABSY_O] = 3;
+        LENGTH[IND] = 3;
+    }
+
+    private final int start;
+    private final int window;
+    private final int base;
+    private final int[] data;
+    private final byte[] kinds;
+
+    // Analysis state
+    private final boolean[] leaders;
+    private int[] queue;
+    private int queued;
+    private int conflicts;
+
+    // Blocks, by offset. Successors of block i are
+    // successors[successorStart[i]] to successors[successorStart[i + 1]]
+    private int[] blockStart;
+    private int[] blockEnd;
+    private int[] blockFlags;
+    private int[] successorStart;
+    private int[] successors;
+
+    /**
+     * @param data bank content, a power of two in size
+     * @param start first address of the window the bank is mapped in
+     * @param window size of the window, a multiple of the bank size
+     * @param base address of the canonical mirror
+     */
+    CodeMap(int[] data, int start, int window, int base) {
+        this.data = data;
+        this.start = start;
+        this.window = window;
+        this.base = base;
+        kinds = new byte[data.length];
+        leaders = new boolean[data.length];
+        queue = new int[64];
+    }
+
+    /**
+     * Queue an address to explore from
+     * @return true if the address is in this bank and was not known as an
+     * instruction yet
+     */
+    boolean addEntry(int address) {
+        if (!contains(address))
+            return false;
+
+        int offset = offset(address);
+        leaders[offset] = true;
+        if (kinds[offset] == OPCODE)
+            return false;
+
+        if (queued == queue.length)
+            queue = Arrays.copyOf(queue, queued * 2);
+        queue[queued++] = offset;
+        return true;
+    }
+
+    boolean hasEntries() {
+        return queued > 0;
+    }
+
+    /**
+     * Follow queued entries through all branches, jumps and calls
+     * @return targets outside of this bank
+     */
+    List<Integer> explore() {
+        List<Integer> external = new ArrayList<>();
+
+        while (queued > 0) {
+            int offset = queue[--queued];
+
+            while (true) {
+                if (kinds[offset] == OPCODE)
+                    break;
+                Inst inst = CPU.getInst(data[offset]);
+                if (kinds[offset] != UNKNOWN || inst == null
+                        || !free(offset, LENGTH[inst.mode])) {
+                    // Overlapping instructions or data
+                    if (kinds[offset] != UNKNOWN || inst != null)
+                        conflicts++;
+                    break;
+                }
+
+                int length = LENGTH[inst.mode];
+                kinds[offset] = OPCODE;
+                for (int i = 1; i < length; i++)
+                    kinds[offset + i] = OPERAND;
+
+                int next = offset + length;
+                int target = target(offset, inst);
+                if (target != -1 && !addEntry(target) && !contains(target))
+                    external.add(target);
+
+                if (ends(inst))
+                    break;
+                if (inst.mode == REL || inst.name.equals("JSR")) {
+                    if (next < data.length)
+                        leaders[next] = true;
+                }
+                if (next >= data.length)
+                    break;
+                offset = next;
+            }
+        }
+
+        return external;
+    }
+
+    /**
+     * Split explored code into basic blocks
+     */
+    void buildBlocks() {
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        List<Integer> flags = new ArrayList<>();
+        List<Integer> edges = new ArrayList<>();
+        List<Integer> edgeStarts = new ArrayList<>();
+
+        int offset = 0;
+        boolean open = false;
+        while (offset < data.length) {
+            if (kinds[offset] != OPCODE) {
+                offset++;
+                continue;
+            }
+
+            if (open && leaders[offset]) {
+                // Falls through into another block
+                ends.add(offset);
+                flags.add(0);
+                edges.add(address(offset));
+                open = false;
+            }
+            if (!open) {
+                starts.add(offset);
+                edgeStarts.add(edges.size());
+                open = true;
+            }
+
+            Inst inst = CPU.getInst(data[offset]);
+            int next = offset + LENGTH[inst.mode];
+            int target = target(offset, inst);
+            int flag = -1;
+
+            if (inst.mode == REL) {
+                flag = 0;
+                edges.add(canonical(target));
+                edges.add(address(next));
+            } else if (inst.name.equals("JSR")) {
+                flag = CALL;
+                edges.add(canonical(target));
+                edges.add(address(next));
+            } else if (inst.name.equals("JMP")) {
+                if (inst.mode == IND) {
+                    flag = INDIRECT;
+                } else {
+                    flag = 0;
+                    edges.add(canonical(target));
+                }
+            } else if (inst.name.equals("RTS") || inst.name.equals("RTI")) {
+                flag = RETURN;
+            } else if (inst.name.equals("BRK")) {
+                flag = STOP;
+            } else if (next >= data.length || kinds[next] != OPCODE) {
+                flag = STOP;
+            }
+
+            if (flag != -1) {
+                ends.add(next);
+                flags.add(flag);
+                open = false;
+            }
+            offset = next;
+        }
+
+        int count = starts.size();
+        blockStart = toArray(starts);
+        blockEnd = toArray(ends);
+        blockFlags = toArray(flags);
+        successors = toArray(edges);
+        successorStart = Arrays.copyOf(toArray(edgeStarts), count + 1);
+        successorStart[count] = successors.length;
+
+        // Analysis state is no longer needed
+        queue = new int[0];
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getBase() {
+        return base;
+    }
+
+    /**
+     * @return size of the bank in bytes
+     */
+    public int getSize() {
+        return data.length;
+    }
+
+    /**
+     * Whether an address is within the window of this bank
+     * @param address CPU address
+     * @return true if mapped to this bank
+     */
+    public boolean contains(int address) {
+        return address >= start && address < start + window;
+    }
+
+    /**
+     * Kind of byte at an address
+     * @param address CPU address within the window
+     * @return {@link #UNKNOWN}, {@link #OPCODE} or {@link #OPERAND}
+     */
+    public int getKind(int address) {
+        return kinds[offset(address)];
+    }
+
+    /**
+     * Whether an address holds code. Bytes that are not code are taken to
+     * be data, though they may also be code only reached indirectly
+     * @param address CPU address within the window
+     * @return true if opcode or operand
+     */
+    public boolean isCode(int address) {
+        return kinds[offset(address)] != UNKNOWN;
+    }
+
+    /**
+     * Number of times exploration ran into bytes already decoded
+     * differently, or into an unsupported opcode
+     * @return conflicts
+     */
+    public int getConflicts() {
+        return conflicts;
+    }
+
+    public int getBlockCount() {
+        return blockStart.length;
+    }
+
+    /**
+     * @param block block index
+     * @return canonical address of the first instruction
+     */
+    public int getBlockStart(int block) {
+        return address(blockStart[block]);
+    }
+
+    /**
+     * @param block block index
+     * @return canonical address after the last instruction
+     */
+    public int getBlockEnd(int block) {
+        return address(blockEnd[block] - 1) + 1;
+    }
+
+    /**
+     * @param block block index
+     * @return how the block ends, as {@link #CALL}, {@link #RETURN},
+     * {@link #INDIRECT} or {@link #STOP}, or 0 for jumps and fall through
+     */
+    public int getBlockFlags(int block) {
+        return blockFlags[block];
+    }
+
+    /**
+     * Blocks control may pass to. Calls list the routine called, then the
+     * block returned to. Addresses outside this bank, such as code in RAM
+     * or other banks, are included as they are
+     * @param block block index
+     * @return addresses of successors
+     */
+    public int[] getSuccessors(int block) {
+        return Arrays.copyOfRange(successors, successorStart[block],
+                successorStart[block + 1]);
+    }
+
+    /**
+     * Block holding an address
+     * @param address CPU address
+     * @return block index, or -1 if not in a block
+     */
+    public int findBlock(int address) {
+        if (!contains(address))
+            return -1;
+
+        int offset = offset(address);
+        int index = Arrays.binarySearch(blockStart, offset);
+        if (index < 0)
+            index = -index - 2;
+        return index >= 0 && offset < blockEnd[index] ? index : -1;
+    }
+
+    void save(DataOutput out) throws IOException {
+        out.writeInt(start);
+        out.writeInt(window);
+        out.writeInt(base);
+        out.writeInt(data.length);
+        for (int value : data)
+            out.writeByte(value);
+        out.write(kinds);
+        out.writeInt(conflicts);
+
+        out.writeInt(blockStart.length);
+        for (int i = 0; i < blockStart.length; i++) {
+            out.writeShort(blockStart[i]);
+            out.writeShort(blockEnd[i] - blockStart[i]);
+            out.writeByte(blockFlags[i]);
+            out.writeByte(successorStart[i + 1] - successorStart[i]);
+            for (int j = successorStart[i]; j < successorStart[i + 1]; j++)
+                out.writeShort(successors[j]);
+        }
+    }
+
+    static CodeMap load(DataInput in) throws IOException {
+        int start = in.readInt();
+        int window = in.readInt();
+        int base = in.readInt();
+        int[] data = new int[in.readInt()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = in.readUnsignedByte();
+
+        CodeMap map = new CodeMap(data, start, window, base);
+        in.readFully(map.kinds);
+        map.conflicts = in.readInt();
+
+        int count = in.readInt();
+        map.blockStart = new int[count];
+        map.blockEnd = new int[count];
+        map.blockFlags = new int[count];
+        map.successorStart = new int[count + 1];
+        List<Integer> edges = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            map.blockStart[i] = in.readUnsignedShort();
+            map.blockEnd[i] = map.blockStart[i] + in.readUnsignedShort();
+            map.blockFlags[i] = in.readUnsignedByte();
+            int successors = in.readUnsignedByte();
+            map.successorStart[i] = edges.size();
+            for (int j = 0; j < successors; j++)
+                edges.add(in.readUnsignedShort());
+        }
+        map.successorStart[count] = edges.size();
+        map.successors = toArray(edges);
+        map.queue = new int[0];
+
+        return map;
+    }
+
+    /**
+     * Address an instruction transfers control to, if known statically
+     * @return target address, or -1 if none
+     */
+    private int target(int offset, Inst inst) {
+        if (inst.mode == REL) {
+            int next = address(offset) + 2;
+            return (next + (byte) data[offset + 1]) & 0xFFFF;
+        }
+        if (inst.mode == ABS && (inst.name.equals("JMP")
+                || inst.name.equals("JSR")))
+            return data[offset + 1] | data[offset + 2] << 8;
+        return -1;
+    }
+
+    private static boolean ends(Inst inst) {
+        return inst.name.equals("JMP") || inst.name.equals("RTS")
+                || inst.name.equals("RTI") || inst.name.equals("BRK");
+    }
+
+    /**
+     * Whether an instruction fits in the bank without overlapping others
+     */
+    private boolean free(int offset, int length) {
+        if (offset + length > data.length)
+            return false;
+        for (int i = 1; i < length; i++)
+            if (kinds[offset + i] != UNKNOWN)
+                return false;
+        return true;
+    }
+
+    private int offset(int address) {
+        return (address - start) & (data.length - 1);
+    }
+
+    private int address(int offset) {
+        return base + offset;
+    }
+
+    /**
+     * Canonical form of an address in this bank, others as they are
+     */
+    private int canonical(int address) {
+        return contains(address) ? address(offset(address)) : address;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+}
@@ -0,0 +1,247 @@
+package me.aymen.anes.analysis;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.Inst;
+import me.aymen.anes.NES;
+import me.aymen.anes.exception.InvalidStateException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static me.aymen.anes.AddressMode.REL;
+
+/**
+ * Code coverage of a ROM, for coverage guided fuzzing and for finding
+ * which code a test exercised. Attached with
+ * {@link CPU#setCoverage(Coverage)}, and only updated if
+ * {@link CPU#COVERAGE} is true.
+ * <p>
+ * Two maps are kept, both allocated up front:
+ * <ul>
+ *     <li>A bit per PRG byte, set when an opcode there is executed. The
+ *     PRG offset is used, so mirrors of a bank share bits. Code running
+ *     from RAM is not counted</li>
+ *     <li>A hit count per edge, for branches, jumps, calls and returns.
+ *     As in AFL, each edge is hashed from its source and destination into
+ *     a fixed size map, so distinct edges may collide. Counts saturate at
+ *     255</li>
+ * </ul>
+ * A map is confined to the thread running its machine. Fuzzing on several
+ * threads gives each machine its own map and merges them into a shared
+ * one, see {@link #merge(Coverage)}.
+ */
+public class Coverage {
+
+    /**
+     * Number of entries in the edge map
+     */
+    public static final int EDGES = 0x10000;
+
+    // "ANCV"
+    private static final int MAGIC = 0x414E4356;
+    private static final int VERSION = 1;
+
+    // Opcodes that transfer control
+    private static final boolean[] CONTROL = new boolean[256];
+
+    static {
+        for (int op = 0; op < CONTROL.length; op++) {
+            Inst inst = CPU.getInst(op);
+            CONTROL[op] = inst != null && (inst.mode == REL
+                    || inst.name.equals("JMP") || inst.name.equals("JSR")
+                    || inst.name.equals("RTS") || inst.name.equals("RTI")
+                    || inst.name.equals("BRK"));
+        }
+    }
+
+    private final long romHash;
+    private final int mask;
+    private final long[] executed;
+    private final byte[] edges;
+
+    /**
+     * Empty coverage of the ROM loaded in a machine
+     * @param nes machine with a ROM loaded
+     */
+    public Coverage(NES nes) {
+        this(nes.getROMHash(), nes.getCartridge().getPRG().length);
+    }
+
+    private Coverage(long romHash, int size) {
+        if (size < 64 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("Invalid PRG size: " + size);
+        this.romHash = romHash;
+        mask = size - 1;
+        executed = new long[size >> 6];
+        edges = new byte[EDGES];
+    }
+
+    /**
+     * Record an executed instruction. Called by the CPU
+     * @param pc address of the opcode
+     * @param op opcode
+     * @param next address of the next instruction
+     */
+    public void instruction(int pc, int op, int next) {
+        if (pc >= 0x8000) {
+            int offset = (pc - 0x8000) & mask;
+            executed[offset >>> 6] |= 1L << offset;
+        }
+
+        if (CONTROL[op]) {
+            int edge = edge(pc, next);
+            if (edges[edge] != -1)
+                edges[edge]++;
+        }
+    }
+
+    /**
+     * Whether an opcode at a ROM address was executed
+     * @param address CPU address from 0x8000
+     * @return true if executed
+     */
+    public boolean isExecuted(int address) {
+        int offset = (address - 0x8000) & mask;
+        return (executed[offset >>> 6] & 1L << offset) != 0;
+    }
+
+    /**
+     * @return number of PRG bytes with an executed opcode
+     */
+    public int getExecutedCount() {
+        int count = 0;
+        for (long bits : executed)
+            count += Long.bitCount(bits);
+        return count;
+    }
+
+    /**
+     * Times an edge was taken, or those of edges colliding with it
+     * @param from address of the branch, jump or return
+     * @param to address control passed to
+     * @return hit count, up to 255
+     */
+    public int getHits(int from, int to) {
+        return edges[edge(from, to)] & 0xFF;
+    }
+
+    /**
+     * @return number of entries of the edge map that were hit
+     */
+    public int getEdgeCount() {
+        int count = 0;
+        for (byte hits : edges)
+            if (hits != 0)
+                count++;
+        return count;
+    }
+
+    /**
+     * Add another map of the same ROM to this one. Executed bits are
+     * combined and hit counts added. The other map must not be in use by
+     * its machine meanwhile
+     * @param other coverage to add
+     * @return number of bits and edges new to this map. Inputs leading to
+     * new coverage are those worth keeping when fuzzing
+     */
+    public int merge(Coverage other) {
+        if (other.romHash != romHash || other.mask != mask)
+            throw new IllegalArgumentException("Coverage of another ROM");
+
+        int found = 0;
+        for (int i = 0; i < executed.length; i++) {
+            long bits = other.executed[i];
+            found += Long.bitCount(bits & ~executed[i]);
+            executed[i] |= bits;
+        }
+        for (int i = 0; i < edges.length; i++) {
+            int hits = other.edges[i] & 0xFF;
+            if (hits == 0)
+                continue;
+            int current = edges[i] & 0xFF;
+            if (current == 0)
+                found++;
+            edges[i] = (byte) Math.min(current + hits, 0xFF);
+        }
+        return found;
+    }
+
+    /**
+     * Forget all coverage
+     */
+    public void clear() {
+        Arrays.fill(executed, 0);
+        Arrays.fill(edges, (byte) 0);
+    }
+
+    /**
+     * @return hash of the ROM covered, see {@link NES#getROMHash()}
+     */
+    public long getROMHash() {
+        return romHash;
+    }
+
+    /**
+     * Write the maps to a file, compressed
+     * @param file destination
+     * @throws IOException if writing fails
+     */
+    public void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new DeflaterOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(romHash);
+            out.writeInt(mask + 1);
+            for (long bits : executed)
+                out.writeLong(bits);
+            out.write(edges);
+        }
+    }
+
+    /**
+     * Read maps written by {@link #write(Path)}, such as those of an
+     * earlier session to merge with
+     * @param file source
+     * @return coverage
+     * @throws IOException if reading fails
+     */
+    public static Coverage read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC)
+                throw new InvalidStateException("Invalid coverage header");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new InvalidStateException(
+                        "Unsupported coverage version " + version);
+
+            Coverage coverage = new Coverage(in.readLong(), in.readInt());
+            for (int i = 0; i < coverage.executed.length; i++)
+                coverage.executed[i] = in.readLong();
+            in.readFully(coverage.edges);
+            return coverage;
+        } catch (EOFException e) {
+            throw new InvalidStateException("Truncated coverage");
+        }
+    }
+
+    private static int edge(int from, int to) {
+        // Destination is shifted so that A -> B and B -> A differ
+        return (mix(from) ^ (mix(to) >>> 1)) & (EDGES - 1);
+    }
+
+    private static int mix(int address) {
+        return (address * 0x9E3779B1) >>> 16;
+    }
+}
@@ -0,0 +1,343 @@
+package me.aymen.anes.apu;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.memory.Bus;
+import me.aymen.anes.memory.IODevice;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Audio Processing Unit.
+ * The APU is not clocked along with the CPU. Instead it remembers the CPU
+ * cycle it is caught up to, and only runs when something needs its state:
+ * a register access, a frame counter step or DMC sample fetch (see
+ * {@link #getNextEvent()}), or
+ * samples being read. Channels then run from one output change to the next
+ * rather than cycle by cycle, reporting changes to a {@link BlipBuffer}.
+ */
+public class APU implements IODevice {
+
+    /**
+     * NTSC CPU clock rate
+     */
+    public static final double CLOCK_RATE = 1789773;
+
+    /**
+     * Default output sample rate
+     */
+    public static final int SAMPLE_RATE = 44100;
+
+    // Length counter load values
+    static final int[] LENGTH = {
+            10, 254, 20, 2, 40, 4, 80, 6,
+            160, 8, 60, 10, 14, 12, 26, 14,
+            12, 16, 24, 18, 48, 20, 96, 22,
+            192, 24, 72, 26, 16, 28, 32, 30
+    };
+
+    // Frame counter steps in CPU cycles since start of sequence,
+    // for 4 step and 5 step modes
+    private static final int[][] STEPS = {
+            {7457, 14913, 22371, 29829},
+            {7457, 14913, 22371, 37281}
+    };
+    private static final int[] SEQUENCE = {29830, 37282};
+
+    // Output level of a single step of each channel. Linear approximation
+    // of the mixer. See: http://wiki.nesdev.com/w/index.php/APU_Mixer
+    private static final float PULSE = 0.00752f;
+    private static final float TRIANGLE = 0.00851f;
+    private static final float NOISE = 0.00494f;
+    private static final float DMC = 0.00335f;
+
+    // Around 90ms of samples at default rate
+    private static final int BUFFER_SIZE = 4096;
+
+    private final CPU cpu;
+    private final BlipBuffer blip;
+
+    private final PulseChannel pulse1;
+    private final PulseChannel pulse2;
+    private final TriangleChannel triangle;
+    private final NoiseChannel noise;
+    private final DMCChannel dmc;
+
+    // Frame counter
+    private int mode;
+    private boolean irqInhibit;
+    private boolean frameIRQ;
+    private int step;
+    // CPU cycle current frame counter sequence started at
+    private int sequenceStart;
+
+    // CPU cycle the APU is caught up to
+    private int cycle;
+
+    /**
+     * @param bus Bus DMC samples are read from
+     * @param cpu CPU whose cycle count is used as time
+     */
+    public APU(Bus bus, CPU cpu) {
+        this.cpu = cpu;
+        blip = new BlipBuffer(BUFFER_SIZE);
+        setSampleRate(SAMPLE_RATE);
+
+        pulse1 = new PulseChannel(true, PULSE);
+        pulse2 = new PulseChannel(false, PULSE);
+        triangle = new TriangleChannel(TRIANGLE);
+        noise = new NoiseChannel(NOISE);
+        dmc = new DMCChannel(bus, cpu, DMC);
+
+        reset();
+    }
+
+    /**
+     * Align APU time with the CPU. Must be called whenever the CPU cycle
+     * count is reset
+     */
+    public void reset() {
+        cycle = cpu.getCycles();
+        sequenceStart = cycle;
+        step = 0;
+        blip.clear();
+    }
+
+    /**
+     * Run the APU up to the current CPU cycle
+     */
+    public void catchUp() {
+        run(cpu.getCycles());
+    }
+
+    /**
+     * CPU cycle of the next frame counter step or DMC sample fetch,
+     * whichever comes first. The APU must be caught up once the CPU
+     * reaches it, as it may raise an IRQ or stall the CPU
+     * @return CPU cycle
+     */
+    public int getNextEvent() {
+        int event = nextStep();
+        int fetch = dmc.getNextFetch();
+        if (fetch >= 0 && cycle + fetch - event < 0)
+            event = cycle + fetch;
+        return event;
+    }
+
+    /**
+     * Whether the APU asserts the IRQ line
+     * @return true if frame counter or DMC interrupt is pending
+     */
+    public boolean isIRQ() {
+        return frameIRQ || dmc.irq;
+    }
+
+    /**
+     * Set output sample rate. Can be fractional, allowing the rate to be
+     * nudged to follow the consumer of samples
+     * @param sampleRate samples per second
+     */
+    public void setSampleRate(double sampleRate) {
+        blip.setRates(CLOCK_RATE, sampleRate);
+    }
+
+    /**
+     * Number of samples ready to be read, after catching up
+     * @return available samples
+     */
+    public int samplesAvailable() {
+        catchUp();
+        return blip.samplesAvailable();
+    }
+
+    /**
+     * Catch up then read samples
+     * @param dst destination
+     * @param off first position in destination
+     * @param len maximum number of samples
+     * @return number of samples read
+     */
+    public int readSamples(short[] dst, int off, int len) {
+        catchUp();
+        return blip.read(dst, off, len);
+    }
+
+    /**
+     * Write APU state. Samples not yet read are not part of the state
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    public void save(DataOutput out) throws IOException {
+        catchUp();
+        pulse1.save(out);
+        pulse2.save(out);
+        triangle.save(out);
+        noise.save(out);
+        dmc.save(out);
+        out.writeByte(mode);
+        out.writeBoolean(irqInhibit);
+        out.writeBoolean(frameIRQ);
+        out.writeByte(step);
+        out.writeInt(sequenceStart);
+        out.writeInt(cycle);
+    }
+
+    /**
+     * Restore APU state. Samples not yet read are discarded
+     * @param in source
+     * @throws IOException if reading fails
+     */
+    public void load(DataInput in) throws IOException {
+        pulse1.load(in);
+        pulse2.load(in);
+        triangle.load(in);
+        noise.load(in);
+        dmc.load(in);
+        mode = in.readUnsignedByte();
+        irqInhibit = in.readBoolean();
+        frameIRQ = in.readBoolean();
+        step = in.readUnsignedByte();
+        sequenceStart = in.readInt();
+        cycle = in.readInt();
+        blip.clear();
+    }
+
+    @Override
+    public int read(int index) {
+        // Only status is readable
+        if (index != 0x4015)
+            return 0;
+
+        catchUp();
+        int status = status();
+        frameIRQ = false;
+
+        return status;
+    }
+
+    /**
+     * Status as of the last time the APU caught up, as catching up would
+     * change it
+     */
+    @Override
+    public int peek(int index) {
+        return index == 0x4015 ? status() : 0;
+    }
+
+    @Override
+    public void write(int value, int index) {
+        catchUp();
+
+        if (index < 0x4004) {
+            pulse1.write(value, index & 0x3);
+        } else if (index < 0x4008) {
+            pulse2.write(value, index & 0x3);
+        } else if (index < 0x400C) {
+            triangle.write(value, index & 0x3);
+        } else if (index < 0x4010) {
+            noise.write(value, index & 0x3);
+        } else if (index < 0x4014) {
+            dmc.write(value, index & 0x3);
+        } else if (index == 0x4015) {
+            pulse1.setEnabled((value & 0x01) == 0x01);
+            pulse2.setEnabled((value & 0x02) == 0x02);
+            triangle.setEnabled((value & 0x04) == 0x04);
+            noise.setEnabled((value & 0x08) == 0x08);
+            dmc.setEnabled((value & 0x10) == 0x10);
+        } else if (index == 0x4017) {
+            mode = value >> 7;
+            irqInhibit = (value & 0x40) == 0x40;
+            if (irqInhibit)
+                frameIRQ = false;
+
+            // Restart sequence. 5 step mode clocks all units immediately
+            step = 0;
+            sequenceStart = cycle;
+            if (mode == 1) {
+                clockQuarter();
+                clockHalf();
+            }
+        }
+    }
+
+    /**
+     * Value of the status register ($4015)
+     */
+    private int status() {
+        return (pulse1.length > 0 ? 0x01 : 0)
+                | (pulse2.length > 0 ? 0x02 : 0)
+                | (triangle.length > 0 ? 0x04 : 0)
+                | (noise.length > 0 ? 0x08 : 0)
+                | (dmc.isActive() ? 0x10 : 0)
+                | (frameIRQ ? 0x40 : 0)
+                | (dmc.irq ? 0x80 : 0);
+    }
+
+    /**
+     * Run channels and frame counter up to a CPU cycle, then make the
+     * produced samples available
+     * @param now CPU cycle to run to
+     */
+    private void run(int now) {
+        int start = cycle;
+
+        // Cycle counts may wrap, so only differences are compared
+        while (now - cycle > 0) {
+            int event = nextStep();
+            int end = event - now <= 0 ? event : now;
+
+            int from = cycle - start;
+            int to = end - start;
+            pulse1.run(blip, from, to);
+            pulse2.run(blip, from, to);
+            triangle.run(blip, from, to);
+            noise.run(blip, from, to);
+            dmc.run(blip, from, to);
+            cycle = end;
+
+            if (end == event)
+                clockStep();
+        }
+
+        blip.endFrame(cycle - start);
+    }
+
+    /**
+     * @return CPU cycle of the next frame counter step
+     */
+    private int nextStep() {
+        return sequenceStart + STEPS[mode][step];
+    }
+
+    /**
+     * Perform the next step of the frame counter sequence
+     */
+    private void clockStep() {
+        clockQuarter();
+        if (step == 1 || step == 3)
+            clockHalf();
+
+        if (step == 3 && mode == 0 && !irqInhibit)
+            frameIRQ = true;
+
+        if (++step == 4) {
+            step = 0;
+            sequenceStart += SEQUENCE[mode];
+        }
+    }
+
+    private void clockQuarter() {
+        pulse1.envelope.clock();
+        pulse2.envelope.clock();
+        noise.envelope.clock();
+        triangle.clockQuarter();
+    }
+
+    private void clockHalf() {
+        pulse1.clockHalf();
+        pulse2.clockHalf();
+        triangle.clockHalf();
+        noise.clockHalf();
+    }
+}
@@ -0,0 +1,195 @@
+package me.aymen.anes.apu;
+
+import java.util.Arrays;
+
+/**
+ * Band-limited step synthesis, resampling from clock rate to sample rate.
+ * Sound channels only report when their output changes, as an amplitude
+ * delta at a clock time. Each delta is added to a ring of sample slots as
+ * a windowed sinc impulse, picked from a polyphase table by the fraction of
+ * sample the time falls on. Reading samples integrates the impulses back
+ * into band-limited steps and removes DC offset.
+ * <p>
+ * All work is done on whole blocks: deltas of a frame are added, the frame
+ * is ended, and the resulting samples read in one call into a caller
+ * supplied array. Nothing is allocated after construction.
+ * <p>
+ * Times are in clocks relative to the end of the last frame, as set by
+ * {@link #endFrame(int)}. Output is delayed by half the kernel width.
+ */
+public final class BlipBuffer {
+
+    // Fixed point precision of sample positions
+    private static final int FRAC = 20;
+    private static final long ONE = 1L << FRAC;
+
+    // Kernel phases per sample, and taps per phase
+    private static final int PHASE_BITS = 6;
+    private static final int PHASES = 1 << PHASE_BITS;
+    private static final int WIDTH = 16;
+    private static final int HALF = WIDTH / 2;
+
+    // Cutoff relative to output Nyquist frequency. Leaves room for the
+    // window's transition band before aliasing starts
+    private static final double CUTOFF = 0.9;
+
+    // Slots past the last complete sample that an impulse may touch
+    private static final int TAIL = WIDTH + 1;
+
+    // Impulse of each phase, laid out one phase after another
+    private static final float[] KERNEL = new float[PHASES * WIDTH];
+
+    static {
+        for (int phase = 0; phase < PHASES; phase++) {
+            double fraction = phase / (double) PHASES;
+            double sum = 0;
+
+            for (int tap = 0; tap < WIDTH; tap++) {
+                double t = tap - HALF - fraction;
+                double sinc = t == 0 ? 1 : Math.sin(Math.PI * CUTOFF * t)
+                        / (Math.PI * CUTOFF * t);
+                // Blackman window spanning the kernel
+                double w = Math.PI * t / (HALF + 1);
+                double window = 0.42 + 0.5 * Math.cos(w)
+                        + 0.08 * Math.cos(2 * w);
+
+                KERNEL[phase * WIDTH + tap] = (float) (sinc * window);
+                sum += sinc * window;
+            }
+
+            // Unity gain for every phase, so integrated steps settle at
+            // exactly the delta
+            for (int tap = 0; tap < WIDTH; tap++)
+                KERNEL[phase * WIDTH + tap] /= sum;
+        }
+    }
+
+    private final float[] ring;
+    private final int mask;
+
+    // Samples per clock in fixed point
+    private long factor;
+    // Position of frame start relative to read position, in fixed point
+    private long offset;
+    private int read;
+    private int available;
+
+    // Integrator and DC blocking filter state
+    private float sum;
+    private float previous;
+    private float filtered;
+
+    /**
+     * @param capacity number of samples that can be buffered. Rounded up to
+     *                 a power of two
+     */
+    public BlipBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, TAIL * 2) - 1)
+                << 1;
+        ring = new float[size];
+        mask = size - 1;
+        setRates(1, 1);
+    }
+
+    /**
+     * Set input clock rate and output sample rate
+     * @param clockRate clocks per second
+     * @param sampleRate samples per second
+     */
+    public void setRates(double clockRate, double sampleRate) {
+        factor = (long) Math.floor(sampleRate / clockRate * ONE + 0.5);
+    }
+
+    /**
+     * Add an amplitude change
+     * @param time clock time relative to frame start
+     * @param delta amplitude change
+     */
+    public void addDelta(int time, float delta) {
+        long position = offset + time * factor;
+        int index = read + (int) (position >> FRAC);
+        int phase = (int) (position >> (FRAC - PHASE_BITS)) & (PHASES - 1);
+
+        int k = phase * WIDTH;
+        if (((index + WIDTH) & mask) > (index & mask)) {
+            // Impulse does not wrap around the ring
+            int base = index & mask;
+            for (int tap = 0; tap < WIDTH; tap++)
+                ring[base + tap] += delta * KERNEL[k + tap];
+        } else {
+            for (int tap = 0; tap < WIDTH; tap++)
+                ring[(index + tap) & mask] += delta * KERNEL[k + tap];
+        }
+    }
+
+    /**
+     * End a frame, making all samples before its end available for
+     * reading. Following times are relative to the end of this frame.
+     * Oldest samples are discarded if they are not read in time
+     * @param clocks length of frame in clocks
+     */
+    public void endFrame(int clocks) {
+        offset += clocks * factor;
+        available = (int) (offset >> FRAC);
+
+        int overflow = available - (ring.length - TAIL);
+        if (overflow > 0)
+            read(null, 0, overflow);
+    }
+
+    /**
+     * Number of samples that can be read
+     * @return available samples
+     */
+    public int samplesAvailable() {
+        return available;
+    }
+
+    /**
+     * Read samples, removing them from the buffer
+     * @param dst destination, or null to discard
+     * @param off first position in destination
+     * @param len maximum number of samples
+     * @return number of samples read
+     */
+    public int read(short[] dst, int off, int len) {
+        int count = Math.min(len, available);
+
+        for (int i = 0; i < count; i++) {
+            int index = read & mask;
+            sum += ring[index];
+            ring[index] = 0;
+            read++;
+
+            // First order high pass removes DC offset of the mixer
+            filtered = sum - previous + 0.999f * filtered;
+            previous = sum;
+
+            if (dst != null) {
+                int sample = (int) (filtered * 32767);
+                if (sample > Short.MAX_VALUE)
+                    sample = Short.MAX_VALUE;
+                else if (sample < Short.MIN_VALUE)
+                    sample = Short.MIN_VALUE;
+                dst[off + i] = (short) sample;
+            }
+        }
+
+        available -= count;
+        offset -= (long) count << FRAC;
+        return count;
+    }
+
+    /**
+     * Remove all samples and pending deltas
+     */
+    public void clear() {
+        Arrays.fill(ring, 0);
+        offset = 0;
+        read = 0;
+        available = 0;
+        sum = 0;
+        previous = 0;
+        filtered = 0;
+    }
+}
@@ -0,0 +1,202 @@
+package me.aymen.anes.apu;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.memory.Bus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Delta modulation channel ($4010 to $4013). Plays 1 bit delta encoded
+ * samples fetched from memory
+ */
+class DMCChannel {
+    // Timer periods in CPU cycles (NTSC)
+    private static final int[] RATE = {
+            428, 380, 340, 320, 286, 254, 226, 214,
+            190, 160, 142, 128, 106, 84, 72, 54
+    };
+
+    // CPU cycles a sample fetch stalls for. Fewer when it lands on a CPU
+    // write cycle, but most cycles are reads
+    private static final int STALL = 4;
+
+    private final Bus bus;
+    private final CPU cpu;
+    private final float weight;
+
+    boolean irqEnabled;
+    boolean irq;
+    boolean loop;
+    int period = RATE[0];
+    int delay;
+    int level;
+    int output;
+
+    // Sample settings
+    int sampleAddress = 0xC000;
+    int sampleLength = 1;
+
+    // Memory reader
+    int address;
+    int remaining;
+    int buffer = -1;    // -1 when empty
+
+    // Output unit
+    int shift;
+    int bits = 8;
+    boolean silence = true;
+
+    DMCChannel(Bus bus, CPU cpu, float weight) {
+        this.bus = bus;
+        this.cpu = cpu;
+        this.weight = weight;
+    }
+
+    void write(int value, int register) {
+        switch (register) {
+            case 0:
+                irqEnabled = (value & 0x80) == 0x80;
+                loop = (value & 0x40) == 0x40;
+                period = RATE[value & 0x0F];
+                if (!irqEnabled)
+                    irq = false;
+                break;
+            case 1:
+                level = value & 0x7F;
+                break;
+            case 2:
+                sampleAddress = 0xC000 | (value << 6);
+                break;
+            default:
+                sampleLength = (value << 4) | 1;
+                break;
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        irq = false;
+        if (!enabled) {
+            remaining = 0;
+        } else if (remaining == 0) {
+            restart();
+            fetch();
+        }
+    }
+
+    void run(BlipBuffer blip, int start, int end) {
+        // Direct load through $4011 takes effect immediately
+        update(blip, start, level);
+
+        int time = start + delay;
+        for (; time < end; time += period) {
+            if (!silence) {
+                if ((shift & 1) == 1) {
+                    if (level <= 125)
+                        level += 2;
+                } else if (level >= 2) {
+                    level -= 2;
+                }
+                update(blip, time, level);
+            }
+            shift >>= 1;
+
+            if (--bits == 0) {
+                bits = 8;
+                silence = buffer < 0;
+                if (!silence) {
+                    shift = buffer;
+                    buffer = -1;
+                    fetch();
+                }
+            }
+        }
+
+        delay = time - end;
+    }
+
+    boolean isActive() {
+        return remaining > 0;
+    }
+
+    /**
+     * Cycles from the time the channel was last run until it has to run
+     * again to make its next sample fetch. The buffer is always full while
+     * bytes remain, so the fetch happens when the output unit takes it, at
+     * the end of its cycle. Runs stop short of their end time, hence one
+     * more cycle
+     * @return cycles, or -1 if no fetch is due
+     */
+    int getNextFetch() {
+        return remaining > 0 ? delay + (bits - 1) * period + 1 : -1;
+    }
+
+    void save(DataOutput out) throws IOException {
+        out.writeBoolean(irqEnabled);
+        out.writeBoolean(irq);
+        out.writeBoolean(loop);
+        out.writeShort(period);
+        out.writeInt(delay);
+        out.writeByte(level);
+        out.writeByte(output);
+        out.writeShort(sampleAddress);
+        out.writeShort(sampleLength);
+        out.writeShort(address);
+        out.writeShort(remaining);
+        out.writeShort(buffer);
+        out.writeByte(shift);
+        out.writeByte(bits);
+        out.writeBoolean(silence);
+    }
+
+    void load(DataInput in) throws IOException {
+        irqEnabled = in.readBoolean();
+        irq = in.readBoolean();
+        loop = in.readBoolean();
+        period = in.readUnsignedShort();
+        delay = in.readInt();
+        level = in.readUnsignedByte();
+        output = in.readUnsignedByte();
+        sampleAddress = in.readUnsignedShort();
+        sampleLength = in.readUnsignedShort();
+        address = in.readUnsignedShort();
+        remaining = in.readUnsignedShort();
+        // Signed, as an empty buffer is -1
+        buffer = in.readShort();
+        shift = in.readUnsignedByte();
+        bits = in.readUnsignedByte();
+        silence = in.readBoolean();
+    }
+
+    /**
+     * Fill the sample buffer from memory if it is empty
+     */
+    private void fetch() {
+        if (buffer >= 0 || remaining == 0)
+            return;
+
+        buffer = bus.dmaRead(address);
+        cpu.stall(STALL);
+        address = address == 0xFFFF ? 0x8000 : address + 1;
+
+        if (--remaining == 0) {
+            if (loop)
+                restart();
+            else if (irqEnabled)
+                irq = true;
+        }
+    }
+
+    private void restart() {
+        address = sampleAddress;
+        remaining = sampleLength;
+    }
+
+    private void update(BlipBuffer blip, int time, int value) {
+        if (value != output) {
+            blip.addDelta(time, (value - output) * weight);
+            output = value;
+        }
+    }
+}
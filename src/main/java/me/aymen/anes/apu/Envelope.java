@@ -0,0 +1,68 @@
+package me.aymen.anes.apu;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Volume envelope shared by pulse and noise channels
+ */
+class Envelope {
+    boolean start;
+    boolean loop;
+    boolean constant;
+    int period;
+    int divider;
+    int decay;
+
+    /**
+     * Set from the lower 6 bits of the channel's first register
+     * @param value register value
+     */
+    void write(int value) {
+        loop = (value & 0x20) == 0x20;
+        constant = (value & 0x10) == 0x10;
+        period = value & 0x0F;
+    }
+
+    /**
+     * Clocked by quarter frames
+     */
+    void clock() {
+        if (start) {
+            start = false;
+            decay = 15;
+            divider = period;
+        } else if (divider == 0) {
+            divider = period;
+            if (decay > 0)
+                decay--;
+            else if (loop)
+                decay = 15;
+        } else {
+            divider--;
+        }
+    }
+
+    void save(DataOutput out) throws IOException {
+        out.writeBoolean(start);
+        out.writeBoolean(loop);
+        out.writeBoolean(constant);
+        out.writeByte(period);
+        out.writeByte(divider);
+        out.writeByte(decay);
+    }
+
+    void load(DataInput in) throws IOException {
+        start = in.readBoolean();
+        loop = in.readBoolean();
+        constant = in.readBoolean();
+        period = in.readUnsignedByte();
+        divider = in.readUnsignedByte();
+        decay = in.readUnsignedByte();
+    }
+
+    int volume() {
+        return constant ? period : decay;
+    }
+}
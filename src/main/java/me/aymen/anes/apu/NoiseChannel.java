@@ -0,0 +1,108 @@
+package me.aymen.anes.apu;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Pseudo-random noise channel ($400C to $400F)
+ */
+class NoiseChannel {
+    // Timer periods in CPU cycles (NTSC)
+    private static final int[] PERIOD = {
+            4, 8, 16, 32, 64, 96, 128, 160,
+            202, 254, 380, 508, 762, 1016, 2034, 4068
+    };
+
+    private final float weight;
+    final Envelope envelope = new Envelope();
+
+    boolean enabled;
+    boolean mode;
+    int period = PERIOD[0];
+    int length;
+    int shift = 1;
+    int delay;
+    int output;
+
+    NoiseChannel(float weight) {
+        this.weight = weight;
+    }
+
+    void write(int value, int register) {
+        switch (register) {
+            case 0:
+                envelope.write(value);
+                break;
+            case 2:
+                mode = (value & 0x80) == 0x80;
+                period = PERIOD[value & 0x0F];
+                break;
+            case 3:
+                if (enabled)
+                    length = APU.LENGTH[value >> 3];
+                envelope.start = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            length = 0;
+    }
+
+    void clockHalf() {
+        if (length > 0 && !envelope.loop)
+            length--;
+    }
+
+    void run(BlipBuffer blip, int start, int end) {
+        int volume = length > 0 ? envelope.volume() : 0;
+        update(blip, start, (shift & 1) == 0 ? volume : 0);
+
+        int time = start + delay;
+        int tap = mode ? 6 : 1;
+
+        // The shift register keeps running while silent
+        for (; time < end; time += period) {
+            int feedback = (shift ^ (shift >> tap)) & 1;
+            shift = (shift >> 1) | (feedback << 14);
+            if (volume != 0)
+                update(blip, time, (shift & 1) == 0 ? volume : 0);
+        }
+
+        delay = time - end;
+    }
+
+    void save(DataOutput out) throws IOException {
+        envelope.save(out);
+        out.writeBoolean(enabled);
+        out.writeBoolean(mode);
+        out.writeShort(period);
+        out.writeByte(length);
+        out.writeShort(shift);
+        out.writeInt(delay);
+        out.writeByte(output);
+    }
+
+    void load(DataInput in) throws IOException {
+        envelope.load(in);
+        enabled = in.readBoolean();
+        mode = in.readBoolean();
+        period = in.readUnsignedShort();
+        length = in.readUnsignedByte();
+        shift = in.readUnsignedShort();
+        delay = in.readInt();
+        output = in.readUnsignedByte();
+    }
+
+    private void update(BlipBuffer blip, int time, int value) {
+        if (value != output) {
+            blip.addDelta(time, (value - output) * weight);
+            output = value;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package me.aymen.anes.apu;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Square wave channel ($4000 to $4003 and $4004 to $4007)
+ */
+class PulseChannel {
+    private static final int[][] DUTY = {
+            {0, 1, 0, 0, 0, 0, 0, 0},
+            {0, 1, 1, 0, 0, 0, 0, 0},
+            {0, 1, 1, 1, 1, 0, 0, 0},
+            {1, 0, 0, 1, 1, 1, 1, 1}
+    };
+
+    // Pulse 1 negates with one's complement, pulse 2 with two's complement
+    private final boolean onesComplement;
+    private final float weight;
+    final Envelope envelope = new Envelope();
+
+    boolean enabled;
+    int duty;
+    int position;
+    int timer;
+    // CPU cycles until timer next clocks the sequencer
+    int delay;
+    int length;
+
+    boolean sweepEnabled;
+    boolean sweepNegate;
+    boolean sweepReload;
+    int sweepPeriod;
+    int sweepShift;
+    int sweepDivider;
+
+    // Last output reported
+    int output;
+
+    PulseChannel(boolean onesComplement, float weight) {
+        this.onesComplement = onesComplement;
+        this.weight = weight;
+    }
+
+    void write(int value, int register) {
+        switch (register) {
+            case 0:
+                duty = value >> 6;
+                envelope.write(value);
+                break;
+            case 1:
+                sweepEnabled = (value & 0x80) == 0x80;
+                sweepPeriod = (value >> 4) & 0x07;
+                sweepNegate = (value & 0x08) == 0x08;
+                sweepShift = value & 0x07;
+                sweepReload = true;
+                break;
+            case 2:
+                timer = (timer & 0x700) | value;
+                break;
+            default:
+                timer = (timer & 0xFF) | ((value & 0x07) << 8);
+                if (enabled)
+                    length = APU.LENGTH[value >> 3];
+                position = 0;
+                envelope.start = true;
+                break;
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            length = 0;
+    }
+
+    /**
+     * Clocked by half frames
+     */
+    void clockHalf() {
+        if (length > 0 && !envelope.loop)
+            length--;
+
+        if (sweepDivider == 0 && sweepEnabled && sweepShift > 0
+                && !muted())
+            timer = target();
+
+        if (sweepDivider == 0 || sweepReload) {
+            sweepDivider = sweepPeriod;
+            sweepReload = false;
+        } else {
+            sweepDivider--;
+        }
+    }
+
+    /**
+     * Run channel, reporting output changes
+     * @param blip buffer to report to
+     * @param start time to start from
+     * @param end time to stop at (exclusive)
+     */
+    void run(BlipBuffer blip, int start, int end) {
+        int volume = length > 0 && !muted() ? envelope.volume() : 0;
+        update(blip, start, DUTY[duty][position] * volume);
+
+        int period = (timer + 1) * 2;
+        int time = start + delay;
+
+        if (volume == 0) {
+            // Silent. Only keep sequencer in step
+            if (time < end) {
+                int count = (end - time - 1) / period + 1;
+                position = (position + count) & 7;
+                time += count * period;
+            }
+        } else {
+            for (; time < end; time += period) {
+                position = (position + 1) & 7;
+                update(blip, time, DUTY[duty][position] * volume);
+            }
+        }
+
+        delay = time - end;
+    }
+
+    void save(DataOutput out) throws IOException {
+        envelope.save(out);
+        out.writeBoolean(enabled);
+        out.writeByte(duty);
+        out.writeByte(position);
+        out.writeShort(timer);
+        out.writeInt(delay);
+        out.writeByte(length);
+        out.writeBoolean(sweepEnabled);
+        out.writeBoolean(sweepNegate);
+        out.writeBoolean(sweepReload);
+        out.writeByte(sweepPeriod);
+        out.writeByte(sweepShift);
+        out.writeByte(sweepDivider);
+        out.writeByte(output);
+    }
+
+    void load(DataInput in) throws IOException {
+        envelope.load(in);
+        enabled = in.readBoolean();
+        duty = in.readUnsignedByte();
+        position = in.readUnsignedByte();
+        timer = in.readUnsignedShort();
+        delay = in.readInt();
+        length = in.readUnsignedByte();
+        sweepEnabled = in.readBoolean();
+        sweepNegate = in.readBoolean();
+        sweepReload = in.readBoolean();
+        sweepPeriod = in.readUnsignedByte();
+        sweepShift = in.readUnsignedByte();
+        sweepDivider = in.readUnsignedByte();
+        output = in.readUnsignedByte();
+    }
+
+    private void update(BlipBuffer blip, int time, int value) {
+        if (value != output) {
+            blip.addDelta(time, (value - output) * weight);
+            output = value;
+        }
+    }
+
+    private boolean muted() {
+        return timer < 8 || target() > 0x7FF;
+    }
+
+    private int target() {
+        int change = timer >> sweepShift;
+        if (sweepNegate)
+            return timer - change - (onesComplement ? 1 : 0);
+
+        return timer + change;
+    }
+}
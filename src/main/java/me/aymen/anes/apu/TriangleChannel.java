@@ -0,0 +1,133 @@
+package me.aymen.anes.apu;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Triangle wave channel ($4008 to $400B)
+ */
+class TriangleChannel {
+    private static final int[] SEQUENCE = {
+            15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0,
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15
+    };
+
+    private final float weight;
+
+    boolean enabled;
+    boolean control;
+    boolean linearReload;
+    int linearPeriod;
+    int linear;
+    int length;
+    int timer;
+    int delay;
+    int position;
+    int output;
+
+    TriangleChannel(float weight) {
+        this.weight = weight;
+    }
+
+    void write(int value, int register) {
+        switch (register) {
+            case 0:
+                control = (value & 0x80) == 0x80;
+                linearPeriod = value & 0x7F;
+                break;
+            case 2:
+                timer = (timer & 0x700) | value;
+                break;
+            case 3:
+                timer = (timer & 0xFF) | ((value & 0x07) << 8);
+                if (enabled)
+                    length = APU.LENGTH[value >> 3];
+                linearReload = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            length = 0;
+    }
+
+    /**
+     * Clocked by quarter frames
+     */
+    void clockQuarter() {
+        if (linearReload)
+            linear = linearPeriod;
+        else if (linear > 0)
+            linear--;
+
+        if (!control)
+            linearReload = false;
+    }
+
+    /**
+     * Clocked by half frames
+     */
+    void clockHalf() {
+        if (length > 0 && !control)
+            length--;
+    }
+
+    void run(BlipBuffer blip, int start, int end) {
+        update(blip, start, SEQUENCE[position]);
+
+        int period = timer + 1;
+        int time = start + delay;
+
+        // Sequencer halts when either counter is zero. Ultrasonic periods
+        // are halted too, as they would only be heard as a pop
+        if (length == 0 || linear == 0 || timer < 2) {
+            if (time < end)
+                time += ((end - time - 1) / period + 1) * period;
+        } else {
+            for (; time < end; time += period) {
+                position = (position + 1) & 31;
+                update(blip, time, SEQUENCE[position]);
+            }
+        }
+
+        delay = time - end;
+    }
+
+    void save(DataOutput out) throws IOException {
+        out.writeBoolean(enabled);
+        out.writeBoolean(control);
+        out.writeBoolean(linearReload);
+        out.writeByte(linearPeriod);
+        out.writeByte(linear);
+        out.writeByte(length);
+        out.writeShort(timer);
+        out.writeInt(delay);
+        out.writeByte(position);
+        out.writeByte(output);
+    }
+
+    void load(DataInput in) throws IOException {
+        enabled = in.readBoolean();
+        control = in.readBoolean();
+        linearReload = in.readBoolean();
+        linearPeriod = in.readUnsignedByte();
+        linear = in.readUnsignedByte();
+        length = in.readUnsignedByte();
+        timer = in.readUnsignedShort();
+        delay = in.readInt();
+        position = in.readUnsignedByte();
+        output = in.readUnsignedByte();
+    }
+
+    private void update(BlipBuffer blip, int time, int value) {
+        if (value != output) {
+            blip.addDelta(time, (value - output) * weight);
+            output = value;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package me.aymen.anes.audio;
+
+/**
+ * A device consuming 16 bit mono samples at a fixed rate
+ */
+public interface AudioOutput extends AutoCloseable {
+
+    /**
+     * Sample rate the device consumes at
+     * @return samples per second
+     */
+    int getSampleRate();
+
+    /**
+     * Total number of samples the device can hold
+     * @return capacity in samples
+     */
+    int getCapacity();
+
+    /**
+     * Number of samples written but not yet played
+     * @return queued samples
+     */
+    int getQueued();
+
+    /**
+     * Queue samples without blocking. Samples that do not fit are dropped
+     * @param src samples
+     * @param off first sample
+     * @param len number of samples
+     * @return number of samples queued
+     */
+    int write(short[] src, int off, int len);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,71 @@
+package me.aymen.anes.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays samples through a Java Sound line
+ */
+public class LineAudioOutput implements AudioOutput {
+
+    private final SourceDataLine line;
+    private final int sampleRate;
+    private final int capacity;
+    // Samples converted to bytes before being written
+    private final byte[] bytes;
+
+    /**
+     * Open the default output line
+     * @param sampleRate samples per second
+     * @param capacity samples buffered by the line
+     * @throws LineUnavailableException if no line is available
+     */
+    public LineAudioOutput(int sampleRate, int capacity)
+            throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, capacity * 2);
+        line.start();
+
+        this.sampleRate = sampleRate;
+        this.capacity = line.getBufferSize() / 2;
+        bytes = new byte[line.getBufferSize()];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getQueued() {
+        return capacity - line.available() / 2;
+    }
+
+    @Override
+    public int write(short[] src, int off, int len) {
+        int count = Math.min(len, line.available() / 2);
+
+        for (int i = 0; i < count; i++) {
+            short sample = src[off + i];
+            bytes[i * 2] = (byte) sample;
+            bytes[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        line.write(bytes, 0, count * 2);
+
+        return count;
+    }
+
+    @Override
+    public void close() {
+        line.stop();
+        line.close();
+    }
+}
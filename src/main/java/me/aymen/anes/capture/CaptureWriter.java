@@ -0,0 +1,233 @@
+package me.aymen.anes.capture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes capture files on a dedicated thread.
+ * Each opened {@link Stream} owns a fixed pool of buffers. The emulation
+ * thread fills a free buffer and hands it over; the writer thread drains it
+ * to the file and returns it to the pool. When the pool is empty (disk is
+ * slower than emulation) data is dropped and counted instead of blocking
+ * the emulator.
+ */
+public class CaptureWriter implements Closeable {
+    private static final Logger logger =
+            LoggerFactory.getLogger(CaptureWriter.class);
+
+    // Queued to stop the writer thread once everything before it is written
+    private static final Block STOP = new Block();
+
+    // Buffers waiting to be written, from all streams
+    private final BlockingQueue<Block> queue;
+    private final Thread thread;
+
+    // Metrics
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    public CaptureWriter() {
+        // Never full, as a stream can only submit buffers from its own
+        // bounded pool
+        queue = new LinkedBlockingQueue<>();
+        thread = new Thread(this::run, "anes-capture-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Open a file to write to
+     * @param path file to create or truncate
+     * @param blockSize size of each buffer in bytes
+     * @param blocks number of buffers in pool
+     * @return stream to write with
+     * @throws IOException if file cannot be opened
+     */
+    public Stream open(Path path, int blockSize, int blocks)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        return new Stream(channel, blockSize, blocks);
+    }
+
+    /**
+     * Stops the writer thread once all submitted buffers are written.
+     * Streams should be closed first
+     */
+    @Override
+    public void close() {
+        queue.add(STOP);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Time spent by writer thread in file writes
+     * @return nanoseconds
+     */
+    public long getWriteNanos() {
+        return writeNanos.get();
+    }
+
+    private void run() {
+        // Not interrupted to stop, as interrupting a thread blocked in a
+        // FileChannel write closes the channel
+        while (true) {
+            Block block;
+            try {
+                block = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            if (block == STOP)
+                return;
+
+            write(block);
+        }
+    }
+
+    private void write(Block block) {
+        ByteBuffer buffer = block.buffer;
+        buffer.flip();
+        long start = System.nanoTime();
+        try {
+            while (buffer.hasRemaining())
+                bytesWritten.addAndGet(block.stream.channel.write(buffer));
+        } catch (IOException e) {
+            logger.error("Error writing capture", e);
+            block.stream.failed = true;
+        }
+        writeNanos.addAndGet(System.nanoTime() - start);
+
+        buffer.clear();
+        block.stream.free.add(block);
+    }
+
+    /**
+     * A pooled buffer and the stream it belongs to
+     */
+    public static class Block {
+        public final ByteBuffer buffer;
+        private final Stream stream;
+
+        private Block() {
+            stream = null;
+            buffer = null;
+        }
+
+        private Block(Stream stream, int size) {
+            this.stream = stream;
+            buffer = ByteBuffer.allocateDirect(size)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * A file written by the writer thread
+     */
+    public class Stream implements Closeable {
+        private final FileChannel channel;
+        private final BlockingQueue<Block> free;
+        private final int blocks;
+        private volatile boolean failed;
+        private long dropped;
+
+        private Stream(FileChannel channel, int blockSize, int blocks) {
+            this.channel = channel;
+            this.blocks = blocks;
+            free = new ArrayBlockingQueue<>(blocks);
+            for (int i = 0; i < blocks; i++)
+                free.add(new Block(this, blockSize));
+        }
+
+        /**
+         * Retrieve an empty buffer without waiting
+         * @return buffer, or null when all buffers are waiting to be
+         * written. The caller is expected to drop its data in that case
+         */
+        public Block acquire() {
+            Block block = free.poll();
+            if (block == null)
+                dropped++;
+
+            return block;
+        }
+
+        /**
+         * Hand a filled buffer to the writer thread
+         * @param block buffer retrieved through acquire
+         */
+        public void submit(Block block) {
+            queue.add(block);
+        }
+
+        /**
+         * Write directly at a position of the file, bypassing the writer
+         * thread. Only safe once the stream is flushed
+         * @param data data to write
+         * @param position file offset
+         * @throws IOException if write fails
+         */
+        public void write(ByteBuffer data, long position) throws IOException {
+            while (data.hasRemaining())
+                position += channel.write(data, position);
+        }
+
+        /**
+         * Wait until all submitted buffers are written
+         */
+        public void flush() {
+            // All buffers being back in pool means nothing is pending
+            Block[] taken = new Block[blocks];
+            try {
+                for (int i = 0; i < blocks; i++)
+                    taken[i] = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Block block : taken)
+                if (block != null)
+                    free.add(block);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+
+        /**
+         * Number of buffers that could not be acquired
+         * @return count of drops
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        public boolean hasFailed() {
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package me.aymen.anes.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Records 16 bit PCM samples to a WAV file.
+ * Samples are copied into pooled buffers on the caller's thread and written
+ * by the {@link CaptureWriter} thread. Sizes in the header are filled in
+ * when the capture is closed.
+ */
+public class WavCapture implements Closeable {
+
+    private static final int HEADER_SIZE = 44;
+    private static final int BLOCK_SIZE = 16384;
+    private static final int BLOCKS = 32;
+
+    private final CaptureWriter.Stream stream;
+    private final int channels;
+    private CaptureWriter.Block block;
+    private long samples;
+
+    /**
+     * @param writer writer thread to use
+     * @param path file to write
+     * @param sampleRate samples per second
+     * @param channels number of interleaved channels
+     * @throws IOException if file cannot be opened
+     */
+    public WavCapture(CaptureWriter writer, Path path, int sampleRate,
+                      int channels) throws IOException {
+        this.channels = channels;
+        stream = writer.open(path, BLOCK_SIZE, BLOCKS);
+
+        block = stream.acquire();
+        ByteBuffer header = block.buffer;
+        header.put(new byte[]{'R', 'I', 'F', 'F'});
+        header.putInt(0);   // Filled on close
+        header.put(new byte[]{'W', 'A', 'V', 'E'});
+        header.put(new byte[]{'f', 'm', 't', ' '});
+        header.putInt(16);
+        header.putShort((short) 1);     // PCM
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * channels * 2);
+        header.putShort((short) (channels * 2));
+        header.putShort((short) 16);
+        header.put(new byte[]{'d', 'a', 't', 'a'});
+        header.putInt(0);   // Filled on close
+    }
+
+    /**
+     * Append samples. Samples that do not fit in a free buffer are dropped
+     * @param src interleaved samples
+     * @param offset first sample
+     * @param length number of samples
+     */
+    public void write(short[] src, int offset, int length) {
+        int end = offset + length;
+
+        while (offset < end) {
+            if (block == null) {
+                block = stream.acquire();
+                if (block == null)
+                    return;
+            }
+
+            ByteBuffer buffer = block.buffer;
+            int count = Math.min(end - offset, buffer.remaining() / 2);
+            for (int i = 0; i < count; i++)
+                buffer.putShort(src[offset + i]);
+            offset += count;
+            samples += count;
+
+            if (buffer.remaining() < 2) {
+                stream.submit(block);
+                block = null;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (block != null) {
+            stream.submit(block);
+            block = null;
+        }
+        stream.flush();
+
+        long data = samples * 2;
+        ByteBuffer size = ByteBuffer.allocate(4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        size.putInt(0, (int) (data + HEADER_SIZE - 8));
+        stream.write(size, 4);
+        size.clear();
+        size.putInt(0, (int) data);
+        stream.write(size, 40);
+
+        stream.close();
+    }
+
+    /**
+     * Number of samples written, counting all channels
+     * @return samples written
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public long getDropped() {
+        return stream.getDropped();
+    }
+}
@@ -0,0 +1,123 @@
+package me.aymen.anes.capture;
+
+import me.aymen.anes.FrameListener;
+import me.aymen.anes.PPU;
+import me.aymen.anes.video.Palette;
+import me.aymen.anes.video.PixelFormat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static me.aymen.anes.PPU.HEIGHT;
+import static me.aymen.anes.PPU.WIDTH;
+
+/**
+ * Records completed frames to a YUV4MPEG2 file (4:2:0, full range).
+ * Conversion is done on the emulation thread through lookup tables, while
+ * writing happens on the {@link CaptureWriter} thread.
+ * See: https://wiki.multimedia.cx/index.php/YUV4MPEG2
+ */
+public class Y4MCapture implements FrameListener, Closeable {
+
+    // NTSC frame rate of 60.0988 as a fraction, with 8:7 pixel aspect
+    private static final String HEADER = "YUV4MPEG2 W" + WIDTH + " H"
+            + HEIGHT + " F39375000:655171 Ip A8:7 C420jpeg\n";
+    private static final byte[] FRAME =
+            "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int FRAME_SIZE =
+            FRAME.length + WIDTH * HEIGHT * 3 / 2;
+    private static final int BLOCKS = 16;
+
+    // YUV of each frame entry, BT.601 full range. Chroma is kept
+    // unbiased as four entries are summed before being averaged
+    private static final int[] Y = new int[Palette.ENTRIES];
+    private static final int[] U = new int[Palette.ENTRIES];
+    private static final int[] V = new int[Palette.ENTRIES];
+
+    static {
+        int[] argb = Palette.table(PixelFormat.ARGB8888);
+        for (int i = 0; i < Palette.ENTRIES; i++) {
+            int r = (argb[i] >> 16) & 0xFF;
+            int g = (argb[i] >> 8) & 0xFF;
+            int b = argb[i] & 0xFF;
+            Y[i] = (int) Math.round(0.299 * r + 0.587 * g + 0.114 * b);
+            U[i] = (int) Math.round(-0.168736 * r - 0.331264 * g + 0.5 * b);
+            V[i] = (int) Math.round(0.5 * r - 0.418688 * g - 0.081312 * b);
+        }
+    }
+
+    private final CaptureWriter.Stream stream;
+    private long frames;
+
+    public Y4MCapture(CaptureWriter writer, Path path) throws IOException {
+        stream = writer.open(path, FRAME_SIZE, BLOCKS);
+
+        CaptureWriter.Block block = stream.acquire();
+        block.buffer.put(HEADER.getBytes(StandardCharsets.US_ASCII));
+        stream.submit(block);
+    }
+
+    @Override
+    public void frameCompleted(PPU ppu) {
+        CaptureWriter.Block block = stream.acquire();
+        if (block == null)
+            return;
+
+        write(ppu.getFrame(), block.buffer);
+        stream.submit(block);
+        frames++;
+    }
+
+    /**
+     * Converts a frame into a Y4M frame
+     * @param frame frame entries as produced by the PPU
+     * @param out buffer to write to
+     */
+    private static void write(int[] frame, ByteBuffer out) {
+        out.put(FRAME);
+
+        for (int i = 0; i < frame.length; i++)
+            out.put((byte) Y[frame[i] & 0x1FF]);
+
+        // Chroma planes are subsampled by averaging each 2x2 block
+        int chroma = out.position();
+        int plane = WIDTH * HEIGHT / 4;
+        for (int y = 0; y < HEIGHT; y += 2) {
+            for (int x = 0; x < WIDTH; x += 2) {
+                int i = y * WIDTH + x;
+                int a = frame[i] & 0x1FF;
+                int b = frame[i + 1] & 0x1FF;
+                int c = frame[i + WIDTH] & 0x1FF;
+                int d = frame[i + WIDTH + 1] & 0x1FF;
+
+                int u = ((U[a] + U[b] + U[c] + U[d]) >> 2) + 128;
+                int v = ((V[a] + V[b] + V[c] + V[d]) >> 2) + 128;
+                out.put(chroma, (byte) clamp(u));
+                out.put(chroma + plane, (byte) clamp(v));
+                chroma++;
+            }
+        }
+
+        out.position(out.position() + plane * 2);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getDropped() {
+        return stream.getDropped();
+    }
+}
@@ -0,0 +1,22 @@
+package me.aymen.anes.debug;
+
+import me.aymen.anes.CPU;
+
+/**
+ * Condition for a breakpoint or watchpoint to fire
+ */
+public interface Condition {
+
+    /**
+     * Always fires
+     */
+    Condition ALWAYS = (cpu, value) -> true;
+
+    /**
+     * @param cpu CPU of the machine
+     * @param value value read or written for watchpoints, address for
+     *              breakpoints
+     * @return true to suspend
+     */
+    boolean test(CPU cpu, int value);
+}
@@ -0,0 +1,332 @@
+package me.aymen.anes.debug;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.CPUStatus;
+import me.aymen.anes.Deassembler;
+import me.aymen.anes.Flags;
+import me.aymen.anes.NES;
+import me.aymen.anes.memory.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Execution breakpoints and read or write watchpoints, each with an
+ * optional condition. A hit suspends the machine (see
+ * {@link NES#suspend()}) and is reported to a listener, logging it by
+ * default.
+ * <p>
+ * Only pages holding a breakpoint or watchpoint are flagged, in the NES for
+ * breakpoints and in the Bus for watchpoints, so code and memory elsewhere
+ * run at full speed. Execution breakpoints fire before the instruction at
+ * their address runs. Watchpoints fire once the instruction accessing
+ * memory completes. Addresses of watchpoints are mirrored as the Bus does.
+ * <p>
+ * Must be used on the machine's thread.
+ */
+public class Debugger implements Watcher {
+    private static Logger logger = LoggerFactory.getLogger(Debugger.class);
+
+    // Kinds of hits
+    public static final int EXECUTE = 0;
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+
+    private static final String[] KINDS = {"Breakpoint", "Read", "Write"};
+
+    private final NES nes;
+
+    // Pages holding breakpoints, read by the NES before each instruction
+    private final boolean[] breakPages;
+    // Breakpoints and watchpoints per page, to know when to flag a page
+    private final int[][] counts;
+    private final Map<Integer, Condition>[] points;
+
+    private Consumer<Hit> listener;
+    private Hit hit;
+    // Breakpoint to let through once, when resuming from it
+    private int skip;
+
+    /**
+     * Attach to a machine. Only one debugger can be attached at a time
+     * @param nes machine to debug
+     */
+    @SuppressWarnings("unchecked")
+    public Debugger(NES nes) {
+        this.nes = nes;
+        breakPages = new boolean[0x100];
+        counts = new int[3][0x100];
+        points = new Map[3];
+        for (int kind = 0; kind < points.length; kind++)
+            points[kind] = new HashMap<>();
+        listener = hit -> logger.info(report());
+        skip = -1;
+
+        nes.setDebugger(this);
+        nes.getBus().setWatcher(this);
+    }
+
+    /**
+     * Remove all breakpoints and watchpoints, and detach from the machine
+     */
+    public void detach() {
+        for (int page = 0; page < 0x100; page++) {
+            if (counts[READ][page] > 0 || counts[WRITE][page] > 0)
+                nes.getBus().watch(page, false, false);
+        }
+        nes.getBus().setWatcher(null);
+        nes.setDebugger(null);
+        nes.resume();
+    }
+
+    /**
+     * Suspend before executing an address
+     * @param address address of an instruction
+     */
+    public void addBreakpoint(int address) {
+        addBreakpoint(address, Condition.ALWAYS);
+    }
+
+    /**
+     * Suspend before executing an address, if a condition holds
+     * @param address address of an instruction
+     * @param condition condition, given the address
+     */
+    public void addBreakpoint(int address, Condition condition) {
+        add(EXECUTE, address, condition);
+    }
+
+    /**
+     * Suspend after an address is read or written
+     * @param kind {@link #READ} or {@link #WRITE}
+     * @param address address watched
+     */
+    public void addWatchpoint(int kind, int address) {
+        addWatchpoint(kind, address, Condition.ALWAYS);
+    }
+
+    /**
+     * Suspend after an address is read or written, if a condition holds
+     * @param kind {@link #READ} or {@link #WRITE}
+     * @param address address watched
+     * @param condition condition, given the value read or written
+     */
+    public void addWatchpoint(int kind, int address, Condition condition) {
+        if (kind != READ && kind != WRITE)
+            throw new IllegalArgumentException("Not a watchpoint kind: "
+                    + kind);
+        add(kind, mirror(address), condition);
+    }
+
+    /**
+     * Remove a breakpoint or watchpoint
+     * @param kind {@link #EXECUTE}, {@link #READ} or {@link #WRITE}
+     * @param address address given when added
+     */
+    public void remove(int kind, int address) {
+        if (kind != EXECUTE)
+            address = mirror(address);
+        if (points[kind].remove(address) == null)
+            return;
+
+        counts[kind][address >> 8]--;
+        update(address >> 8);
+    }
+
+    /**
+     * Resume a suspended machine. A breakpoint it is suspended on is let
+     * through once
+     */
+    public void resume() {
+        skipHit();
+        nes.resume();
+    }
+
+    /**
+     * Execute a single step, letting through a breakpoint the machine is
+     * suspended on
+     * @return number of CPU cycles consumed
+     */
+    public int step() {
+        skipHit();
+        return nes.step();
+    }
+
+    /**
+     * Set who is told of hits
+     * @param listener listener, or null to ignore hits
+     */
+    public void setListener(Consumer<Hit> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Last hit since resumed
+     * @return hit, or null if none
+     */
+    public Hit getHit() {
+        return hit;
+    }
+
+    /**
+     * Describe the last hit with the machine state, followed by the last
+     * executed instructions if a {@link FlightRecorder} is attached
+     * @return report
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        if (hit != null)
+            report.append(hit).append('\n');
+
+        FlightRecorder recorder = nes.getCPU().getRecorder();
+        if (recorder != null)
+            report.append(recorder.dump());
+
+        return report.toString();
+    }
+
+    /**
+     * Called by the NES before executing an instruction on a flagged page
+     * @param pc address of the instruction
+     * @return true if suspended, in which case it must not be executed
+     */
+    public boolean breakAt(int pc) {
+        if (pc == skip) {
+            skip = -1;
+            return false;
+        }
+
+        return check(EXECUTE, pc, pc);
+    }
+
+    /**
+     * Pages holding breakpoints. Live array, read by the NES
+     * @return flag per page
+     */
+    public boolean[] getBreakPages() {
+        return breakPages;
+    }
+
+    @Override
+    public void read(int index, int value) {
+        check(READ, index, value);
+    }
+
+    @Override
+    public void write(int index, int value) {
+        check(WRITE, index, value);
+    }
+
+    /**
+     * Let the breakpoint of the last hit through once, and forget the hit.
+     * After a watchpoint, a breakpoint on the next instruction still fires
+     */
+    private void skipHit() {
+        skip = hit != null && hit.kind == EXECUTE ? hit.address : -1;
+        hit = null;
+    }
+
+    private void add(int kind, int address, Condition condition) {
+        if (points[kind].put(address, condition) == null) {
+            counts[kind][address >> 8]++;
+            update(address >> 8);
+        }
+    }
+
+    private boolean check(int kind, int address, int value) {
+        Condition condition = points[kind].get(address);
+        if (condition == null || !condition.test(nes.getCPU(), value))
+            return false;
+
+        hit = new Hit(kind, address, value, nes.getCPU());
+        nes.suspend();
+        if (listener != null)
+            listener.accept(hit);
+        return true;
+    }
+
+    /**
+     * Flag or unflag a page according to what it holds
+     */
+    private void update(int page) {
+        breakPages[page] = counts[EXECUTE][page] > 0;
+        nes.getBus().watch(page, counts[READ][page] > 0,
+                counts[WRITE][page] > 0);
+    }
+
+    /**
+     * Apply the mirroring of RAM and PPU registers
+     */
+    private static int mirror(int address) {
+        if (address < 0x2000)
+            return address & 0x7FF;
+        if (address < 0x4000)
+            return 0x2000 | (address & 0x7);
+        return address;
+    }
+
+    /**
+     * A breakpoint or watchpoint that fired, with the CPU state at the time
+     */
+    public static class Hit {
+        private final int kind;
+        private final int address;
+        private final int value;
+        private final CPUStatus status;
+
+        Hit(int kind, int address, int value, CPU cpu) {
+            this.kind = kind;
+            this.address = address;
+            this.value = value;
+            status = new CPUStatus();
+            status.PC = cpu.getPC();
+            status.A = cpu.getA();
+            status.X = cpu.getX();
+            status.Y = cpu.getY();
+            status.SP = cpu.getSP();
+            status.P = new Flags();
+            status.P.setStatus(cpu.getFlags().getStatus());
+            status.cycleCount = cpu.getCycles();
+        }
+
+        /**
+         * @return {@link #EXECUTE}, {@link #READ} or {@link #WRITE}
+         */
+        public int getKind() {
+            return kind;
+        }
+
+        public int getAddress() {
+            return address;
+        }
+
+        /**
+         * @return value read or written, or address for breakpoints
+         */
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * CPU registers when hit. Only registers, PC and cycle count are
+         * set
+         * @return status
+         */
+        public CPUStatus getStatus() {
+            return status;
+        }
+
+        @Override
+        public String toString() {
+            String what = kind == EXECUTE
+                    ? String.format("%s at $%04X", KINDS[kind], address)
+                    : String.format("%s of $%02X at $%04X", KINDS[kind], value,
+                    address);
+            return String.format("%s, PC:%04X %s", what, status.PC,
+                    Deassembler.showStatus(status));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package me.aymen.anes.debug;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.CPUStatus;
+import me.aymen.anes.Deassembler;
+import me.aymen.anes.Flags;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Keeps the last executed instructions, to be shown when an error or
+ * breakpoint fires. Cheap enough to stay attached to every session: each
+ * instruction is six ints written to a preallocated ring, and nothing is
+ * formatted until {@link #dump(Writer)} is called.
+ * <p>
+ * Attach with {@link CPU#setRecorder(FlightRecorder)}. Not thread safe:
+ * must be dumped on the emulation thread or once it has stopped.
+ */
+public class FlightRecorder {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // Ints per instruction
+    private static final int FIELDS = 6;
+
+    // Each entry holds:
+    // 0: PC in bits 0 to 15, opcode in bits 16 to 23
+    // 1: first operand + 1 in bits 0 to 8, second operand + 1 in bits 9 to
+    //    17, so that missing operands are 0
+    // 2: effective address, or -1
+    // 3: A, X, Y and SP, a byte each from low to high
+    // 4: status flags in bits 0 to 7, cycles consumed above, which DMA
+    //    stalls take past 255
+    // 5: cycle count after execution
+    private final int[] ring;
+    private final int capacity;
+    private int next;
+    private long count;
+
+    public FlightRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of instructions kept
+     */
+    public FlightRecorder(int capacity) {
+        this.capacity = capacity;
+        ring = new int[capacity * FIELDS];
+    }
+
+    /**
+     * Record an executed instruction, with registers after execution
+     */
+    public void record(int pc, int opcode, int op1, int op2, int address,
+                       int a, int x, int y, int status, int sp, int cycles,
+                       int cycleCount) {
+        int i = next * FIELDS;
+        ring[i] = pc | opcode << 16;
+        ring[i + 1] = (op1 + 1) | (op2 + 1) << 9;
+        ring[i + 2] = address;
+        ring[i + 3] = a | x << 8 | y << 16 | sp << 24;
+        ring[i + 4] = status | cycles << 8;
+        ring[i + 5] = cycleCount;
+
+        if (++next == capacity)
+            next = 0;
+        count++;
+    }
+
+    /**
+     * Forget all recorded instructions
+     */
+    public void clear() {
+        next = 0;
+        count = 0;
+    }
+
+    /**
+     * Number of instructions that can be dumped
+     * @return recorded instructions, up to capacity
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /**
+     * Instructions recorded since created or cleared, including those no
+     * longer kept
+     * @return total recorded instructions
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Status of a recorded instruction
+     * @param age 0 for the last instruction, 1 for the one before, up to
+     *            {@link #size()} - 1
+     * @return status as returned by {@link CPU#tick()}
+     */
+    public CPUStatus get(int age) {
+        if (age < 0 || age >= size())
+            throw new IndexOutOfBoundsException("No instruction " + age);
+
+        int i = ((next - 1 - age + capacity) % capacity) * FIELDS;
+        CPUStatus status = new CPUStatus();
+        status.PC = ring[i] & 0xFFFF;
+        status.op = (ring[i] >> 16) & 0xFF;
+        status.cycle = ring[i + 4] >>> 8;
+        status.op1 = (ring[i + 1] & 0x1FF) - 1;
+        status.op2 = (ring[i + 1] >> 9) - 1;
+        status.address = ring[i + 2];
+        status.A = ring[i + 3] & 0xFF;
+        status.X = (ring[i + 3] >> 8) & 0xFF;
+        status.Y = (ring[i + 3] >> 16) & 0xFF;
+        status.SP = ring[i + 3] >>> 24;
+        status.P = new Flags();
+        status.P.setStatus(ring[i + 4] & 0xFF);
+        status.cycleCount = ring[i + 5];
+        status.opcode = CPU.getInst(status.op);
+        return status;
+    }
+
+    /**
+     * Write recorded instructions from oldest to newest, one per line, as
+     * traced by {@link Deassembler}
+     * @param out destination. Not closed
+     * @throws IOException if writing fails
+     */
+    public void dump(Writer out) throws IOException {
+        for (int age = size() - 1; age >= 0; age--) {
+            CPUStatus status = get(age);
+            out.write(String.format("%-50s%s%n", Deassembler.analyse(status),
+                    Deassembler.showStatus(status)));
+        }
+        out.flush();
+    }
+
+    /**
+     * Recorded instructions as text
+     * @return dump as written by {@link #dump(Writer)}
+     */
+    public String dump() {
+        StringWriter out = new StringWriter();
+        try {
+            dump(out);
+        } catch (IOException e) {
+            // Not thrown by a string
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+}
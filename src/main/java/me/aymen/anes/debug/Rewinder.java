@@ -0,0 +1,280 @@
+package me.aymen.anes.debug;
+
+import me.aymen.anes.FrameListener;
+import me.aymen.anes.NES;
+import me.aymen.anes.PPU;
+import me.aymen.anes.memory.Bus;
+import me.aymen.anes.memory.UndoLog;
+import me.aymen.anes.memory.Watcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Steps a machine backwards by steps or frames. While attached, every
+ * write to memory is journaled with the value it replaced, and the state
+ * of the other components (CPU, PPU, APU and controllers, a few hundred
+ * bytes) is kept at the end of each frame. Both are kept in bounded rings
+ * of preallocated arrays.
+ * <p>
+ * Stepping back undoes journaled writes down to the last frame end before
+ * the target, restores the components as they were then, and runs forward
+ * the remaining steps. Memory never needs a whole snapshot, and at most one
+ * frame is run again. Running again is exact as emulation is deterministic,
+ * as long as controller buttons are not changed in between.
+ * <p>
+ * The reach backwards is bounded by both rings: frames kept, and writes
+ * journaled since the oldest of them. Loading a state while attached
+ * breaks the journal; {@link #clear()} must follow it. Must be used on the
+ * machine's thread.
+ */
+public class Rewinder implements FrameListener, UndoLog {
+
+    public static final int DEFAULT_FRAMES = 600;
+    public static final int DEFAULT_WRITES = 1 << 20;
+
+    private final NES nes;
+    private final Bus bus;
+
+    // Journal of writes. Address in bits 8 and above, old value below
+    private final int[] journal;
+    private long writes;
+
+    // Frame ends, with the step and journal position they were at
+    private final long[] checkpointSteps;
+    private final long[] checkpointWrites;
+    private final byte[][] checkpointStates;
+    private long checkpoints;
+
+    // Position is counted in steps of the NES since attached
+    private long base;
+    private final SlotOutput slotOutput;
+    private final DataOutputStream output;
+
+    public Rewinder(NES nes) {
+        this(nes, DEFAULT_FRAMES, DEFAULT_WRITES);
+    }
+
+    /**
+     * Attach to a machine
+     * @param nes machine to rewind
+     * @param frames number of frame ends kept
+     * @param writes number of memory writes kept
+     */
+    public Rewinder(NES nes, int frames, int writes) {
+        this.nes = nes;
+        bus = nes.getBus();
+        journal = new int[writes];
+        checkpointSteps = new long[frames];
+        checkpointWrites = new long[frames];
+        checkpointStates = new byte[frames][];
+        slotOutput = new SlotOutput();
+        output = new DataOutputStream(slotOutput);
+
+        bus.setUndoLog(this);
+        nes.getPPU().addFrameListener(this);
+        clear();
+    }
+
+    /**
+     * Stop journaling
+     */
+    public void detach() {
+        bus.setUndoLog(null);
+        nes.getPPU().removeFrameListener(this);
+    }
+
+    /**
+     * Forget all history, starting again from the current state
+     */
+    public void clear() {
+        writes = 0;
+        checkpoints = 0;
+        base = nes.getSteps();
+        checkpoint();
+    }
+
+    /**
+     * Steps run since attached or cleared, less those stepped back
+     * @return position in steps
+     */
+    public long getPosition() {
+        return nes.getSteps() - base;
+    }
+
+    /**
+     * Earliest position that can be stepped back to
+     * @return position in steps
+     */
+    public long getOldest() {
+        long oldest = oldest();
+        return oldest < checkpoints ? checkpointSteps[slot(oldest)]
+                : getPosition();
+    }
+
+    /**
+     * Step back a number of steps
+     * @param count steps to go back
+     * @return false if out of reach, in which case nothing is done
+     */
+    public boolean stepBack(int count) {
+        long target = getPosition() - count;
+        if (count < 0 || target < getOldest())
+            return false;
+
+        // Last frame end at or before target
+        long index = checkpoints - 1;
+        while (checkpointSteps[slot(index)] > target)
+            index--;
+
+        rewind(index);
+        replay(target - getPosition());
+        return true;
+    }
+
+    /**
+     * Step back to the end of an earlier frame. The end of the current
+     * frame is counted if it was passed since
+     * @param count frames to go back, 1 for the last frame end passed
+     * @return false if out of reach, in which case nothing is done
+     */
+    public boolean stepBackFrames(int count) {
+        long position = getPosition();
+        long index = checkpoints - 1;
+        if (checkpointSteps[slot(index)] == position)
+            index--;
+        index -= count - 1;
+
+        if (count < 1 || index < oldest())
+            return false;
+
+        rewind(index);
+        return true;
+    }
+
+    @Override
+    public void write(int index, int old) {
+        journal[(int) (writes++ % journal.length)] = index << 8 | old;
+    }
+
+    @Override
+    public void frameCompleted(PPU ppu) {
+        checkpoint();
+    }
+
+    /**
+     * Record the state of components at the current position
+     */
+    private void checkpoint() {
+        int slot = slot(checkpoints);
+
+        // Component state has a fixed size, so slots are written in place
+        // and only grown the first time around
+        slotOutput.array = checkpointStates[slot] != null
+                ? checkpointStates[slot] : new byte[slotOutput.size];
+        slotOutput.position = 0;
+        try {
+            nes.saveComponents(output);
+        } catch (IOException e) {
+            // Not thrown by a byte array
+            throw new IllegalStateException(e);
+        }
+        checkpointStates[slot] = slotOutput.array;
+        slotOutput.size = Math.max(slotOutput.size, slotOutput.position);
+
+        checkpointSteps[slot] = getPosition();
+        checkpointWrites[slot] = writes;
+        checkpoints++;
+    }
+
+    /**
+     * Go back to a frame end, discarding all history after it
+     */
+    private void rewind(long index) {
+        int slot = slot(index);
+
+        // Undo writes newest first
+        long mark = checkpointWrites[slot];
+        while (writes > mark) {
+            int entry = journal[(int) (--writes % journal.length)];
+            bus.poke(entry & 0xFF, entry >>> 8);
+        }
+
+        try {
+            nes.loadComponents(new DataInputStream(
+                    new ByteArrayInputStream(checkpointStates[slot])));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        base = nes.getSteps() - checkpointSteps[slot];
+        checkpoints = index + 1;
+    }
+
+    /**
+     * Run forward without stopping at breakpoints or watchpoints
+     */
+    private void replay(long count) {
+        Debugger debugger = nes.getDebugger();
+        Watcher watcher = bus.getWatcher();
+        nes.setDebugger(null);
+        bus.setWatcher(null);
+
+        for (long i = 0; i < count; i++)
+            nes.step();
+
+        nes.setDebugger(debugger);
+        bus.setWatcher(watcher);
+    }
+
+    /**
+     * Oldest frame end whose state and journal are both still kept
+     * @return index of frame end, or number of frame ends if none is
+     */
+    private long oldest() {
+        long index = Math.max(0, checkpoints - checkpointSteps.length);
+        while (index < checkpoints
+                && checkpointWrites[slot(index)] < writes - journal.length)
+            index++;
+        return index;
+    }
+
+    private int slot(long index) {
+        return (int) (index % checkpointSteps.length);
+    }
+
+    /**
+     * Writes into a checkpoint slot, growing it when full. Bytes past the
+     * position are left over from an earlier state and ignored on load
+     */
+    private static class SlotOutput extends OutputStream {
+
+        private byte[] array;
+        private int position;
+        // Largest state written so far, to size new slots
+        private int size = 512;
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            array[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) {
+            ensure(length);
+            System.arraycopy(b, offset, array, position, length);
+            position += length;
+        }
+
+        private void ensure(int length) {
+            if (position + length > array.length)
+                array = Arrays.copyOf(array,
+                        Math.max(array.length * 2, position + length));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package me.aymen.anes.env;
+
+/**
+ * Parts of the machine written as observation by {@link VecEnv}. Values are
+ * bit flags and may be combined; parts are laid out in the order below.
+ */
+public interface Observation {
+    /**
+     * Grayscale frame, one byte per pixel after downsampling
+     */
+    int FRAME = 0x1;
+
+    /**
+     * The 2 KB of internal RAM
+     */
+    int RAM = 0x2;
+}
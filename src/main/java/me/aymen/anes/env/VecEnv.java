@@ -0,0 +1,302 @@
+package me.aymen.anes.env;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.PPU;
+import me.aymen.anes.input.ControllerPorts;
+import me.aymen.anes.metrics.BatchEvent;
+import me.aymen.anes.video.Palette;
+import me.aymen.anes.video.PixelFormat;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static me.aymen.anes.env.Observation.FRAME;
+import static me.aymen.anes.env.Observation.RAM;
+
+/**
+ * Steps a batch of NES instances in parallel, for training agents.
+ * Each step applies one action per instance, runs a number of frames with
+ * the action held, and writes every instance's observation into one caller
+ * supplied direct buffer of shape [instances, observation size].
+ * <p>
+ * Each instance is only ever touched by one pool thread at a time and
+ * writes to its own slice of the buffer, so instances share nothing.
+ * Observations are written straight into the slices, without a staging
+ * array. Tasks, slices and the row and RAM arrays are all created up
+ * front; a step allocates nothing.
+ */
+public class VecEnv {
+
+    // Internal RAM size
+    private static final int RAM_SIZE = 0x800;
+
+    private final NES[] envs;
+    private final ForkJoinPool pool;
+
+    private final int observation;
+    private final int factor;
+    private final int width;
+    private final int height;
+    private final int frameSize;
+    private final int size;
+
+    private final Worker[] workers;
+    private final Batch batch;
+
+    private int frameSkip;
+    private int[] actions;
+
+    // Metrics
+    private long steps;
+    private long stepNanos;
+
+    /**
+     * Step on the common pool shared by the whole JVM
+     * @param envs instances, with a ROM loaded. Their current states are
+     *             the ones {@link #reset()} returns to
+     * @param observation combination of {@link Observation} flags
+     * @param factor downsampling factor of the frame, dividing 256 and 240
+     */
+    public VecEnv(NES[] envs, int observation, int factor) {
+        this(envs, observation, factor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param envs instances, with a ROM loaded. Their current states are
+     *             the ones {@link #reset()} returns to
+     * @param observation combination of {@link Observation} flags
+     * @param factor downsampling factor of the frame, dividing 256 and 240
+     * @param pool pool instances are stepped on
+     */
+    public VecEnv(NES[] envs, int observation, int factor, ForkJoinPool pool) {
+        if (factor < 1 || PPU.WIDTH % factor != 0 || PPU.HEIGHT % factor != 0)
+            throw new IllegalArgumentException("Invalid downsampling " +
+                    "factor: " + factor);
+        if ((observation & (FRAME | RAM)) == 0)
+            throw new IllegalArgumentException("Empty observation");
+
+        this.envs = envs;
+        this.pool = pool;
+        this.observation = observation;
+        this.factor = factor;
+        width = PPU.WIDTH / factor;
+        height = PPU.HEIGHT / factor;
+        frameSize = (observation & FRAME) == FRAME ? width * height : 0;
+        size = frameSize + ((observation & RAM) == RAM ? RAM_SIZE : 0);
+
+        workers = new Worker[envs.length];
+        for (int i = 0; i < envs.length; i++)
+            workers[i] = new Worker(i, envs[i], envs[i].saveState());
+        batch = new Batch();
+        frameSkip = 1;
+    }
+
+    /**
+     * Set the number of frames each step runs. The action is repeated for
+     * all of them, and the observation is taken after the last one
+     * @param frameSkip frames per step
+     */
+    public void setFrameSkip(int frameSkip) {
+        if (frameSkip < 1)
+            throw new IllegalArgumentException("Invalid frame skip");
+        this.frameSkip = frameSkip;
+    }
+
+    /**
+     * Set where observations are written. Must be called before stepping
+     * @param buffer direct buffer of at least
+     *               {@link #getCount()} * {@link #getObservationSize()} bytes
+     */
+    public void setBuffer(ByteBuffer buffer) {
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException("Buffer must be direct");
+        if (buffer.capacity() < envs.length * size)
+            throw new IllegalArgumentException("Buffer too small");
+
+        for (int i = 0; i < envs.length; i++) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(i * size).limit(i * size + size);
+            workers[i].slice = slice.slice();
+        }
+    }
+
+    /**
+     * Restore every instance to its initial state and write observations.
+     * Unlike stepping, restoring a state allocates
+     */
+    public void reset() {
+        actions = null;
+        run();
+    }
+
+    /**
+     * Restore one instance to its initial state, writing its observation.
+     * Used when a single episode ends
+     * @param index instance
+     */
+    public void reset(int index) {
+        Worker worker = workers[index];
+        worker.restore();
+        worker.observe();
+    }
+
+    /**
+     * Apply actions, run frame skip frames on every instance, then write
+     * observations
+     * @param actions buttons of each instance, first controller in bits 0
+     *                to 7 and second in bits 8 to 15
+     */
+    public void step(int[] actions) {
+        if (actions.length < envs.length)
+            throw new IllegalArgumentException("Missing actions");
+
+        long start = System.nanoTime();
+        this.actions = actions;
+        run();
+        steps++;
+        stepNanos += System.nanoTime() - start;
+    }
+
+    private void run() {
+        if (workers.length > 0 && workers[0].slice == null)
+            throw new IllegalStateException("No buffer set");
+
+        batch.reinitialize();
+        pool.invoke(batch);
+    }
+
+    public int getCount() {
+        return envs.length;
+    }
+
+    public NES get(int index) {
+        return envs[index];
+    }
+
+    /**
+     * Bytes written per instance
+     * @return observation size
+     */
+    public int getObservationSize() {
+        return size;
+    }
+
+    public int getFrameWidth() {
+        return width;
+    }
+
+    public int getFrameHeight() {
+        return height;
+    }
+
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Total time spent stepping
+     * @return nanoseconds
+     */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    /**
+     * Runs all workers. Reused for every step
+     */
+    private class Batch extends RecursiveAction {
+        @Override
+        protected void compute() {
+            for (Worker worker : workers)
+                worker.reinitialize();
+            invokeAll(workers);
+        }
+    }
+
+    /**
+     * Steps and observes a single instance. Reused for every step
+     */
+    private class Worker extends RecursiveAction {
+        private final int index;
+        private final NES nes;
+        private final byte[] state;
+        private final int[] row;
+        private final int[] ram;
+        private ByteBuffer slice;
+
+        Worker(int index, NES nes, byte[] state) {
+            this.index = index;
+            this.nes = nes;
+            this.state = state;
+            row = new int[width];
+            ram = new int[RAM_SIZE];
+        }
+
+        @Override
+        protected void compute() {
+            if (actions == null) {
+                restore();
+            } else {
+                ControllerPorts controllers = nes.getControllers();
+                controllers.get(0).setButtons(actions[index] & 0xFF);
+                controllers.get(1).setButtons((actions[index] >> 8) & 0xFF);
+                BatchEvent event = new BatchEvent();
+                event.begin();
+                for (int i = 0; i < frameSkip; i++)
+                    nes.runFrame();
+                if (event.shouldCommit()) {
+                    event.instance = index;
+                    event.frames = frameSkip;
+                    event.commit();
+                }
+            }
+            observe();
+        }
+
+        void restore() {
+            nes.loadState(state);
+            nes.getControllers().get(0).setButtons(0);
+            nes.getControllers().get(1).setButtons(0);
+        }
+
+        void observe() {
+            if ((observation & FRAME) == FRAME)
+                downsample();
+            if ((observation & RAM) == RAM) {
+                // Read a page at a time through the page table
+                nes.getBus().peek(0, ram, 0, RAM_SIZE);
+                for (int i = 0; i < RAM_SIZE; i++)
+                    slice.put(frameSize + i, (byte) ram[i]);
+            }
+        }
+
+        /**
+         * Average each factor x factor block of luma into one byte
+         */
+        private void downsample() {
+            int[] frame = nes.getPPU().getFrame();
+            int[] luma = Palette.table(PixelFormat.GRAYSCALE);
+            int shift = Integer.numberOfTrailingZeros(factor * factor);
+            boolean power = Integer.bitCount(factor) == 1;
+            int area = factor * factor;
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++)
+                    row[x] = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    int base = (y * factor + dy) * PPU.WIDTH;
+                    for (int x = 0; x < PPU.WIDTH; x++)
+                        row[x / factor] += luma[frame[base + x] & 0x1FF];
+                }
+                for (int x = 0; x < width; x++)
+                    slice.put(y * width + x, (byte) (power ? row[x] >> shift
+                            : row[x] / area));
+            }
+        }
+    }
+}
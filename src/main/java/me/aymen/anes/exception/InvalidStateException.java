@@ -0,0 +1,16 @@
+package me.aymen.anes.exception;
+
+/**
+ * Thrown when a saved state is corrupted or was saved by an incompatible
+ * version
+ */
+public class InvalidStateException extends RuntimeException {
+
+    public InvalidStateException() {
+        super();
+    }
+
+    public InvalidStateException(String message) {
+        super(message);
+    }
+}
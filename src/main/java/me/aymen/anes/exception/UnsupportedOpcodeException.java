@@ -0,0 +1,29 @@
+package me.aymen.anes.exception;
+
+/**
+ * Thrown when the CPU fetches an opcode it does not implement
+ */
+public class UnsupportedOpcodeException extends RuntimeException {
+
+    private final int opcode;
+    private final int address;
+
+    /**
+     * @param opcode opcode fetched
+     * @param address address it was fetched from
+     */
+    public UnsupportedOpcodeException(int opcode, int address) {
+        super(String.format("Unsupported opcode $%02X at $%04X", opcode,
+                address));
+        this.opcode = opcode;
+        this.address = address;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,173 @@
+package me.aymen.anes.hash;
+
+import me.aymen.anes.FrameListener;
+import me.aymen.anes.PPU;
+import me.aymen.anes.memory.Bus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Hashes the frame buffer and internal RAM (0x0000 to 0x07FF) each time a
+ * frame completes. Hashes are kept in memory and can optionally be
+ * streamed to a file, allowing two runs to be compared frame by frame
+ * without keeping any pixel data.
+ * <p>
+ * File format: the magic "ANESHASH", then for each frame the frame hash
+ * followed by the RAM hash, both as big endian 64 bit values.
+ */
+public class FrameHasher implements FrameListener, Closeable {
+
+    private static final long MAGIC = 0x414E455348415348L; // ANESHASH
+    private static final int RAM_SIZE = 0x800;
+
+    private final Bus bus;
+    private final int[] ram;
+    private DataOutputStream out;
+
+    // Frame and RAM hashes, interleaved
+    private long[] hashes;
+    private int frames;
+
+    public FrameHasher(Bus bus) {
+        this.bus = bus;
+        ram = new int[RAM_SIZE];
+        hashes = new long[2 * 1024];
+    }
+
+    /**
+     * Stream hashes to a file as frames complete
+     * @param file file to write
+     * @throws IOException if file cannot be created
+     */
+    public void streamTo(Path file) throws IOException {
+        streamTo(Files.newOutputStream(file));
+    }
+
+    /**
+     * Stream hashes as frames complete
+     * @param stream stream to write to
+     * @throws IOException if header cannot be written
+     */
+    public void streamTo(OutputStream stream) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeLong(MAGIC);
+    }
+
+    @Override
+    public void frameCompleted(PPU ppu) {
+        int[] frame = ppu.getFrame();
+        long frameHash = Hash64.hash(frame, 0, frame.length);
+        bus.peek(0, ram, 0, RAM_SIZE);
+        long ramHash = Hash64.hash(ram, 0, RAM_SIZE);
+
+        if (frames * 2 == hashes.length)
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        hashes[frames * 2] = frameHash;
+        hashes[frames * 2 + 1] = ramHash;
+        frames++;
+
+        if (out != null) {
+            try {
+                out.writeLong(frameHash);
+                out.writeLong(ramHash);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Number of frames hashed
+     * @return frame count
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Retrieve hash of a frame buffer
+     * @param frame frame number, starting at zero
+     * @return 64 bit hash
+     */
+    public long getFrameHash(int frame) {
+        checkFrame(frame);
+        return hashes[frame * 2];
+    }
+
+    /**
+     * Retrieve hash of internal RAM at the end of a frame
+     * @param frame frame number, starting at zero
+     * @return 64 bit hash
+     */
+    public long getRAMHash(int frame) {
+        checkFrame(frame);
+        return hashes[frame * 2 + 1];
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Find the first frame where two hash files differ
+     * @param a first file
+     * @param b second file
+     * @return first divergent frame, or -1 if both files are identical.
+     * If one file is a prefix of the other, the frame after the shorter
+     * run is returned
+     * @throws IOException if files cannot be read or are not hash files
+     */
+    public static int firstDivergence(Path a, Path b) throws IOException {
+        try (DataInputStream inA = open(a); DataInputStream inB = open(b)) {
+            for (int frame = 0; ; frame++) {
+                long[] entryA = readEntry(inA);
+                long[] entryB = readEntry(inB);
+
+                if (entryA == null && entryB == null)
+                    return -1;
+                if (entryA == null || entryB == null
+                        || entryA[0] != entryB[0] || entryA[1] != entryB[1])
+                    return frame;
+            }
+        }
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)));
+        if (in.readLong() != MAGIC) {
+            in.close();
+            throw new IOException("Not a frame hash file: " + file);
+        }
+
+        return in;
+    }
+
+    private static long[] readEntry(DataInputStream in) throws IOException {
+        try {
+            return new long[]{in.readLong(), in.readLong()};
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= frames)
+            throw new IndexOutOfBoundsException("Frame " + frame
+                    + " was not hashed");
+    }
+}
@@ -0,0 +1,97 @@
+package me.aymen.anes.hash;
+
+/**
+ * Fast non-cryptographic 64 bit hashing of int and byte arrays.
+ * Input is consumed four values at a time into independent lanes, so the
+ * multiplications of consecutive values do not wait on each other. Mixing
+ * constants are those of xxHash64.
+ */
+public class Hash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+
+    private Hash64() {
+    }
+
+    /**
+     * Hash a range of an array
+     * @param data values to hash
+     * @param offset first value
+     * @param length number of values
+     * @return 64 bit hash
+     */
+    public static long hash(int[] data, int offset, int length) {
+        long h1 = PRIME1 + PRIME2;
+        long h2 = PRIME2;
+        long h3 = 0;
+        long h4 = -PRIME1;
+
+        int i = offset;
+        int end = offset + length;
+        for (; i + 4 <= end; i += 4) {
+            h1 = round(h1, data[i]);
+            h2 = round(h2, data[i + 1]);
+            h3 = round(h3, data[i + 2]);
+            h4 = round(h4, data[i + 3]);
+        }
+
+        long h = Long.rotateLeft(h1, 1) + Long.rotateLeft(h2, 7)
+                + Long.rotateLeft(h3, 12) + Long.rotateLeft(h4, 18);
+        for (; i < end; i++)
+            h = round(h, data[i]);
+
+        return mix(h ^ length);
+    }
+
+    /**
+     * Hash a range of a byte array, one unsigned byte per value
+     * @param data bytes to hash
+     * @param offset first byte
+     * @param length number of bytes
+     * @return 64 bit hash
+     */
+    public static long hash(byte[] data, int offset, int length) {
+        long h1 = PRIME1 + PRIME2;
+        long h2 = PRIME2;
+        long h3 = 0;
+        long h4 = -PRIME1;
+
+        int i = offset;
+        int end = offset + length;
+        for (; i + 4 <= end; i += 4) {
+            h1 = round(h1, data[i] & 0xFF);
+            h2 = round(h2, data[i + 1] & 0xFF);
+            h3 = round(h3, data[i + 2] & 0xFF);
+            h4 = round(h4, data[i + 3] & 0xFF);
+        }
+
+        long h = Long.rotateLeft(h1, 1) + Long.rotateLeft(h2, 7)
+                + Long.rotateLeft(h3, 12) + Long.rotateLeft(h4, 18);
+        for (; i < end; i++)
+            h = round(h, data[i] & 0xFF);
+
+        return mix(h ^ length);
+    }
+
+    /**
+     * Final avalanche of a 64 bit value
+     * @param h value to mix
+     * @return mixed value
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, int value) {
+        acc += (value & 0xFFFFFFFFL) * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+}
@@ -0,0 +1,101 @@
+package me.aymen.anes.input;
+
+/**
+ * Standard controller plugged into one port.
+ * Button state is published by whichever thread drives the controller (UI,
+ * bot or network) as a single int, and picked up by the emulation thread
+ * when the game latches the controller. For batch replay, a precomputed
+ * array of per frame states can be used instead, with no synchronisation
+ * at all.
+ */
+public class Controller {
+
+    // Buttons, in the order they are shifted out
+    public static final int A = 0x01;
+    public static final int B = 0x02;
+    public static final int SELECT = 0x04;
+    public static final int START = 0x08;
+    public static final int UP = 0x10;
+    public static final int DOWN = 0x20;
+    public static final int LEFT = 0x40;
+    public static final int RIGHT = 0x80;
+
+    // Written by any thread, read by emulation thread on latch
+    private volatile int buttons;
+
+    // Per frame states, owned by emulation thread
+    private int[] script;
+    private int frame;
+
+    // Shift register
+    int shift;
+
+    /**
+     * Publish current button state. Safe to call from any thread
+     * @param buttons pressed buttons
+     */
+    public void setButtons(int buttons) {
+        this.buttons = buttons & 0xFF;
+    }
+
+    public int getButtons() {
+        return buttons;
+    }
+
+    /**
+     * Use a precomputed state per frame, overriding published state. Must
+     * be called on the emulation thread
+     * @param script buttons for each frame, starting from next frame, or
+     *               null to return to published state. The last entry is
+     *               held once the script runs out
+     */
+    public void setScript(int[] script) {
+        setScript(script, 0);
+    }
+
+    /**
+     * Use a precomputed state per frame, starting part way through it
+     * @param script buttons for each frame, or null to return to published
+     *               state
+     * @param frame entry of script used for the current frame
+     */
+    public void setScript(int[] script, int frame) {
+        this.script = script;
+        this.frame = frame;
+    }
+
+    /**
+     * Buttons the controller reports for the current frame
+     * @return pressed buttons
+     */
+    public int current() {
+        if (script == null)
+            return buttons;
+
+        return script[Math.min(frame, script.length - 1)];
+    }
+
+    /**
+     * Copy current buttons into the shift register
+     */
+    void latch() {
+        shift = current();
+    }
+
+    /**
+     * Shift out the next button. Once all 8 are read, 1 is returned
+     * @return 1 if button is pressed
+     */
+    int shift() {
+        int bit = shift & 1;
+        shift = (shift >> 1) | 0x80;
+        return bit;
+    }
+
+    /**
+     * Advance the script by one frame
+     */
+    void nextFrame() {
+        frame++;
+    }
+}
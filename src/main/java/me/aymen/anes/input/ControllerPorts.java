@@ -0,0 +1,98 @@
+package me.aymen.anes.input;
+
+import me.aymen.anes.FrameListener;
+import me.aymen.anes.PPU;
+import me.aymen.anes.memory.IODevice;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Controller ports ($4016 and $4017).
+ * Writing 1 to bit 0 of $4016 keeps both controllers latching their
+ * buttons; writing 0 stops latching so buttons can be shifted out one at a
+ * time by reading $4016 (port 1) and $4017 (port 2).
+ */
+public class ControllerPorts implements IODevice, FrameListener {
+
+    // Upper bits of reads come from the data bus, which usually holds the
+    // high byte of the register address
+    private static final int OPEN_BUS = 0x40;
+
+    private final Controller[] ports;
+    private boolean strobe;
+
+    public ControllerPorts() {
+        ports = new Controller[]{new Controller(), new Controller()};
+    }
+
+    /**
+     * Retrieve controller in a port
+     * @param port 0 for first port, 1 for second
+     * @return controller
+     */
+    public Controller get(int port) {
+        return ports[port];
+    }
+
+    /**
+     * Write strobe and shift registers. Published buttons and scripts are
+     * input rather than state, and are not included
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    public void save(DataOutput out) throws IOException {
+        out.writeBoolean(strobe);
+        out.writeByte(ports[0].shift);
+        out.writeByte(ports[1].shift);
+    }
+
+    /**
+     * Restore strobe and shift registers
+     * @param in source
+     * @throws IOException if reading fails
+     */
+    public void load(DataInput in) throws IOException {
+        strobe = in.readBoolean();
+        ports[0].shift = in.readUnsignedByte();
+        ports[1].shift = in.readUnsignedByte();
+    }
+
+    @Override
+    public int read(int index) {
+        Controller controller = ports[index - 0x4016];
+
+        // While strobe is high the register keeps reloading, so the first
+        // button is returned constantly and nothing is shifted out
+        if (strobe) {
+            controller.latch();
+            return (controller.shift & 1) | OPEN_BUS;
+        }
+
+        return controller.shift() | OPEN_BUS;
+    }
+
+    @Override
+    public int peek(int index) {
+        Controller controller = ports[index - 0x4016];
+        int bit = strobe ? controller.current() & 1 : controller.shift & 1;
+        return bit | OPEN_BUS;
+    }
+
+    @Override
+    public void write(int value, int index) {
+        strobe = (value & 0x01) == 0x01;
+
+        if (strobe) {
+            ports[0].latch();
+            ports[1].latch();
+        }
+    }
+
+    @Override
+    public void frameCompleted(PPU ppu) {
+        ports[0].nextFrame();
+        ports[1].nextFrame();
+    }
+}
@@ -1,11 +1,29 @@
 package me.aymen.anes.memory;
 
+import me.aymen.anes.hash.Hash64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Provides Access to Different memory portions in NES.
  * Internally encapsulates access to RAM, ROM and IO Registers
+ * <p>
+ * Memory is accessed through a table of 256 byte pages, so that a bus can
+ * be forked cheaply: a fork shares all pages with its parent, and whichever
+ * of the two writes to a shared page first copies it. ROM is never written,
+ * so it stays shared by all forks.
+ * <p>
+ * A hash of writable memory (0x0000 to 0x7FFF) is kept up to date on each
+ * write, see {@link #getHash()}.
+ * <p>
+ * Each page has flags for anything needing more than a plain access: being
+ * shared, holding device registers, being watched, or having writes
+ * logged. Reads and writes of
+ * unflagged pages only pay for checking the flags.
  */
 public class Bus {
     private final Logger logger = LoggerFactory.getLogger(Bus.class);
@@ -17,13 +35,270 @@ public class Bus {
     // TODO use it when implementing PPU by having own read and write methods
     private static int PPU_MAX_ADDR = 0x2FFF;
 
+    private static final int PAGES = SIZE >> 8;
+
+    // Page flags
+    private static final int SHARED = 0x01;
+    private static final int DEVICE = 0x02;
+    private static final int WATCH_READ = 0x04;
+    private static final int WATCH_WRITE = 0x08;
+    private static final int LOGGED = 0x10;
+
+    // Random odd key per writable address. Memory hashes to the sum of
+    // each key multiplied by the value stored at its address
+    private static final long[] KEYS = new long[0x8000];
+
+    static {
+        for (int i = 0; i < KEYS.length; i++)
+            KEYS[i] = Hash64.mix(0x9E3779B97F4A7C15L * (i + 1)) | 1;
+    }
+
+    // Number of registers devices can be attached to. 8 PPU registers
+    // (0x2000 to 0x2007) followed by 32 APU and IO registers
+    // (0x4000 to 0x401F)
+    private static int REGISTERS = 40;
+
     // Contains all memory a bus can have
     // Some of the memory locations will not be used due to mirroring
-    // The decision not to have several variables is to ease access
+    // The decision not to have several variables is to ease access.
+    // Pages are stored here until copied on write, so it may only be
+    // accessed directly on a bus that has never been forked or forked from
     public final int[] memory;
 
+    // Page table. Page p is stored in pageData[p] starting at pageBase[p]
+    private final int[][] pageData;
+    private final int[] pageBase;
+    // Flags of each page. Shared pages must be copied before writing
+    private final byte[] flags;
+
+    // Notified of accesses to watched pages
+    private Watcher watcher;
+    // Told of writes to memory, when logging them
+    private UndoLog undoLog;
+
+    // Hash of writable memory, updated on each write
+    private long hash;
+    private boolean verifyHash;
+
+    // Devices attached to registers. Null when register is backed by memory.
+    // Reads and writes are kept apart as some registers are shared, such
+    // as 0x4017 (controller 2 on read, APU frame counter on write)
+    private final IODevice[] readers;
+    private final IODevice[] writers;
+
     public Bus() {
         memory = new int[SIZE];
+        readers = new IODevice[REGISTERS];
+        writers = new IODevice[REGISTERS];
+
+        pageData = new int[PAGES][];
+        pageBase = new int[PAGES];
+        flags = new byte[PAGES];
+        for (int page = 0; page < PAGES; page++) {
+            pageData[page] = memory;
+            pageBase[page] = page << 8;
+        }
+    }
+
+    /**
+     * Create a fork sharing all pages with parent
+     */
+    private Bus(Bus parent) {
+        memory = parent.memory;
+        readers = new IODevice[REGISTERS];
+        writers = new IODevice[REGISTERS];
+
+        pageData = parent.pageData.clone();
+        pageBase = parent.pageBase.clone();
+        flags = new byte[PAGES];
+        hash = parent.hash;
+        verifyHash = parent.verifyHash;
+        for (int page = 0; page < PAGES; page++) {
+            flags[page] = SHARED;
+            parent.flags[page] |= SHARED;
+        }
+    }
+
+    /**
+     * Create a bus with the same memory content, sharing all pages until
+     * either bus writes to them. Devices, watches and undo logs are not
+     * carried over to the fork.
+     * Both buses must be used on the same thread, or the parent must no
+     * longer be written to
+     * @return forked bus
+     */
+    public Bus fork() {
+        return new Bus(this);
+    }
+
+    /**
+     * Attach a device to a range of registers. Reads and writes to these
+     * registers (and their mirrors) are handled by the device
+     * @param device device to attach
+     * @param from first register address
+     * @param to last register address (inclusive)
+     */
+    public void attach(IODevice device, int from, int to) {
+        attach(readers, device, from, to);
+        attach(writers, device, from, to);
+        flags[from >> 8] |= DEVICE;
+    }
+
+    /**
+     * Set who is notified of accesses to watched pages
+     * @param watcher watcher, or null for none
+     */
+    public void setWatcher(Watcher watcher) {
+        this.watcher = watcher;
+    }
+
+    /**
+     * @return who is notified of accesses to watched pages, or null
+     */
+    public Watcher getWatcher() {
+        return watcher;
+    }
+
+    /**
+     * Set who is told of writes to memory (0x0000 to 0x7FFF) before they
+     * happen. Writes then take the slower path of flagged pages. Writes to
+     * devices, and direct changes such as {@link #load(DataInput)} and
+     * {@link #poke(int, int)}, are not logged
+     * @param undoLog log, or null to stop logging
+     */
+    public void setUndoLog(UndoLog undoLog) {
+        this.undoLog = undoLog;
+        for (int page = 0; page < 0x80; page++) {
+            if (undoLog != null)
+                flags[page] |= LOGGED;
+            else
+                flags[page] &= ~LOGGED;
+        }
+    }
+
+    /**
+     * Choose whether accesses to a page are reported to the watcher. Only
+     * accesses of watched pages are slowed down
+     * @param page page number, after mirroring is applied
+     * @param read whether reads are reported
+     * @param write whether writes are reported
+     */
+    public void watch(int page, boolean read, boolean write) {
+        int value = flags[page] & ~(WATCH_READ | WATCH_WRITE);
+        if (read)
+            value |= WATCH_READ;
+        if (write)
+            value |= WATCH_WRITE;
+        flags[page] = (byte) value;
+    }
+
+    /**
+     * Attach a device to a range of registers for reading only
+     * @param device device to attach
+     * @param from first register address
+     * @param to last register address (inclusive)
+     */
+    public void attachRead(IODevice device, int from, int to) {
+        attach(readers, device, from, to);
+        flags[from >> 8] |= DEVICE;
+    }
+
+    /**
+     * Attach a device to a range of registers for writing only
+     * @param device device to attach
+     * @param from first register address
+     * @param to last register address (inclusive)
+     */
+    public void attachWrite(IODevice device, int from, int to) {
+        attach(writers, device, from, to);
+        flags[from >> 8] |= DEVICE;
+    }
+
+    private static void attach(IODevice[] devices, IODevice device, int from,
+                               int to) {
+        for (int index = from; index <= to; index++) {
+            if (index < 0x2000 || (index > 0x2007 && index < 0x4000)
+                    || index > 0x401F)
+                throw new IllegalArgumentException(String.format(
+                        "$%04X is not a register address", index));
+            devices[register(index)] = device;
+        }
+    }
+
+    /**
+     * Write all memory that is not ROM (0x0000 to 0x7FFF)
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    public void save(DataOutput out) throws IOException {
+        byte[] data = new byte[0x8000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) pageData[i >> 8][pageBase[i >> 8] + (i & 0xFF)];
+        out.write(data);
+    }
+
+    /**
+     * Restore all memory that is not ROM (0x0000 to 0x7FFF)
+     * @param in source
+     * @throws IOException if reading fails
+     */
+    public void load(DataInput in) throws IOException {
+        byte[] data = new byte[0x8000];
+        in.readFully(data);
+        for (int page = 0; page < 0x80; page++) {
+            if ((flags[page] & SHARED) != 0)
+                unshare(page);
+            int[] array = pageData[page];
+            int base = pageBase[page];
+            for (int i = 0; i < 0x100; i++)
+                array[base + i] = data[(page << 8) + i] & 0xFF;
+        }
+        rehash();
+    }
+
+    /**
+     * Hash of writable memory (0x0000 to 0x7FFF), available in constant
+     * time as it is updated by every write. Memory hashes to the sum
+     * modulo 2^64 of a random odd key per address times the value stored.
+     * Memories differing in a single byte never collide, as an odd key
+     * times a difference below 256 cannot be a multiple of 2^64. Memories
+     * differing in several bytes collide with a chance of about 2^-64,
+     * which is negligible for transposition tables but not a proof of
+     * equality, nor resistant to crafted input.
+     * <p>
+     * Writes to {@link #memory} bypass the hash; {@link #rehash()} must be
+     * called after them
+     * @return 64 bit hash
+     */
+    public long getHash() {
+        if (verifyHash && hash != computeHash())
+            throw new IllegalStateException("Memory hash is out of date");
+
+        return hash;
+    }
+
+    /**
+     * Recompute hash from all of writable memory. Needed after memory is
+     * written directly
+     */
+    public void rehash() {
+        hash = computeHash();
+    }
+
+    /**
+     * Recompute the hash on every {@link #getHash()} call and fail if it
+     * differs from the incremental one. Meant for tests
+     * @param verifyHash whether to verify
+     */
+    public void setVerifyHash(boolean verifyHash) {
+        this.verifyHash = verifyHash;
+    }
+
+    private long computeHash() {
+        long result = 0;
+        for (int i = 0; i < KEYS.length; i++)
+            result += KEYS[i] * pageData[i >> 8][pageBase[i >> 8] + (i & 0xFF)];
+        return result;
     }
 
     /**
@@ -35,7 +310,93 @@ public class Bus {
     public int read(int index) {
         index = mapIndex(index);
 
-        return memory[index];
+        int page = index >> 8;
+        if ((flags[page] & (DEVICE | WATCH_READ)) != 0)
+            return readFlagged(index);
+
+        return pageData[page][pageBase[page] + (index & 0xFF)];
+    }
+
+    /**
+     * Read from a page holding device registers or being watched
+     * @param index address, after mirroring is applied
+     * @return value read
+     */
+    private int readFlagged(int index) {
+        int page = index >> 8;
+        int value;
+
+        IODevice device = index < 0x4020 && index >= 0x2000
+                ? readers[register(index)] : null;
+        if (device != null)
+            value = device.read(index);
+        else
+            value = pageData[page][pageBase[page] + (index & 0xFF)];
+
+        if ((flags[page] & WATCH_READ) != 0 && watcher != null)
+            watcher.read(index, value);
+
+        return value;
+    }
+
+    /**
+     * Read without side effects: devices are peeked rather than read (see
+     * {@link IODevice#peek(int)}), and watchers are not told. Meant for
+     * debuggers, tracers and observers
+     * @param index address
+     * @return value a read would return
+     */
+    public int peek(int index) {
+        index = mirror(index & 0xFFFF);
+
+        if (index < 0x4020 && index >= 0x2000) {
+            IODevice device = readers[register(index)];
+            if (device != null)
+                return device.peek(index);
+        }
+
+        int page = index >> 8;
+        return pageData[page][pageBase[page] + (index & 0xFF)];
+    }
+
+    /**
+     * Read a range without side effects, see {@link #peek(int)}. Memory is
+     * copied a page at a time. Addresses wrap around at 0xFFFF
+     * @param index first address
+     * @param dst destination
+     * @param off first position in destination
+     * @param len number of values
+     */
+    public void peek(int index, int[] dst, int off, int len) {
+        while (len > 0) {
+            index &= 0xFFFF;
+            int mapped = mirror(index);
+            int count = Math.min(len, 0x100 - (index & 0xFF));
+
+            if (mapped < 0x4020 && mapped >= 0x2000) {
+                for (int i = 0; i < count; i++)
+                    dst[off + i] = peek(index + i);
+            } else {
+                // Mirrors of RAM keep the offset within the page
+                int page = mapped >> 8;
+                System.arraycopy(pageData[page],
+                        pageBase[page] + (mapped & 0xFF), dst, off, count);
+            }
+
+            index += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Read on behalf of DMA rather than the CPU. Same as {@link #read(int)},
+     * but lets Bus variants tell both apart
+     * @param index address to read
+     * @return value at address
+     */
+    public int dmaRead(int index) {
+        return read(index);
     }
 
     /**
@@ -49,7 +410,129 @@ public class Bus {
 
         index = mapIndex(index);
 
-        memory[index] = value & 0xFF;
+        int page = index >> 8;
+        if (flags[page] != 0) {
+            writeFlagged(value & 0xFF, index);
+            return;
+        }
+
+        store(value & 0xFF, index);
+    }
+
+    /**
+     * Write to a page that is shared, holds device registers or is watched
+     * @param value 8 bit value
+     * @param index address, after mirroring is applied
+     */
+    private void writeFlagged(int value, int index) {
+        int page = index >> 8;
+
+        IODevice device = index < 0x4020 && index >= 0x2000
+                ? writers[register(index)] : null;
+        if (device != null) {
+            device.write(value, index);
+        } else {
+            if ((flags[page] & SHARED) != 0)
+                unshare(page);
+            if ((flags[page] & LOGGED) != 0 && undoLog != null)
+                undoLog.write(index, pageData[page][pageBase[page]
+                        + (index & 0xFF)]);
+            store(value, index);
+        }
+
+        if ((flags[page] & WATCH_WRITE) != 0 && watcher != null)
+            watcher.write(index, value);
+    }
+
+    /**
+     * Change memory directly, bypassing devices, watches and undo logs.
+     * The hash is kept up to date. Meant for debuggers
+     * @param value 8 bit value
+     * @param index address below 0x8000, after mirroring is applied
+     */
+    public void poke(int value, int index) {
+        if (index < 0 || index >= 0x8000)
+            throw new IllegalArgumentException(String.format(
+                    "Cannot poke $%04X", index));
+
+        int page = index >> 8;
+        if ((flags[page] & SHARED) != 0)
+            unshare(page);
+        store(value & 0xFF, index);
+    }
+
+    /**
+     * Copy cartridge data to memory, ROM included, bypassing devices,
+     * watches and undo logs. Shared pages are copied first, so forks keep
+     * their content, and the hash is kept up to date
+     * @param index first address, from 0x4020
+     * @param data bytes, read as unsigned
+     */
+    public void loadCartridge(int index, byte[] data) {
+        if (index < 0x4020 || index + data.length > SIZE)
+            throw new IllegalArgumentException(String.format(
+                    "Cannot load %d bytes at $%04X", data.length, index));
+
+        for (int i = 0; i < data.length; i++) {
+            int address = index + i;
+            int page = address >> 8;
+            if ((flags[page] & SHARED) != 0)
+                unshare(page);
+
+            // ROM is not hashed
+            int value = data[i] & 0xFF;
+            if (address < 0x8000)
+                store(value, address);
+            else
+                pageData[page][pageBase[page] + (address & 0xFF)] = value;
+        }
+    }
+
+    /**
+     * Store a value in memory, keeping the hash up to date
+     * @param value 8 bit value
+     * @param index address, after mirroring is applied
+     */
+    private void store(int value, int index) {
+        int page = index >> 8;
+        int[] data = pageData[page];
+        int offset = pageBase[page] + (index & 0xFF);
+        hash += KEYS[index] * (value - data[offset]);
+        data[offset] = value;
+    }
+
+    /**
+     * Give a shared page a private copy. The other bus keeps the original
+     * @param page page number
+     */
+    private void unshare(int page) {
+        int[] copy = new int[0x100];
+        System.arraycopy(pageData[page], pageBase[page], copy, 0, 0x100);
+        pageData[page] = copy;
+        pageBase[page] = 0;
+        flags[page] &= ~SHARED;
+    }
+
+    /**
+     * Retrieve the device slot of a register address
+     * @param index register address, after mirroring is applied
+     * @return slot index
+     */
+    private static int register(int index) {
+        return index < 0x4000 ? index - 0x2000 : index - 0x4000 + 8;
+    }
+
+    /**
+     * Apply mirroring to an address known to be within bounds
+     * @param index address
+     * @return mirrored address
+     */
+    private static int mirror(int index) {
+        if (index < 0x2000)
+            return index & 0x7FF;
+        if (index < 0x4000)
+            return 0x2000 | (index & 0x7);
+        return index;
     }
 
     /**
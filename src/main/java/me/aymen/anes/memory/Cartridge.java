@@ -38,6 +38,24 @@ public class Cartridge {
         header = new byte[HEADER_SIZE];
     }
 
+    /**
+     * Describe the same cartridge as another, attached to a forked bus.
+     * ROM content is shared, as it is never modified
+     * @param bus forked bus, already holding the ROM
+     * @param other cartridge of the bus forked from
+     */
+    public Cartridge(Bus bus, Cartridge other) {
+        this.bus = bus;
+        header = other.header;
+        hasTrainer = other.hasTrainer;
+        trainer = other.trainer;
+        prg = other.prg;
+        prgBank = other.prgBank;
+        chr = other.chr;
+        chrBank = other.chrBank;
+        mapperType = other.mapperType;
+    }
+
     /**
      * Read iNES and NES 2.0 ROM files
      * @param file path to file
@@ -112,21 +130,16 @@ public class Cartridge {
      */
     public void loadToBus() {
 
-        if(hasTrainer) {
-            for(int i =0 ; i < trainer.length; i++)
-                bus.memory[0x7000 + i] = (int) trainer[i];
-        }
+        if(hasTrainer)
+            bus.loadCartridge(0x7000, trainer);
 
         // Load ROM Data
-        for(int i = 0; i < prg.length; i++)
-            // Read it as unsigned byte
-            bus.memory[0x8000 + i] = prg[i] & 0xFF;
+        bus.loadCartridge(0x8000, prg);
 
         // If prg blocks are only 1, copy memory as well to 0xC000
         // This will cover all memory space from (0x8000 to 0xFFFF)
         if(prgBank == 1)
-            for(int i = 0; i < prg.length; i++)
-                bus.memory[0xC000 + i] = prg[i] & 0xFF;
+            bus.loadCartridge(0xC000, prg);
 
         // TODO a better implementation would be to mirror values instead
     }
@@ -0,0 +1,109 @@
+package me.aymen.anes.memory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Bus counting reads and writes per 256 byte page, keeping CPU and DMA
+ * accesses apart. Shows which regions dominate traffic. Counting is done
+ * by overriding the Bus, so machines built on a plain Bus are unaffected.
+ * Use with {@link me.aymen.anes.NES#NES(Bus)}.
+ * <p>
+ * Pages are those of the address as accessed, before mirroring, so that
+ * use of mirrors shows up. Forks of this bus are plain buses and do not
+ * count. Not thread safe, as a Bus is only used by its machine's thread.
+ */
+public class CountingBus extends Bus {
+
+    private static final int PAGES = 0x100;
+
+    private final long[] cpuReads;
+    private final long[] cpuWrites;
+    private final long[] dmaReads;
+
+    public CountingBus() {
+        cpuReads = new long[PAGES];
+        cpuWrites = new long[PAGES];
+        dmaReads = new long[PAGES];
+    }
+
+    @Override
+    public int read(int index) {
+        cpuReads[(index >> 8) & 0xFF]++;
+        return super.read(index);
+    }
+
+    @Override
+    public int dmaRead(int index) {
+        dmaReads[(index >> 8) & 0xFF]++;
+        return super.read(index);
+    }
+
+    @Override
+    public void write(int value, int index) {
+        cpuWrites[(index >> 8) & 0xFF]++;
+        super.write(value, index);
+    }
+
+    /**
+     * Clear all counts
+     */
+    public void resetCounts() {
+        Arrays.fill(cpuReads, 0);
+        Arrays.fill(cpuWrites, 0);
+        Arrays.fill(dmaReads, 0);
+    }
+
+    public long getCPUReads(int page) {
+        return cpuReads[page];
+    }
+
+    public long getCPUWrites(int page) {
+        return cpuWrites[page];
+    }
+
+    public long getDMAReads(int page) {
+        return dmaReads[page];
+    }
+
+    /**
+     * Write counts as CSV, one row per page with its region. Lines end
+     * with \n on every platform
+     * @param out destination. Not closed
+     * @throws IOException if writing fails
+     */
+    public void writeCSV(Writer out) throws IOException {
+        out.write("page,address,region,cpu_reads,cpu_writes,dma_reads\n");
+        for (int page = 0; page < PAGES; page++)
+            out.write(String.format("%d,$%04X,%s,%d,%d,%d\n", page, page << 8,
+                    region(page), cpuReads[page], cpuWrites[page],
+                    dmaReads[page]));
+        out.flush();
+    }
+
+    /**
+     * Name of the memory region a page belongs to
+     * @param page page number
+     * @return region name
+     */
+    public static String region(int page) {
+        if (page == 0x00)
+            return "zero page";
+        if (page == 0x01)
+            return "stack";
+        if (page < 0x08)
+            return "RAM";
+        if (page < 0x20)
+            return "RAM mirror";
+        if (page < 0x40)
+            return "PPU registers";
+        if (page == 0x40)
+            return "APU and IO registers";
+        if (page < 0x60)
+            return "expansion";
+        if (page < 0x80)
+            return "SRAM";
+        return "PRG ROM";
+    }
+}
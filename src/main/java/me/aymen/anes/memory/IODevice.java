@@ -0,0 +1,31 @@
+package me.aymen.anes.memory;
+
+/**
+ * A device whose registers are mapped into the Bus register space
+ * (0x2000 to 0x2007 and 0x4000 to 0x401F). Reads and writes to a mapped
+ * register are handed to the device instead of memory
+ */
+public interface IODevice {
+
+    /**
+     * Read a register
+     * @param index register address, after mirroring is applied
+     * @return register value
+     */
+    int read(int index);
+
+    /**
+     * Read a register without side effects, such as clearing flags or
+     * shifting out bits. Meant for debuggers and tracers
+     * @param index register address, after mirroring is applied
+     * @return value a read would return
+     */
+    int peek(int index);
+
+    /**
+     * Write a register
+     * @param value 8 bit value
+     * @param index register address, after mirroring is applied
+     */
+    void write(int value, int index);
+}
@@ -0,0 +1,15 @@
+package me.aymen.anes.memory;
+
+/**
+ * Told of every write to memory before it happens, so that it can be
+ * undone. See {@link Bus#setUndoLog(UndoLog)}
+ */
+public interface UndoLog {
+
+    /**
+     * Memory is about to be written
+     * @param index address, after mirroring is applied
+     * @param old value before the write
+     */
+    void write(int index, int old);
+}
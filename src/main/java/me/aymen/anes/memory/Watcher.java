@@ -0,0 +1,22 @@
+package me.aymen.anes.memory;
+
+/**
+ * Notified of accesses to watched pages of a Bus, see
+ * {@link Bus#watch(int, boolean, boolean)}
+ */
+public interface Watcher {
+
+    /**
+     * A watched page was read
+     * @param index address read, after mirroring is applied
+     * @param value value read
+     */
+    void read(int index, int value);
+
+    /**
+     * A watched page was written
+     * @param index address written, after mirroring is applied
+     * @param value value written
+     */
+    void write(int index, int value);
+}
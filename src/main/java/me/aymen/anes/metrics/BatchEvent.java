@@ -0,0 +1,26 @@
+package me.aymen.anes.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event for a batch of frames run without interruption, such as a
+ * step of a vectorised environment. Only batches running longer than the
+ * threshold are recorded, 10 ms unless configured otherwise
+ */
+@Name("me.aymen.anes.Batch")
+@Label("Batch")
+@Category("Emulator")
+@Description("Frames run in one batch")
+@Threshold("10 ms")
+public class BatchEvent extends jdk.jfr.Event {
+
+    @Label("Instance")
+    public int instance;
+
+    @Label("Frames")
+    public int frames;
+}
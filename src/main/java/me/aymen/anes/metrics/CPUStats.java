@@ -0,0 +1,251 @@
+package me.aymen.anes.metrics;
+
+import me.aymen.anes.AddressMode;
+import me.aymen.anes.FrameListener;
+import me.aymen.anes.PPU;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Execution counters of a CPU: executions and cycles per opcode,
+ * executions per addressing mode, page crossing penalties of indexed
+ * modes, and branches taken or not.
+ * <p>
+ * Counting is only compiled in when the <code>anes.cpu.stats</code>
+ * system property is true (see {@link me.aymen.anes.CPU#STATS}), and only
+ * happens once attached with {@link me.aymen.anes.CPU#setStats(CPUStats)}.
+ * Counters are plain arrays confined to the emulation thread. Other
+ * threads, including JMX, see the snapshot last published by
+ * {@link #publish()}, which can be done every few frames by adding this as
+ * a frame listener.
+ */
+public class CPUStats implements CPUStatsMXBean, FrameListener {
+
+    // Written by emulation thread only
+    private final long[] executions;
+    private final long[] cycles;
+    private final long[] modes;
+    private long pageCrosses;
+    private long branchesTaken;
+    private long branchesNotTaken;
+
+    private final int interval;
+    private int frames;
+    private volatile Snapshot published;
+    private ObjectName name;
+
+    /**
+     * Publish every second of emulated time when used as frame listener
+     */
+    public CPUStats() {
+        this(60);
+    }
+
+    /**
+     * @param interval frames between publications when used as frame
+     *                 listener
+     */
+    public CPUStats(int interval) {
+        this.interval = interval;
+        executions = new long[256];
+        cycles = new long[256];
+        modes = new long[AddressMode.SIZE];
+        published = new Snapshot(this);
+    }
+
+    /**
+     * Count an executed instruction
+     * @param opcode opcode executed
+     * @param mode addressing mode of the opcode
+     * @param consumed cycles consumed, including penalties
+     */
+    public void instruction(int opcode, int mode, int consumed) {
+        executions[opcode]++;
+        cycles[opcode] += consumed;
+        modes[mode]++;
+    }
+
+    /**
+     * Count an extra cycle taken by an indexed access crossing a page
+     */
+    public void pageCross() {
+        pageCrosses++;
+    }
+
+    /**
+     * Count a conditional branch
+     * @param taken whether the branch was taken
+     */
+    public void branch(boolean taken) {
+        if (taken)
+            branchesTaken++;
+        else
+            branchesNotTaken++;
+    }
+
+    /**
+     * Make current counts visible to other threads. Must be called on the
+     * emulation thread
+     */
+    public void publish() {
+        published = new Snapshot(this);
+    }
+
+    /**
+     * Clear all counts. Must be called on the emulation thread
+     */
+    public void reset() {
+        Arrays.fill(executions, 0);
+        Arrays.fill(cycles, 0);
+        Arrays.fill(modes, 0);
+        pageCrosses = 0;
+        branchesTaken = 0;
+        branchesNotTaken = 0;
+        publish();
+    }
+
+    /**
+     * Last published counts. Safe to call from any thread
+     * @return snapshot
+     */
+    public Snapshot getSnapshot() {
+        return published;
+    }
+
+    @Override
+    public void frameCompleted(PPU ppu) {
+        if (++frames >= interval) {
+            frames = 0;
+            publish();
+        }
+    }
+
+    /**
+     * Register with the platform MBean server
+     * @param id distinguishes CPUs of different sessions
+     * @throws JMException if registration fails
+     */
+    public void register(String id) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        name = new ObjectName("me.aymen.anes:type=CPUStats,name="
+                + ObjectName.quote(id));
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * Remove from the platform MBean server, if registered
+     * @throws JMException if removal fails
+     */
+    public void unregister() throws JMException {
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    @Override
+    public long getInstructions() {
+        return published.getInstructions();
+    }
+
+    @Override
+    public long[] getExecutions() {
+        return published.getExecutions();
+    }
+
+    @Override
+    public long[] getCycles() {
+        return published.getCycles();
+    }
+
+    @Override
+    public long[] getAddressModes() {
+        return published.getAddressModes();
+    }
+
+    @Override
+    public long getPageCrosses() {
+        return published.getPageCrosses();
+    }
+
+    @Override
+    public long getBranchesTaken() {
+        return published.getBranchesTaken();
+    }
+
+    @Override
+    public long getBranchesNotTaken() {
+        return published.getBranchesNotTaken();
+    }
+
+    /**
+     * Immutable copy of the counters at a point in time
+     */
+    public static class Snapshot {
+        private final long[] executions;
+        private final long[] cycles;
+        private final long[] modes;
+        private final long pageCrosses;
+        private final long branchesTaken;
+        private final long branchesNotTaken;
+        private final long instructions;
+
+        Snapshot(CPUStats stats) {
+            executions = stats.executions.clone();
+            cycles = stats.cycles.clone();
+            modes = stats.modes.clone();
+            pageCrosses = stats.pageCrosses;
+            branchesTaken = stats.branchesTaken;
+            branchesNotTaken = stats.branchesNotTaken;
+
+            long total = 0;
+            for (long count : executions)
+                total += count;
+            instructions = total;
+        }
+
+        public long getInstructions() {
+            return instructions;
+        }
+
+        public long getExecutions(int opcode) {
+            return executions[opcode];
+        }
+
+        public long[] getExecutions() {
+            return executions.clone();
+        }
+
+        public long getCycles(int opcode) {
+            return cycles[opcode];
+        }
+
+        public long[] getCycles() {
+            return cycles.clone();
+        }
+
+        public long getAddressMode(int mode) {
+            return modes[mode];
+        }
+
+        public long[] getAddressModes() {
+            return modes.clone();
+        }
+
+        public long getPageCrosses() {
+            return pageCrosses;
+        }
+
+        public long getBranchesTaken() {
+            return branchesTaken;
+        }
+
+        public long getBranchesNotTaken() {
+            return branchesNotTaken;
+        }
+    }
+}
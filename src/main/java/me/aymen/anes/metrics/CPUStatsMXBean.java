@@ -0,0 +1,32 @@
+package me.aymen.anes.metrics;
+
+/**
+ * JMX view of {@link CPUStats}. Values are those of the last published
+ * snapshot
+ */
+public interface CPUStatsMXBean {
+
+    long getInstructions();
+
+    /**
+     * @return executions of each opcode, indexed by opcode
+     */
+    long[] getExecutions();
+
+    /**
+     * @return cycles spent in each opcode, indexed by opcode
+     */
+    long[] getCycles();
+
+    /**
+     * @return executions per addressing mode, indexed by
+     * {@link me.aymen.anes.AddressMode}
+     */
+    long[] getAddressModes();
+
+    long getPageCrosses();
+
+    long getBranchesTaken();
+
+    long getBranchesNotTaken();
+}
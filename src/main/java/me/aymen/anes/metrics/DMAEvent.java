@@ -0,0 +1,23 @@
+package me.aymen.anes.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for an OAM DMA transfer
+ */
+@Name("me.aymen.anes.DMA")
+@Label("OAM DMA")
+@Category("Emulator")
+@Description("Copy of a page of CPU memory to sprite memory")
+public class DMAEvent extends jdk.jfr.Event {
+
+    @Label("Page")
+    public int page;
+
+    @Label("CPU Cycles")
+    @Description("Cycles the CPU is stalled for")
+    public int cycles;
+}
@@ -0,0 +1,28 @@
+package me.aymen.anes.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for an emulated frame. The event duration is the wall time
+ * taken to emulate it, to compare against emulated time
+ */
+@Name("me.aymen.anes.Frame")
+@Label("Frame")
+@Category("Emulator")
+@Description("Emulation of a frame")
+public class FrameEvent extends jdk.jfr.Event {
+
+    @Label("Frame")
+    public int frame;
+
+    @Label("CPU Cycles")
+    public int cycles;
+
+    @Label("Emulated Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long emulatedTime;
+}
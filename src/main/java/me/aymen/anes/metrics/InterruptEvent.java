@@ -0,0 +1,42 @@
+package me.aymen.anes.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for an interrupt serviced by the CPU
+ */
+@Name("me.aymen.anes.Interrupt")
+@Label("Interrupt")
+@Category("Emulator")
+@Description("NMI or IRQ serviced by the CPU")
+public class InterruptEvent extends jdk.jfr.Event {
+
+    @Label("NMI")
+    @Description("True for NMI, false for IRQ")
+    public boolean nmi;
+
+    @Label("Handler")
+    public int handler;
+
+    @Label("CPU Cycle")
+    public int cycle;
+
+    /**
+     * Commit an event if recording is enabled
+     * @param nmi true for NMI, false for IRQ
+     * @param handler address of the handler
+     * @param cycle CPU cycle count once serviced
+     */
+    public static void commit(boolean nmi, int handler, int cycle) {
+        InterruptEvent event = new InterruptEvent();
+        if (event.isEnabled()) {
+            event.nmi = nmi;
+            event.handler = handler;
+            event.cycle = cycle;
+            event.commit();
+        }
+    }
+}
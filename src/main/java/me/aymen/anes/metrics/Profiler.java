@@ -0,0 +1,277 @@
+package me.aymen.anes.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hot-spot profiler of guest code. Keeps the cycles spent at each PC, and
+ * a call tree following JSR, BRK and interrupts in and RTS and RTI out.
+ * Cycles of each instruction are added to the routine on top of the call
+ * stack, giving both a caller/callee graph and folded stacks that flame
+ * graph tools read directly.
+ * <p>
+ * Every instruction is accounted for rather than sampled, as adding to two
+ * arrays costs less than interrupting the emulation thread. Profiling is
+ * only compiled in when the <code>anes.cpu.profile</code> system property
+ * is true (see {@link me.aymen.anes.CPU#PROFILE}), and only happens once
+ * attached with {@link me.aymen.anes.CPU#setProfiler(Profiler)}. Not
+ * thread safe: results must be read on the emulation thread or once it has
+ * stopped.
+ * <p>
+ * Code that returns without a matching call, such as jump tables using RTS,
+ * is attributed to the caller once its return is seen. Routines entered
+ * once the tree is full are attributed to their caller.
+ */
+public class Profiler {
+
+    public static final int DEFAULT_NODES = 0x10000;
+
+    // Root node, holding code run outside of any routine seen called
+    private static final int ROOT = 0;
+
+    private static final int JSR = 0x20;
+    private static final int RTS = 0x60;
+    private static final int RTI = 0x40;
+    private static final int BRK = 0x00;
+
+    // Cycles spent at each PC
+    private final long[] histogram;
+
+    // Call tree. Children of a node are a linked list through sibling
+    private final int[] parent;
+    private final int[] address;
+    private final int[] child;
+    private final int[] sibling;
+    private final long[] self;
+    private final long[] calls;
+    private int nodes;
+    private int current;
+    // Calls not entered in the tree as it was full, still to return from
+    private int untracked;
+
+    public Profiler() {
+        this(DEFAULT_NODES);
+    }
+
+    /**
+     * @param capacity maximum call tree nodes, one per distinct call path
+     */
+    public Profiler(int capacity) {
+        histogram = new long[0x10000];
+        parent = new int[capacity];
+        address = new int[capacity];
+        child = new int[capacity];
+        sibling = new int[capacity];
+        self = new long[capacity];
+        calls = new long[capacity];
+        reset();
+    }
+
+    /**
+     * Account for an executed instruction
+     * @param pc address of the instruction
+     * @param opcode opcode executed
+     * @param cycles cycles consumed, including penalties
+     * @param next PC after execution
+     */
+    public void instruction(int pc, int opcode, int cycles, int next) {
+        histogram[pc] += cycles;
+        self[current] += cycles;
+
+        switch (opcode) {
+            case JSR:
+            case BRK:
+                enter(next);
+                break;
+            case RTS:
+            case RTI:
+                if (untracked > 0)
+                    untracked--;
+                else if (current != ROOT)
+                    current = parent[current];
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Account for a serviced interrupt
+     * @param handler address of the interrupt handler
+     * @param cycles cycles consumed
+     */
+    public void interrupt(int handler, int cycles) {
+        enter(handler);
+        self[current] += cycles;
+    }
+
+    /**
+     * Clear all results
+     */
+    public void reset() {
+        Arrays.fill(histogram, 0);
+        Arrays.fill(self, 0, Math.max(nodes, 1), 0);
+        Arrays.fill(calls, 0, Math.max(nodes, 1), 0);
+        parent[ROOT] = ROOT;
+        address[ROOT] = -1;
+        child[ROOT] = -1;
+        sibling[ROOT] = -1;
+        nodes = 1;
+        current = ROOT;
+        untracked = 0;
+    }
+
+    /**
+     * Cycles spent at each address. The array is live, not a copy
+     * @return cycles indexed by PC
+     */
+    public long[] getHistogram() {
+        return histogram;
+    }
+
+    public long getCycles(int pc) {
+        return histogram[pc];
+    }
+
+    /**
+     * Addresses where most cycles were spent
+     * @param count maximum number of addresses
+     * @return addresses, from most cycles to least
+     */
+    public int[] getHotSpots(int count) {
+        List<Integer> spots = new ArrayList<>();
+        for (int pc = 0; pc < histogram.length; pc++)
+            if (histogram[pc] > 0)
+                spots.add(pc);
+        spots.sort((a, b) -> Long.compare(histogram[b], histogram[a]));
+
+        int[] result = new int[Math.min(count, spots.size())];
+        for (int i = 0; i < result.length; i++)
+            result[i] = spots.get(i);
+        return result;
+    }
+
+    /**
+     * Calls between routines, merged over all call paths. Code outside of
+     * any routine has caller -1
+     * @return edges in no particular order
+     */
+    public List<Edge> getCallGraph() {
+        // Children are always created after their parent, so totals can be
+        // summed up in reverse order
+        long[] total = Arrays.copyOf(self, nodes);
+        for (int node = nodes - 1; node > ROOT; node--)
+            total[parent[node]] += total[node];
+
+        Map<Long, Edge> edges = new HashMap<>();
+        for (int node = 1; node < nodes; node++) {
+            int caller = address[parent[node]];
+            long key = (long) caller << 32 | address[node];
+            Edge edge = edges.get(key);
+            if (edge == null) {
+                edge = new Edge(caller, address[node]);
+                edges.put(key, edge);
+            }
+            edge.calls += calls[node];
+            edge.cycles += total[node];
+        }
+
+        return new ArrayList<>(edges.values());
+    }
+
+    /**
+     * Write the call tree in folded stack format, one line per call path
+     * with the cycles spent in its last routine, as read by flamegraph.pl
+     * and compatible tools
+     * @param out destination. Not closed
+     * @throws IOException if writing fails
+     */
+    public void writeFolded(Writer out) throws IOException {
+        int[] path = new int[nodes];
+        StringBuilder line = new StringBuilder();
+
+        for (int node = 0; node < nodes; node++) {
+            if (self[node] == 0)
+                continue;
+
+            int depth = 0;
+            for (int n = node; n != ROOT; n = parent[n])
+                path[depth++] = n;
+
+            line.setLength(0);
+            line.append("root");
+            for (int i = depth - 1; i >= 0; i--)
+                line.append(String.format(";$%04X", address[path[i]]));
+            line.append(' ').append(self[node]).append('\n');
+            out.write(line.toString());
+        }
+        out.flush();
+    }
+
+    /**
+     * Move to the node of a routine called from the current one
+     * @param routine address of the routine
+     */
+    private void enter(int routine) {
+        int node = child[current];
+        while (node != -1 && address[node] != routine)
+            node = sibling[node];
+
+        if (node == -1) {
+            // Tree full. Keep attributing to caller
+            if (nodes == parent.length) {
+                untracked++;
+                return;
+            }
+
+            node = nodes++;
+            parent[node] = current;
+            address[node] = routine;
+            child[node] = -1;
+            sibling[node] = child[current];
+            child[current] = node;
+        }
+
+        calls[node]++;
+        current = node;
+    }
+
+    /**
+     * Calls from one routine to another
+     */
+    public static class Edge {
+        private final int caller;
+        private final int callee;
+        private long calls;
+        private long cycles;
+
+        Edge(int caller, int callee) {
+            this.caller = caller;
+            this.callee = callee;
+        }
+
+        public int getCaller() {
+            return caller;
+        }
+
+        public int getCallee() {
+            return callee;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * @return cycles spent in the callee and routines it called
+         */
+        public long getCycles() {
+            return cycles;
+        }
+    }
+}
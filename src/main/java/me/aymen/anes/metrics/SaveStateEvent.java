@@ -0,0 +1,21 @@
+package me.aymen.anes.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the creation of a save state
+ */
+@Name("me.aymen.anes.SaveState")
+@Label("Save State")
+@Category("Emulator")
+@Description("Creation of a save state")
+public class SaveStateEvent extends jdk.jfr.Event {
+
+    @Label("Size")
+    @DataAmount
+    public int size;
+}
@@ -0,0 +1,99 @@
+package me.aymen.anes.movie;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Imports FCEUX text movies (.fm2).
+ * Each input line is <code>|commands|port0|port1|port2|</code>, where a
+ * gamepad is eight characters in the order RLDUTSBA, and a button is
+ * pressed unless its character is '.' or a space. Only movies starting from
+ * power on are supported, and reset commands are ignored.
+ * See: http://fceux.com/web/help/fceux.html?fm2.html
+ */
+public class FM2 {
+
+    private static final Logger logger = LoggerFactory.getLogger(FM2.class);
+
+    private FM2() {
+    }
+
+    /**
+     * Read a movie from a file
+     * @param path source
+     * @return movie without keyframes
+     * @throws IOException if reading fails
+     */
+    public static Movie read(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path,
+                StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Read a movie
+     * @param source text to parse. Not closed
+     * @return movie without keyframes
+     * @throws IOException if reading fails
+     */
+    public static Movie read(Reader source) throws IOException {
+        BufferedReader reader = new BufferedReader(source);
+        Movie movie = new Movie(0);
+        boolean warned = false;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("|")) {
+                String[] fields = line.split("\\|", -1);
+                int commands = fields.length > 1 ? parseInt(fields[1]) : 0;
+                if (commands != 0 && !warned) {
+                    logger.warn("FM2 reset commands are not supported");
+                    warned = true;
+                }
+
+                movie.addFrame(gamepad(fields, 2), gamepad(fields, 3));
+            } else if (line.startsWith("savestate ")) {
+                throw new IllegalArgumentException("FM2 movies starting " +
+                        "from a save state are not supported");
+            } else if (line.startsWith("binary ")
+                    && !line.trim().equals("binary 0")) {
+                throw new IllegalArgumentException("Binary FM2 movies are " +
+                        "not supported");
+            }
+        }
+
+        return movie;
+    }
+
+    /**
+     * Convert gamepad field to buttons. RLDUTSBA maps to bits 7 down to 0,
+     * matching {@link me.aymen.anes.input.Controller}
+     */
+    private static int gamepad(String[] fields, int index) {
+        if (index >= fields.length)
+            return 0;
+
+        String field = fields[index];
+        int buttons = 0;
+        for (int i = 0; i < 8 && i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '.' && c != ' ')
+                buttons |= 0x80 >> i;
+        }
+
+        return buttons;
+    }
+
+    private static int parseInt(String value) {
+        value = value.trim();
+        return value.isEmpty() ? 0 : Integer.parseInt(value);
+    }
+}
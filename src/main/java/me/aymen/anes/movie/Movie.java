@@ -0,0 +1,300 @@
+package me.aymen.anes.movie;
+
+import me.aymen.anes.exception.InvalidStateException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Buttons of both controllers for every frame, along with keyframes: save
+ * states taken every few frames so that playback can start anywhere
+ * without running from the beginning.
+ * <p>
+ * Buttons take one byte per port per frame. On disk, buttons and each
+ * keyframe are deflated separately, so a keyframe can be restored without
+ * inflating the others. Layout, big endian:
+ * <pre>
+ * magic "ANESMOVI", version, ROM hash (long), frames, keyframe count,
+ * deflated length, deflated buttons,
+ * for each keyframe: frame, deflated length, deflated state
+ * </pre>
+ */
+public class Movie {
+
+    public static final int PORTS = 2;
+
+    private static final byte[] MAGIC = {'A', 'N', 'E', 'S', 'M', 'O', 'V',
+            'I'};
+    private static final int VERSION = 1;
+
+    // Hash of the ROM recorded with, or 0 if unknown
+    private final long romHash;
+
+    // Buttons of each frame, one byte per port
+    private byte[] buttons;
+    private int frames;
+
+    private final List<Keyframe> keyframes;
+
+    /**
+     * @param romHash hash of the ROM the movie belongs to, or 0 if unknown
+     */
+    public Movie(long romHash) {
+        this.romHash = romHash;
+        buttons = new byte[PORTS * 1024];
+        keyframes = new ArrayList<>();
+    }
+
+    /**
+     * Append a frame
+     * @param port1 buttons of first controller
+     * @param port2 buttons of second controller
+     */
+    public void addFrame(int port1, int port2) {
+        if (frames * PORTS == buttons.length)
+            buttons = Arrays.copyOf(buttons, buttons.length * 2);
+
+        buttons[frames * PORTS] = (byte) port1;
+        buttons[frames * PORTS + 1] = (byte) port2;
+        frames++;
+    }
+
+    /**
+     * Buttons pressed in a frame
+     * @param frame frame number
+     * @param port 0 for first port, 1 for second
+     * @return buttons, see {@link me.aymen.anes.input.Controller}
+     */
+    public int getButtons(int frame, int port) {
+        return buttons[frame * PORTS + port] & 0xFF;
+    }
+
+    /**
+     * Buttons of a port for all frames, suitable for
+     * {@link me.aymen.anes.input.Controller#setScript(int[], int)}
+     * @param port 0 for first port, 1 for second
+     * @return buttons per frame
+     */
+    public int[] getScript(int port) {
+        int[] script = new int[frames];
+        for (int i = 0; i < frames; i++)
+            script[i] = buttons[i * PORTS + port] & 0xFF;
+        return script;
+    }
+
+    /**
+     * Add a state at a frame boundary. Keyframes must be added in frame
+     * order
+     * @param frame number of frames played before the state was saved
+     * @param state state returned by {@link me.aymen.anes.NES#saveState()}
+     */
+    public void addKeyframe(int frame, byte[] state) {
+        if (!keyframes.isEmpty()
+                && keyframes.get(keyframes.size() - 1).frame >= frame)
+            throw new IllegalArgumentException("Keyframes must be added in " +
+                    "order");
+        keyframes.add(new Keyframe(frame, deflate(state, 0, state.length)));
+    }
+
+    /**
+     * Find the last keyframe at or before a frame
+     * @param frame frame number
+     * @return keyframe index, or -1 if there is none
+     */
+    public int findKeyframe(int frame) {
+        int low = 0;
+        int high = keyframes.size() - 1;
+        int found = -1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keyframes.get(mid).frame <= frame) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return found;
+    }
+
+    public int getKeyframes() {
+        return keyframes.size();
+    }
+
+    public int getKeyframeFrame(int index) {
+        return keyframes.get(index).frame;
+    }
+
+    /**
+     * Inflate a keyframe's state
+     * @param index keyframe index
+     * @return state for {@link me.aymen.anes.NES#loadState(byte[])}
+     */
+    public byte[] getKeyframeState(int index) {
+        return inflate(keyframes.get(index).state);
+    }
+
+    public long getROMHash() {
+        return romHash;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Write movie to a file
+     * @param path destination
+     * @throws IOException if writing fails
+     */
+    public void write(Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(path))) {
+            write(out);
+        }
+    }
+
+    /**
+     * Write movie to a stream
+     * @param stream destination. Not closed
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(romHash);
+        out.writeInt(frames);
+        out.writeInt(keyframes.size());
+
+        byte[] deflated = deflate(buttons, 0, frames * PORTS);
+        out.writeInt(deflated.length);
+        out.write(deflated);
+
+        for (Keyframe keyframe : keyframes) {
+            out.writeInt(keyframe.frame);
+            out.writeInt(keyframe.state.length);
+            out.write(keyframe.state);
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a movie from a file
+     * @param path source
+     * @return movie
+     * @throws IOException if reading fails
+     */
+    public static Movie read(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(
+                Files.newInputStream(path))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Read a movie from a stream
+     * @param stream source. Not closed
+     * @return movie
+     * @throws IOException if reading fails
+     */
+    public static Movie read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new InvalidStateException("Not a movie file");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new InvalidStateException("Unsupported movie version "
+                        + version);
+
+            Movie movie = new Movie(in.readLong());
+            int frames = in.readInt();
+            int count = in.readInt();
+
+            byte[] deflated = new byte[in.readInt()];
+            in.readFully(deflated);
+            movie.buttons = inflate(deflated);
+            if (movie.buttons.length != frames * PORTS)
+                throw new InvalidStateException("Corrupted movie buttons");
+            movie.frames = frames;
+
+            for (int i = 0; i < count; i++) {
+                int frame = in.readInt();
+                byte[] state = new byte[in.readInt()];
+                in.readFully(state);
+                movie.keyframes.add(new Keyframe(frame, state));
+            }
+
+            return movie;
+        } catch (EOFException e) {
+            throw new InvalidStateException("Truncated movie");
+        }
+    }
+
+    private static byte[] deflate(byte[] data, int offset, int length) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + 64);
+        byte[] chunk = new byte[4096];
+        while (!deflater.finished())
+            out.write(chunk, 0, deflater.deflate(chunk));
+        deflater.end();
+
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+        byte[] chunk = new byte[4096];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && inflater.needsInput())
+                    throw new InvalidStateException("Truncated movie data");
+                out.write(chunk, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new InvalidStateException("Corrupted movie data");
+        } finally {
+            inflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    private static class Keyframe {
+        final int frame;
+        // Deflated state
+        final byte[] state;
+
+        Keyframe(int frame, byte[] state) {
+            this.frame = frame;
+            this.state = state;
+        }
+    }
+}
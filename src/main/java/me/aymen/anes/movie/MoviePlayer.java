@@ -0,0 +1,102 @@
+package me.aymen.anes.movie;
+
+import me.aymen.anes.NES;
+
+/**
+ * Plays a {@link Movie} back on a NES through controller scripts, so replay
+ * needs no synchronisation with the emulation thread. Frames run as fast as
+ * the host allows; pacing, if wanted, is up to the caller.
+ * <p>
+ * Seeking restores the last keyframe at or before the target and runs the
+ * remaining frames, so its cost is bounded by the keyframe interval.
+ */
+public class MoviePlayer {
+
+    private final NES nes;
+    private final Movie movie;
+    private final int[][] scripts;
+
+    // Frames of the movie played so far
+    private int frame;
+
+    /**
+     * Prepare playback from the start of the movie. A movie without
+     * keyframes (such as an imported one) is assumed to start from the
+     * current state of the NES, which should be freshly powered on
+     * @param nes NES to play on, with the movie's ROM loaded
+     * @param movie movie to play
+     */
+    public MoviePlayer(NES nes, Movie movie) {
+        if (movie.getROMHash() != 0 && movie.getROMHash() != nes.getROMHash())
+            throw new IllegalArgumentException("Movie was recorded with a " +
+                    "different ROM");
+
+        this.nes = nes;
+        this.movie = movie;
+        scripts = new int[Movie.PORTS][];
+        for (int port = 0; port < Movie.PORTS; port++)
+            scripts[port] = movie.getScript(port);
+
+        if (movie.getKeyframes() == 0)
+            movie.addKeyframe(0, nes.saveState());
+        else if (movie.getKeyframeFrame(0) != 0)
+            throw new IllegalArgumentException("Movie has no keyframe at " +
+                    "its start");
+        seek(0);
+    }
+
+    /**
+     * Move playback to a frame
+     * @param target number of frames played once done
+     */
+    public void seek(int target) {
+        if (target < 0 || target > movie.getFrames())
+            throw new IllegalArgumentException("Frame out of range: "
+                    + target);
+
+        int keyframe = movie.findKeyframe(target);
+        nes.loadState(movie.getKeyframeState(keyframe));
+        frame = movie.getKeyframeFrame(keyframe);
+        for (int port = 0; port < Movie.PORTS; port++)
+            nes.getControllers().get(port).setScript(scripts[port], frame);
+
+        while (frame < target)
+            runFrame();
+    }
+
+    /**
+     * Play the next frame
+     * @return false if the movie has ended
+     */
+    public boolean runFrame() {
+        if (frame >= movie.getFrames())
+            return false;
+
+        nes.runFrame();
+        frame++;
+        return true;
+    }
+
+    /**
+     * Play all remaining frames
+     */
+    public void runToEnd() {
+        while (runFrame()) ;
+    }
+
+    /**
+     * Stop driving the controllers, returning them to published buttons
+     */
+    public void stop() {
+        for (int port = 0; port < Movie.PORTS; port++)
+            nes.getControllers().get(port).setScript(null);
+    }
+
+    public int getFrame() {
+        return frame;
+    }
+
+    public Movie getMovie() {
+        return movie;
+    }
+}
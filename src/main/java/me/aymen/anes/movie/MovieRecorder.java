@@ -0,0 +1,97 @@
+package me.aymen.anes.movie;
+
+import me.aymen.anes.FrameListener;
+import me.aymen.anes.NES;
+import me.aymen.anes.PPU;
+import me.aymen.anes.input.Controller;
+
+/**
+ * Records controller input of a running NES into a {@link Movie}.
+ * While recording, published buttons are sampled once at the start of each
+ * frame and held for the whole frame, so what is recorded is exactly what
+ * the game read. A keyframe is saved every few frames.
+ * <p>
+ * Recording must be started and stopped between frames, i.e. not from
+ * within a frame listener, and everything runs on the emulation thread.
+ */
+public class MovieRecorder implements FrameListener {
+
+    private final NES nes;
+    private final int keyframeInterval;
+
+    // Single entry scripts holding buttons of the current frame
+    private final int[][] held;
+
+    private Movie movie;
+    private int frame;
+
+    /**
+     * @param nes NES to record
+     * @param keyframeInterval frames between keyframes
+     */
+    public MovieRecorder(NES nes, int keyframeInterval) {
+        if (keyframeInterval < 1)
+            throw new IllegalArgumentException("Invalid keyframe interval");
+
+        this.nes = nes;
+        this.keyframeInterval = keyframeInterval;
+        held = new int[Movie.PORTS][1];
+    }
+
+    /**
+     * Start recording from the current state, which becomes the first
+     * keyframe
+     */
+    public void start() {
+        if (movie != null)
+            throw new IllegalStateException("Already recording");
+
+        movie = new Movie(nes.getROMHash());
+        frame = 0;
+        movie.addKeyframe(0, nes.saveState());
+        sample();
+        nes.getPPU().addFrameListener(this);
+    }
+
+    /**
+     * Stop recording. The frame in progress is not part of the movie
+     * @return recorded movie
+     */
+    public Movie stop() {
+        if (movie == null)
+            throw new IllegalStateException("Not recording");
+
+        nes.getPPU().removeFrameListener(this);
+        for (int port = 0; port < Movie.PORTS; port++)
+            nes.getControllers().get(port).setScript(null);
+
+        Movie result = movie;
+        movie = null;
+        return result;
+    }
+
+    public boolean isRecording() {
+        return movie != null;
+    }
+
+    @Override
+    public void frameCompleted(PPU ppu) {
+        movie.addFrame(held[0][0], held[1][0]);
+        frame++;
+
+        if (frame % keyframeInterval == 0)
+            movie.addKeyframe(frame, nes.saveState());
+        sample();
+    }
+
+    /**
+     * Hold published buttons for the next frame
+     */
+    private void sample() {
+        for (int port = 0; port < Movie.PORTS; port++) {
+            Controller controller = nes.getControllers().get(port);
+            held[port][0] = controller.getButtons();
+            controller.setScript(held[port]);
+        }
+    }
+}
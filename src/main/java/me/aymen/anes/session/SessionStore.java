@@ -0,0 +1,314 @@
+package me.aymen.anes.session;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.state.WarmStartCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps many sessions while holding at most a fixed number of machines in
+ * memory. When more are needed, the least recently used idle session is
+ * hibernated: its state is deflated to a file in the store directory and
+ * the machine dropped. The next command to that session restores it
+ * transparently, reloading its ROM and state.
+ * <p>
+ * Commands to one session run one at a time; commands to different
+ * sessions may run in parallel. Hibernation and restoration happen under
+ * the store lock. Frame listeners are not part of a session's state, so
+ * commands should attach whatever they need for their own duration.
+ */
+public class SessionStore {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(SessionStore.class);
+
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final String EXTENSION = ".state";
+
+    private final Path directory;
+    private final int capacity;
+
+    // Access ordered, so iteration starts at the least recently used
+    private final LinkedHashMap<String, Session> sessions;
+    private int resident;
+    private WarmStartCache warmStart;
+
+    // Metrics
+    private long hibernations;
+    private long restores;
+    private long hibernateNanos;
+    private long restoreNanos;
+    private long stateBytes;
+    private long fileBytes;
+
+    /**
+     * @param directory where hibernated sessions are written. Created if
+     *                  missing
+     * @param capacity maximum number of resident sessions
+     */
+    public SessionStore(Path directory, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity");
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.directory = directory;
+        this.capacity = capacity;
+        sessions = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Start new sessions from a cached post-boot state rather than from
+     * power on
+     * @param warmStart cache to start from, or null to disable
+     */
+    public synchronized void setWarmStart(WarmStartCache warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Start a session from power on, or from the warm start state if set
+     * @param id session identifier. Letters, digits, '_' and '-' only
+     * @param rom path of the ROM file
+     */
+    public synchronized void create(String id, String rom) {
+        if (!ID.matcher(id).matches())
+            throw new IllegalArgumentException("Invalid session id: " + id);
+        if (sessions.containsKey(id))
+            throw new IllegalArgumentException("Session exists: " + id);
+
+        NES nes;
+        if (warmStart != null) {
+            nes = warmStart.start(rom);
+        } else {
+            nes = new NES();
+            nes.load(rom);
+        }
+        sessions.put(id, new Session(rom, nes));
+        resident++;
+        evict();
+    }
+
+    /**
+     * Run a command on a session, restoring it first if hibernated
+     * @param id session identifier
+     * @param command command to run on the session's machine
+     * @param <T> result type
+     * @return command result
+     */
+    public <T> T execute(String id, Function<NES, T> command) {
+        Session session = acquire(id);
+        try {
+            synchronized (session) {
+                return command.apply(session.nes);
+            }
+        } finally {
+            release(session);
+        }
+    }
+
+    /**
+     * End a session, deleting its snapshot if hibernated
+     * @param id session identifier
+     */
+    public synchronized void remove(String id) {
+        Session session = sessions.remove(id);
+        if (session == null)
+            return;
+
+        if (session.nes != null)
+            resident--;
+        try {
+            Files.deleteIfExists(file(id));
+        } catch (IOException e) {
+            logger.warn("Could not delete snapshot of session {}", id, e);
+        }
+    }
+
+    public synchronized boolean contains(String id) {
+        return sessions.containsKey(id);
+    }
+
+    public synchronized boolean isResident(String id) {
+        Session session = sessions.get(id);
+        return session != null && session.nes != null;
+    }
+
+    private synchronized Session acquire(String id) {
+        Session session = sessions.get(id);
+        if (session == null)
+            throw new IllegalArgumentException("No such session: " + id);
+
+        boolean restored = session.nes == null;
+        if (restored)
+            restore(id, session);
+
+        // Counted as a user only once restored, so that a failed restore
+        // leaves the session evictable
+        session.users++;
+        if (restored) {
+            resident++;
+            evict();
+        }
+        return session;
+    }
+
+    private synchronized void release(Session session) {
+        session.users--;
+        // Sessions in use could not be evicted earlier
+        evict();
+    }
+
+    /**
+     * Hibernate least recently used idle sessions until within capacity
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Session>> entries =
+                sessions.entrySet().iterator();
+        while (resident > capacity && entries.hasNext()) {
+            Map.Entry<String, Session> entry = entries.next();
+            Session session = entry.getValue();
+            if (session.nes != null && session.users == 0) {
+                hibernate(entry.getKey(), session);
+                resident--;
+            }
+        }
+    }
+
+    private void hibernate(String id, Session session) {
+        long start = System.nanoTime();
+        byte[] state = session.nes.saveState();
+
+        Path file = file(id);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(
+                new DeflaterOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(file)), deflater))) {
+            out.writeUTF(session.rom);
+            out.writeInt(state.length);
+            out.write(state);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+
+        session.nes = null;
+        hibernations++;
+        stateBytes += state.length;
+        try {
+            fileBytes += Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        hibernateNanos += System.nanoTime() - start;
+    }
+
+    private void restore(String id, Session session) {
+        long start = System.nanoTime();
+
+        Path file = file(id);
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            String rom = in.readUTF();
+            byte[] state = new byte[in.readInt()];
+            in.readFully(state);
+
+            NES nes = new NES();
+            nes.load(rom);
+            nes.loadState(state);
+            session.nes = nes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            Files.delete(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete snapshot of session {}", id, e);
+        }
+        restores++;
+        restoreNanos += System.nanoTime() - start;
+    }
+
+    private Path file(String id) {
+        return directory.resolve(id + EXTENSION);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getSessions() {
+        return sessions.size();
+    }
+
+    public synchronized int getResident() {
+        return resident;
+    }
+
+    public synchronized long getHibernations() {
+        return hibernations;
+    }
+
+    public synchronized long getRestores() {
+        return restores;
+    }
+
+    /**
+     * Average time to write a session to disk
+     * @return nanoseconds, or 0 if none was hibernated
+     */
+    public synchronized long getHibernateLatency() {
+        return hibernations == 0 ? 0 : hibernateNanos / hibernations;
+    }
+
+    /**
+     * Average time to bring a session back, including reloading its ROM
+     * @return nanoseconds, or 0 if none was restored
+     */
+    public synchronized long getRestoreLatency() {
+        return restores == 0 ? 0 : restoreNanos / restores;
+    }
+
+    /**
+     * Size of states over size of their snapshot files
+     * @return compression ratio, or 0 if none was hibernated
+     */
+    public synchronized double getCompressionRatio() {
+        return fileBytes == 0 ? 0 : (double) stateBytes / fileBytes;
+    }
+
+    private static class Session {
+        final String rom;
+        // Null while hibernated
+        NES nes;
+        // Commands running or waiting on the session
+        int users;
+
+        Session(String rom, NES nes) {
+            this.rom = rom;
+            this.nes = nes;
+        }
+    }
+}
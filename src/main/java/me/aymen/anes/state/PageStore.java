@@ -0,0 +1,441 @@
+package me.aymen.anes.state;
+
+import me.aymen.anes.exception.InvalidStateException;
+import me.aymen.anes.hash.Hash64;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores many save states by splitting them into 256 byte pages and storing
+ * each distinct page once. States of the same game share most of their
+ * pages (unused RAM, stack, SRAM), so the store grows far slower than the
+ * states it holds.
+ * <p>
+ * A snapshot is a list of page references. Pages are reference counted and
+ * their slots reused once no snapshot refers to them; {@link #compact()}
+ * moves live pages down so the page file can shrink.
+ * <p>
+ * On disk, pages live in a memory mapped file of fixed slots. An index file
+ * holds per slot reference count and hash, and the snapshots' page lists,
+ * so reopening a store reads the index only. The index is rewritten on
+ * {@link #flush()} and {@link #close()}.
+ * <p>
+ * Slots the index on disk refers to are never overwritten: slots released
+ * by {@link #remove(long)} are only reused after the next flush, and
+ * compaction flushes before moving pages and truncates only once the new
+ * index is in place. A crash therefore leaves the store as of the last
+ * flush, losing the snapshots put or removed since.
+ * <p>
+ * Not thread safe.
+ */
+public class PageStore implements Closeable {
+
+    public static final int PAGE_SIZE = 256;
+
+    private static final String PAGES = "pages.dat";
+    private static final String INDEX = "index.dat";
+    // "ANPS"
+    private static final int MAGIC = 0x414E5053;
+    private static final int VERSION = 1;
+
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final Path directory;
+    private final FileChannel channel;
+    private MappedByteBuffer data;
+
+    // Per slot. A slot is free when its count is zero
+    private int slots;
+    private int[] counts;
+    private long[] hashes;
+    private int[] free;
+    private int freeCount;
+    // Slots released since the last flush. The index on disk may still
+    // refer to them, so they are not free yet
+    private int[] released;
+    private int releasedCount;
+
+    // Hash to slot of stored pages, for deduplication
+    private final Map<Long, Integer> lookup;
+    // Page lists of snapshots, with the length of the last page
+    private final Map<Long, Snapshot> snapshots;
+    private long nextId;
+
+    private final byte[] page;
+
+    // Metrics
+    private long logicalBytes;
+
+    private PageStore(Path directory) throws IOException {
+        this.directory = directory;
+        channel = FileChannel.open(directory.resolve(PAGES),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        lookup = new HashMap<>();
+        snapshots = new HashMap<>();
+        page = new byte[PAGE_SIZE];
+        counts = new int[0];
+        hashes = new long[0];
+        free = new int[0];
+        released = new int[0];
+    }
+
+    /**
+     * Open a store, creating it if the directory holds none
+     * @param directory store directory. Created if missing
+     * @return store
+     * @throws IOException if the store cannot be read
+     */
+    public static PageStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        PageStore store = new PageStore(directory);
+        try {
+            if (Files.exists(directory.resolve(INDEX)))
+                store.readIndex();
+            else
+                store.grow(INITIAL_SLOTS);
+        } catch (IOException | RuntimeException e) {
+            store.channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Store a snapshot
+     * @param state snapshot content, such as returned by
+     *              {@link me.aymen.anes.NES#saveState()}
+     * @return snapshot id
+     */
+    public long put(byte[] state) {
+        int count = (state.length + PAGE_SIZE - 1) / PAGE_SIZE;
+        int[] refs = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            int offset = i * PAGE_SIZE;
+            int length = Math.min(PAGE_SIZE, state.length - offset);
+            // Last page is padded with zeros
+            System.arraycopy(state, offset, page, 0, length);
+            Arrays.fill(page, length, PAGE_SIZE, (byte) 0);
+            refs[i] = intern();
+        }
+
+        long id = nextId++;
+        snapshots.put(id, new Snapshot(refs, state.length));
+        logicalBytes += state.length;
+        return id;
+    }
+
+    /**
+     * Rebuild a snapshot from its pages
+     * @param id snapshot id
+     * @return snapshot content
+     */
+    public byte[] get(long id) {
+        Snapshot snapshot = snapshot(id);
+        byte[] state = new byte[snapshot.length];
+
+        for (int i = 0; i < snapshot.pages.length; i++) {
+            int offset = i * PAGE_SIZE;
+            int length = Math.min(PAGE_SIZE, state.length - offset);
+            data.position(snapshot.pages[i] * PAGE_SIZE);
+            data.get(state, offset, length);
+        }
+
+        return state;
+    }
+
+    /**
+     * Delete a snapshot, releasing pages no other snapshot refers to
+     * @param id snapshot id
+     */
+    public void remove(long id) {
+        Snapshot snapshot = snapshot(id);
+        snapshots.remove(id);
+        logicalBytes -= snapshot.length;
+
+        for (int slot : snapshot.pages) {
+            if (--counts[slot] == 0) {
+                Integer current = lookup.get(hashes[slot]);
+                if (current != null && current == slot)
+                    lookup.remove(hashes[slot]);
+                released[releasedCount++] = slot;
+            }
+        }
+    }
+
+    public boolean contains(long id) {
+        return snapshots.containsKey(id);
+    }
+
+    /**
+     * Move live pages into free slots below them, so that all live pages
+     * are at the start of the page file, then shrink the file. The index
+     * is written before and after moving, see {@link #flush()}
+     * @throws IOException if the index cannot be written or the page file
+     * cannot be shrunk
+     */
+    public void compact() throws IOException {
+        // Pages are only moved into slots the index on disk holds as free,
+        // and the slots moved from are kept until the new index is written
+        flush();
+
+        int[] moved = new int[slots];
+        for (int i = 0; i < slots; i++)
+            moved[i] = i;
+
+        int low = 0;
+        int high = slots - 1;
+        while (true) {
+            while (low < slots && counts[low] != 0)
+                low++;
+            while (high >= 0 && counts[high] == 0)
+                high--;
+            if (low >= high)
+                break;
+
+            // Move page at high down to low
+            data.position(high * PAGE_SIZE);
+            data.get(page);
+            data.position(low * PAGE_SIZE);
+            data.put(page);
+            counts[low] = counts[high];
+            hashes[low] = hashes[high];
+            counts[high] = 0;
+            moved[high] = low;
+
+            Integer current = lookup.get(hashes[low]);
+            if (current != null && current == high)
+                lookup.put(hashes[low], low);
+        }
+
+        for (Snapshot snapshot : snapshots.values())
+            for (int i = 0; i < snapshot.pages.length; i++)
+                snapshot.pages[i] = moved[snapshot.pages[i]];
+
+        flush();
+
+        // Keep a little room past the live pages
+        int live = low;
+        resize(Math.max(INITIAL_SLOTS, live + live / 4));
+    }
+
+    /**
+     * Write the index and force page content to disk
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException {
+        data.force();
+
+        Path index = directory.resolve(INDEX);
+        Path temporary = directory.resolve(INDEX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(nextId);
+            out.writeInt(slots);
+            for (int i = 0; i < slots; i++) {
+                out.writeInt(counts[i]);
+                out.writeLong(hashes[i]);
+            }
+
+            out.writeInt(snapshots.size());
+            for (Map.Entry<Long, Snapshot> entry : snapshots.entrySet()) {
+                Snapshot snapshot = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeInt(snapshot.length);
+                out.writeInt(snapshot.pages.length);
+                for (int ref : snapshot.pages)
+                    out.writeInt(ref);
+            }
+        }
+        // Replacing in one step means a crash leaves the old index intact
+        Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        // No index on disk refers to released slots any more
+        for (int i = 0; i < releasedCount; i++)
+            free[freeCount++] = released[i];
+        releasedCount = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    public int getSnapshots() {
+        return snapshots.size();
+    }
+
+    /**
+     * Number of distinct pages stored
+     * @return live page count
+     */
+    public int getPages() {
+        return slots - freeCount - releasedCount;
+    }
+
+    /**
+     * Total size of all snapshots as if stored separately
+     * @return bytes
+     */
+    public long getLogicalBytes() {
+        return logicalBytes;
+    }
+
+    /**
+     * Size of all distinct pages
+     * @return bytes
+     */
+    public long getStoredBytes() {
+        return (long) getPages() * PAGE_SIZE;
+    }
+
+    /**
+     * Find or store the content of the page buffer
+     * @return slot holding it
+     */
+    private int intern() {
+        long hash = Hash64.hash(page, 0, PAGE_SIZE);
+        Integer existing = lookup.get(hash);
+
+        if (existing != null && matches(existing)) {
+            counts[existing]++;
+            return existing;
+        }
+
+        if (freeCount == 0)
+            grow(slots * 2);
+        int slot = free[--freeCount];
+        data.position(slot * PAGE_SIZE);
+        data.put(page);
+        counts[slot] = 1;
+        hashes[slot] = hash;
+        // On a hash collision the first page keeps the lookup entry, and
+        // this one is simply not deduplicated
+        if (existing == null)
+            lookup.put(hash, slot);
+
+        return slot;
+    }
+
+    private boolean matches(int slot) {
+        int base = slot * PAGE_SIZE;
+        for (int i = 0; i < PAGE_SIZE; i++)
+            if (data.get(base + i) != page[i])
+                return false;
+        return true;
+    }
+
+    private Snapshot snapshot(long id) {
+        Snapshot snapshot = snapshots.get(id);
+        if (snapshot == null)
+            throw new IllegalArgumentException("No such snapshot: " + id);
+        return snapshot;
+    }
+
+    private void grow(int capacity) {
+        try {
+            resize(capacity);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow page file", e);
+        }
+    }
+
+    /**
+     * Set number of slots, mapping the page file again. Slots past the new
+     * end must be free, and not just released
+     */
+    private void resize(int capacity) throws IOException {
+        int previous = slots;
+        if (capacity < previous)
+            channel.truncate((long) capacity * PAGE_SIZE);
+        data = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                (long) capacity * PAGE_SIZE);
+
+        counts = Arrays.copyOf(counts, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        slots = capacity;
+
+        // Free slots, highest first so that low slots are used first.
+        // Released slots stay apart until the next flush
+        boolean[] pending = new boolean[capacity];
+        for (int i = 0; i < releasedCount; i++)
+            pending[released[i]] = true;
+        free = new int[capacity];
+        freeCount = 0;
+        for (int i = capacity - 1; i >= 0; i--)
+            if (counts[i] == 0 && !pending[i])
+                free[freeCount++] = i;
+        released = Arrays.copyOf(released, capacity);
+    }
+
+    private void readIndex() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(directory.resolve(INDEX))))) {
+            if (in.readInt() != MAGIC)
+                throw new InvalidStateException("Not a page store index");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new InvalidStateException("Unsupported page store " +
+                        "version " + version);
+
+            nextId = in.readLong();
+            int capacity = in.readInt();
+            counts = new int[capacity];
+            hashes = new long[capacity];
+            for (int i = 0; i < capacity; i++) {
+                counts[i] = in.readInt();
+                hashes[i] = in.readLong();
+                if (counts[i] != 0)
+                    lookup.putIfAbsent(hashes[i], i);
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                int length = in.readInt();
+                int[] refs = new int[in.readInt()];
+                for (int j = 0; j < refs.length; j++)
+                    refs[j] = in.readInt();
+                snapshots.put(id, new Snapshot(refs, length));
+                logicalBytes += length;
+            }
+
+            resize(capacity);
+        } catch (EOFException e) {
+            throw new InvalidStateException("Truncated page store index");
+        }
+    }
+
+    private static class Snapshot {
+        final int[] pages;
+        final int length;
+
+        Snapshot(int[] pages, int length) {
+            this.pages = pages;
+            this.length = length;
+        }
+    }
+}
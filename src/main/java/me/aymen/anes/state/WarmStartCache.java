@@ -0,0 +1,169 @@
+package me.aymen.anes.state;
+
+import me.aymen.anes.NES;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Skips the boot sequence of games by caching the state reached after it.
+ * On the first start of a ROM, the machine runs from power on to a target
+ * (a frame count or a PC value) and the state there is written to the cache
+ * directory. Later starts of the same ROM restore that state instead.
+ * <p>
+ * Entries are keyed by ROM hash, {@link NES#EMULATION_VERSION},
+ * {@link NES#STATE_VERSION} and the target, so a change to any of them
+ * leads to a new entry rather than a stale state. Entries are written to a
+ * temporary file and moved into place, so concurrent starts are safe.
+ * The target must be set before starting machines.
+ */
+public class WarmStartCache {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(WarmStartCache.class);
+
+    // Frames to wait for the target PC before giving up (10 minutes)
+    private static final int MAX_FRAMES = 36000;
+
+    private final Path directory;
+    private int frame;
+    private int pc;
+
+    // Metrics. Starts may run on several threads at once
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param directory where states are cached. Created if missing
+     * @param frame number of frames to run from power on
+     */
+    public WarmStartCache(Path directory, int frame) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.directory = directory;
+        setFrame(frame);
+    }
+
+    /**
+     * Take the state once a number of frames have run
+     * @param frame frames from power on
+     */
+    public void setFrame(int frame) {
+        if (frame < 0)
+            throw new IllegalArgumentException("Invalid frame: " + frame);
+        this.frame = frame;
+        pc = -1;
+    }
+
+    /**
+     * Take the state once the CPU is about to execute an address, such as
+     * the game's main loop
+     * @param pc address of the instruction
+     */
+    public void setPC(int pc) {
+        if (pc < 0 || pc > 0xFFFF)
+            throw new IllegalArgumentException("Invalid PC: " + pc);
+        this.pc = pc;
+        frame = -1;
+    }
+
+    /**
+     * Create a machine for a ROM and bring it to the target, from the cache
+     * if possible
+     * @param rom path of the ROM file
+     * @return machine at the target
+     */
+    public NES start(String rom) {
+        NES nes = new NES();
+        nes.load(rom);
+        Path file = directory.resolve(key(nes));
+
+        if (Files.exists(file)) {
+            try (InputStream in = new InflaterInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                nes.loadState(in);
+                hits.incrementAndGet();
+                return nes;
+            } catch (IOException | RuntimeException e) {
+                // A partly loaded state is unusable. Start over from power on
+                logger.warn("Discarding unreadable warm start state {}",
+                        file, e);
+                nes = new NES();
+                nes.load(rom);
+            }
+        }
+
+        misses.incrementAndGet();
+        if (boot(nes))
+            store(nes, file);
+        return nes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Run to the target
+     * @return false if the target PC was never reached
+     */
+    private boolean boot(NES nes) {
+        if (frame >= 0) {
+            for (int i = 0; i < frame; i++)
+                nes.runFrame();
+            return true;
+        }
+
+        int limit = nes.getPPU().getFrameCount() + MAX_FRAMES;
+        while (nes.getCPU().getPC() != pc) {
+            if (nes.getPPU().getFrameCount() - limit >= 0) {
+                logger.warn("PC ${} not reached, warm start state not " +
+                        "cached", String.format("%04X", pc));
+                return false;
+            }
+            nes.step();
+        }
+        return true;
+    }
+
+    private void store(NES nes, Path file) {
+        try {
+            Path temporary = Files.createTempFile(directory, "warm", ".tmp");
+            try (OutputStream out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(
+                            temporary)))) {
+                nes.saveState(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not cache warm start state {}", file, e);
+        }
+    }
+
+    private String key(NES nes) {
+        String target = frame >= 0 ? "f" + frame
+                : String.format("pc%04x", pc);
+        return String.format("%016x-e%d-s%d-%s.state", nes.getROMHash(),
+                NES.EMULATION_VERSION, NES.STATE_VERSION, target);
+    }
+}
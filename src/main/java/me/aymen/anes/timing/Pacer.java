@@ -0,0 +1,228 @@
+package me.aymen.anes.timing;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.apu.APU;
+import me.aymen.anes.audio.AudioOutput;
+import me.aymen.anes.capture.WavCapture;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static me.aymen.anes.timing.PacingMode.*;
+
+/**
+ * Runs a NES frame by frame in real time.
+ * Waiting is done by parking the thread, so an idle session costs next to
+ * no CPU. With {@link PacingMode#FRAME_CLOCK}, frames are scheduled on an
+ * absolute timeline so that wake up latency does not accumulate as drift.
+ * With {@link PacingMode#AUDIO}, emulation waits on the audio device
+ * instead, and the APU sample rate is nudged by a small amount depending on
+ * how full the device is, keeping it away from both underrun and overrun
+ * without audible pitch change.
+ */
+public class Pacer {
+
+    /**
+     * Length of an NTSC frame (29780.5 CPU cycles)
+     */
+    public static final long FRAME_NANOS =
+            Math.round(1e9 * 29780.5 / APU.CLOCK_RATE);
+
+    // Frames behind schedule before giving up on catching up
+    private static final int MAX_LAG = 4;
+
+    // Largest relative change to sample rate
+    private static final double MAX_RATE_DELTA = 0.005;
+
+    private final NES nes;
+    private final short[] samples;
+    private int mode;
+    private AudioOutput output;
+    private WavCapture capture;
+
+    // Time next frame is due, from System.nanoTime
+    private long deadline;
+    private double rateAdjustment;
+
+    // Metrics
+    private long frames;
+    private long lateFrames;
+    private long resyncs;
+    private long underruns;
+    private long parkedNanos;
+
+    public Pacer(NES nes) {
+        this.nes = nes;
+        samples = new short[4096];
+        rateAdjustment = 1;
+        setMode(FRAME_CLOCK);
+    }
+
+    /**
+     * Set pacing mode
+     * @param mode one of {@link PacingMode}
+     */
+    public void setMode(int mode) {
+        this.mode = mode;
+        deadline = 0;
+    }
+
+    /**
+     * Set where samples are played. Samples are produced at the rate of
+     * the device from then on
+     * @param output audio device, or null for none
+     */
+    public void setAudioOutput(AudioOutput output) {
+        this.output = output;
+        rateAdjustment = 1;
+        nes.getAPU().setSampleRate(output != null ? output.getSampleRate()
+                : APU.SAMPLE_RATE);
+    }
+
+    /**
+     * Record all produced samples, including those produced in turbo
+     * @param capture capture to write to, or null to stop recording
+     */
+    public void setCapture(WavCapture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * Emulate one frame, then wait until it is time for the next one
+     */
+    public void runFrame() {
+        nes.runFrame();
+        drainAudio();
+
+        if (mode == AUDIO && output != null)
+            waitForAudio();
+        else if (mode != TURBO)
+            waitForClock();
+
+        frames++;
+    }
+
+    /**
+     * Run frames until the thread is interrupted
+     */
+    public void run() {
+        while (!Thread.currentThread().isInterrupted())
+            runFrame();
+    }
+
+    /**
+     * Hand samples of the last frame to capture and audio device
+     */
+    private void drainAudio() {
+        APU apu = nes.getAPU();
+        boolean play = output != null && mode != TURBO;
+
+        if (play && frames > 0 && output.getQueued() == 0)
+            underruns++;
+
+        int count;
+        while ((count = apu.readSamples(samples, 0, samples.length)) > 0) {
+            if (capture != null)
+                capture.write(samples, 0, count);
+            if (play)
+                output.write(samples, 0, count);
+        }
+    }
+
+    /**
+     * Keep the audio device half full
+     */
+    private void waitForAudio() {
+        int capacity = output.getCapacity();
+        int target = capacity / 2;
+        int queued = output.getQueued();
+
+        // Produce slightly more samples when below half, fewer when above
+        rateAdjustment = 1 + MAX_RATE_DELTA
+                * (1 - 2 * (double) queued / capacity);
+        nes.getAPU().setSampleRate(output.getSampleRate() * rateAdjustment);
+
+        if (queued > target)
+            park(System.nanoTime() + (queued - target) * 1_000_000_000L
+                    / output.getSampleRate());
+    }
+
+    /**
+     * Wait for the next frame on an absolute schedule
+     */
+    private void waitForClock() {
+        long now = System.nanoTime();
+
+        if (deadline == 0 || now - deadline > MAX_LAG * FRAME_NANOS) {
+            // Too far behind (or just started). Start a new schedule
+            if (deadline != 0)
+                resyncs++;
+            deadline = now;
+        }
+
+        deadline += FRAME_NANOS;
+        if (deadline - now < 0)
+            lateFrames++;
+        else
+            park(deadline);
+    }
+
+    /**
+     * Park until given time. Parking may return early, so it is repeated
+     * @param until time from System.nanoTime
+     */
+    private void park(long until) {
+        long start = System.nanoTime();
+        long remaining;
+        while ((remaining = until - System.nanoTime()) > 0)
+            LockSupport.parkNanos(remaining);
+        parkedNanos += System.nanoTime() - start;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Current relative adjustment to the sample rate
+     * @return factor around 1
+     */
+    public double getRateAdjustment() {
+        return rateAdjustment;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Frames that finished after they were due
+     * @return late frame count
+     */
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    /**
+     * Times the schedule was restarted after falling too far behind
+     * @return resync count
+     */
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    /**
+     * Frames where the audio device had run out of samples
+     * @return underrun count
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Total time spent waiting
+     * @return nanoseconds
+     */
+    public long getParkedNanos() {
+        return parkedNanos;
+    }
+}
@@ -0,0 +1,22 @@
+package me.aymen.anes.timing;
+
+/**
+ * How a {@link Pacer} keeps emulation in real time
+ */
+public interface PacingMode {
+
+    /**
+     * Follow a high resolution clock at the NTSC frame rate
+     */
+    int FRAME_CLOCK = 0;
+
+    /**
+     * Follow the rate at which the audio device consumes samples
+     */
+    int AUDIO = 1;
+
+    /**
+     * Run as fast as possible
+     */
+    int TURBO = 2;
+}
@@ -1,10 +1,13 @@
 package me.aymen.anes.util;
 
+import me.aymen.anes.CPU;
+
 /**
- * Used to present an operation code to be processed
+ * Used to present an operation code to be processed by a given CPU. Taking
+ * the CPU as a parameter lets the opcode table be shared by all instances
  */
 @FunctionalInterface
 public interface Function {
 
-    void process();
+    void process(CPU cpu);
 }
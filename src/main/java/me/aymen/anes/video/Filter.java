@@ -0,0 +1,26 @@
+package me.aymen.anes.video;
+
+/**
+ * Post processing applied to a converted frame. Filters work on a range of
+ * source rows at a time, so a frame can be split in stripes and processed
+ * in parallel. Writing a stripe must only touch the destination rows that
+ * belong to it.
+ */
+public interface Filter {
+
+    /**
+     * Factor by which output is larger than input on each axis
+     * @return scale factor
+     */
+    int getScale();
+
+    /**
+     * Process a range of source rows
+     * @param src ARGB8888 source frame of {@link me.aymen.anes.PPU#WIDTH} by
+     *            {@link me.aymen.anes.PPU#HEIGHT} pixels
+     * @param dst destination of width and height multiplied by scale
+     * @param from first source row
+     * @param to last source row (exclusive)
+     */
+    void apply(int[] src, int[] dst, int from, int to);
+}
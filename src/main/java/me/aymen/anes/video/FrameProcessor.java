@@ -0,0 +1,163 @@
+package me.aymen.anes.video;
+
+import me.aymen.anes.FrameListener;
+import me.aymen.anes.PPU;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import static me.aymen.anes.PPU.HEIGHT;
+import static me.aymen.anes.PPU.WIDTH;
+
+/**
+ * Converts and filters completed frames away from the emulation thread.
+ * Each frame is copied once, then converted to ARGB8888 and passed through
+ * a {@link Filter} in row stripes on a ForkJoinPool. All buffers are
+ * allocated up front, so nothing is allocated per frame apart from the
+ * stripe tasks themselves.
+ * <p>
+ * Processing of a frame overlaps emulation of the next one. If the
+ * emulator completes another frame before the previous one is processed,
+ * it waits for it rather than dropping frames.
+ */
+public class FrameProcessor implements FrameListener {
+
+    // Smallest stripe worth handing to another thread
+    private static final int MIN_ROWS = 8;
+
+    private final Filter filter;
+    private final ForkJoinPool pool;
+    private final int stripe;
+
+    // Copy of the PPU frame being processed
+    private final int[] frame;
+    // Frame converted to ARGB8888
+    private final int[] argb;
+    // Filter output
+    private final int[] output;
+
+    private Consumer<int[]> consumer;
+    private ForkJoinTask<?> pending;
+
+    /**
+     * Process frames on the common pool shared by the whole JVM
+     * @param filter filter to apply
+     */
+    public FrameProcessor(Filter filter) {
+        this(filter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param filter filter to apply
+     * @param pool pool to run stripes on. Usually shared by all sessions
+     */
+    public FrameProcessor(Filter filter, ForkJoinPool pool) {
+        this.filter = filter;
+        this.pool = pool;
+        int scale = filter.getScale();
+
+        frame = new int[WIDTH * HEIGHT];
+        argb = new int[WIDTH * HEIGHT];
+        output = new int[WIDTH * scale * HEIGHT * scale];
+
+        // Two stripes per thread leaves room for balancing uneven stripes
+        stripe = Math.max(MIN_ROWS, HEIGHT / (pool.getParallelism() * 2));
+    }
+
+    /**
+     * Set who receives processed frames. Invoked on a pool thread with the
+     * output buffer, which is only valid until the call returns
+     * @param consumer receiver of processed frames
+     */
+    public void setConsumer(Consumer<int[]> consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void frameCompleted(PPU ppu) {
+        // Previous frame must be done before its buffers are reused
+        await();
+        System.arraycopy(ppu.getFrame(), 0, frame, 0, frame.length);
+        pending = pool.submit(new Frame());
+    }
+
+    /**
+     * Process a frame and wait for the result
+     * @param src frame entries as produced by the PPU
+     * @return output buffer, valid until next frame is processed
+     */
+    public int[] process(int[] src) {
+        await();
+        System.arraycopy(src, 0, frame, 0, frame.length);
+        pool.invoke(new Frame());
+        return output;
+    }
+
+    /**
+     * Wait until the frame being processed (if any) is done
+     */
+    public void await() {
+        if (pending != null) {
+            pending.join();
+            pending = null;
+        }
+    }
+
+    public int[] getOutput() {
+        return output;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Processes a whole frame. Conversion has to be finished for all rows
+     * before filtering, as filters may read neighbouring rows
+     */
+    private class Frame extends RecursiveAction {
+        @Override
+        protected void compute() {
+            new Stripe(false, 0, HEIGHT).invoke();
+            new Stripe(true, 0, HEIGHT).invoke();
+
+            if (consumer != null)
+                consumer.accept(output);
+        }
+    }
+
+    /**
+     * Converts or filters a range of rows, splitting it further if large
+     */
+    private class Stripe extends RecursiveAction {
+        private final boolean filtering;
+        private final int from;
+        private final int to;
+
+        Stripe(boolean filtering, int from, int to) {
+            this.filtering = filtering;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > stripe) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Stripe(filtering, from, middle),
+                        new Stripe(filtering, middle, to));
+                return;
+            }
+
+            if (filtering) {
+                filter.apply(argb, output, from, to);
+            } else {
+                int[] table = Palette.table(PixelFormat.ARGB8888);
+                for (int i = from * WIDTH; i < to * WIDTH; i++)
+                    argb[i] = table[frame[i] & 0x1FF];
+            }
+        }
+    }
+}
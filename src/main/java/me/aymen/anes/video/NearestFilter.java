@@ -0,0 +1,44 @@
+package me.aymen.anes.video;
+
+import static me.aymen.anes.PPU.WIDTH;
+
+/**
+ * Nearest neighbour scaling by an integer factor
+ */
+public class NearestFilter implements Filter {
+
+    private final int scale;
+
+    public NearestFilter(int scale) {
+        if (scale < 1)
+            throw new IllegalArgumentException("Scale must be positive");
+
+        this.scale = scale;
+    }
+
+    @Override
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public void apply(int[] src, int[] dst, int from, int to) {
+        int width = WIDTH * scale;
+
+        for (int y = from; y < to; y++) {
+            int in = y * WIDTH;
+            int out = y * scale * width;
+
+            // Build the first output row, then copy it for the rest
+            for (int x = 0; x < WIDTH; x++) {
+                int pixel = src[in + x];
+                for (int i = 0; i < scale; i++)
+                    dst[out++] = pixel;
+            }
+
+            int row = y * scale * width;
+            for (int i = 1; i < scale; i++)
+                System.arraycopy(dst, row, dst, row + i * width, width);
+        }
+    }
+}
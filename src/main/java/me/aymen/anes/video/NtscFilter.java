@@ -0,0 +1,39 @@
+package me.aymen.anes.video;
+
+import static me.aymen.anes.PPU.WIDTH;
+
+/**
+ * A simple approximation of composite video. Each row is blurred
+ * horizontally, softening the sharp transitions the way a limited
+ * composite signal bandwidth does. Output keeps the frame size
+ */
+public class NtscFilter implements Filter {
+
+    @Override
+    public int getScale() {
+        return 1;
+    }
+
+    @Override
+    public void apply(int[] src, int[] dst, int from, int to) {
+        for (int y = from; y < to; y++) {
+            int row = y * WIDTH;
+
+            for (int x = 0; x < WIDTH; x++) {
+                int left = src[row + (x > 0 ? x - 1 : x)];
+                int pixel = src[row + x];
+                int right = src[row + (x < WIDTH - 1 ? x + 1 : x)];
+
+                // Weights of 1, 2 and 1 for each channel
+                int r = (((left >> 16) & 0xFF) + ((pixel >> 15) & 0x1FE)
+                        + ((right >> 16) & 0xFF)) >> 2;
+                int g = (((left >> 8) & 0xFF) + ((pixel >> 7) & 0x1FE)
+                        + ((right >> 8) & 0xFF)) >> 2;
+                int b = ((left & 0xFF) + ((pixel << 1) & 0x1FE)
+                        + (right & 0xFF)) >> 2;
+
+                dst[row + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package me.aymen.anes.video;
+
+import static me.aymen.anes.video.PixelFormat.*;
+
+/**
+ * Converts frames produced by the PPU into final pixels.
+ * A frame entry is a 6 bit palette index combined with the 3 colour
+ * emphasis bits of PPUMASK (see {@link me.aymen.anes.PPU#pixel(int)}),
+ * giving 512 possible values. All of them are converted ahead of time into
+ * one table per {@link PixelFormat}, so converting a frame is a single
+ * table lookup per pixel and never allocates.
+ */
+public class Palette {
+
+    /**
+     * Number of entries in each table (64 colours * 8 emphasis modes)
+     */
+    public static final int ENTRIES = 512;
+
+    // Channels not selected by an active emphasis bit are darkened by
+    // this factor. Taken from measurements of the 2C02 composite output
+    private static final double ATTENUATION = 0.746;
+
+    // 2C02 palette in RGB888
+    private static final int[] NTSC = {
+            0x666666, 0x002A88, 0x1412A7, 0x3B00A4,
+            0x5C007E, 0x6E0040, 0x6C0600, 0x561D00,
+            0x333500, 0x0B4800, 0x005200, 0x004F08,
+            0x00404D, 0x000000, 0x000000, 0x000000,
+
+            0xADADAD, 0x155FD9, 0x4240FF, 0x7527FE,
+            0xA01ACC, 0xB71E7B, 0xB53120, 0x994E00,
+            0x6B6D00, 0x388700, 0x0C9300, 0x008F32,
+            0x007C8D, 0x000000, 0x000000, 0x000000,
+
+            0xFFFEFF, 0x64B0FF, 0x9290FF, 0xC676FF,
+            0xF36AFF, 0xFE6ECC, 0xFE8170, 0xEA9E22,
+            0xBCBE00, 0x88D800, 0x5CE430, 0x45E082,
+            0x48CDDE, 0x4F4F4F, 0x000000, 0x000000,
+
+            0xFFFEFF, 0xC0DFFF, 0xD3D2FF, 0xE8C8FF,
+            0xFBC2FF, 0xFEC4EA, 0xFECCC5, 0xF7D8A5,
+            0xE4E594, 0xCFEF96, 0xBDF4AB, 0xB3F3CC,
+            0xB5EBF2, 0xB8B8B8, 0x000000, 0x000000
+    };
+
+    // One table per pixel format
+    private static final int[][] tables = new int[SIZE][ENTRIES];
+
+    static {
+        for (int entry = 0; entry < ENTRIES; entry++) {
+            int rgb = NTSC[entry & 0x3F];
+            int emphasis = entry >> 6;
+            int r = emphasise((rgb >> 16) & 0xFF, emphasis, 0x1);
+            int g = emphasise((rgb >> 8) & 0xFF, emphasis, 0x2);
+            int b = emphasise(rgb & 0xFF, emphasis, 0x4);
+
+            tables[ARGB8888][entry] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            tables[RGB565][entry] = ((r >> 3) << 11) | ((g >> 2) << 5)
+                    | (b >> 3);
+            // ITU-R BT.601 luma
+            tables[GRAYSCALE][entry] = (r * 299 + g * 587 + b * 114) / 1000;
+        }
+    }
+
+    /**
+     * Retrieve the lookup table of a pixel format. The table is shared and
+     * must not be modified
+     * @param format one of {@link PixelFormat}
+     * @return table of 512 entries
+     */
+    public static int[] table(int format) {
+        return tables[format];
+    }
+
+    /**
+     * Converts a single frame entry
+     * @param entry palette index and emphasis bits
+     * @param format one of {@link PixelFormat}
+     * @return pixel in given format
+     */
+    public static int convert(int entry, int format) {
+        return tables[format][entry & 0x1FF];
+    }
+
+    /**
+     * Converts a whole frame in a single pass. Results are stored as int
+     * regardless of format
+     * @param src frame entries as produced by the PPU
+     * @param dst destination, at least as long as src
+     * @param format one of {@link PixelFormat}
+     */
+    public static void convert(int[] src, int[] dst, int format) {
+        int[] table = tables[format];
+        for (int i = 0; i < src.length; i++)
+            dst[i] = table[src[i] & 0x1FF];
+    }
+
+    /**
+     * Converts a whole frame to RGB565
+     * @param src frame entries as produced by the PPU
+     * @param dst destination, at least as long as src
+     */
+    public static void convert(int[] src, short[] dst) {
+        int[] table = tables[RGB565];
+        for (int i = 0; i < src.length; i++)
+            dst[i] = (short) table[src[i] & 0x1FF];
+    }
+
+    /**
+     * Converts a whole frame to 8 bit grayscale
+     * @param src frame entries as produced by the PPU
+     * @param dst destination, at least as long as src
+     */
+    public static void convert(int[] src, byte[] dst) {
+        int[] table = tables[GRAYSCALE];
+        for (int i = 0; i < src.length; i++)
+            dst[i] = (byte) table[src[i] & 0x1FF];
+    }
+
+    /**
+     * Applies colour emphasis to one channel
+     * @param value channel value
+     * @param emphasis the three emphasis bits (red, green, blue)
+     * @param channel bit of the channel within emphasis
+     * @return adjusted channel value
+     */
+    private static int emphasise(int value, int emphasis, int channel) {
+        // Emphasis darkens the channels that are not emphasised
+        if (emphasis != 0 && (emphasis & channel) == 0)
+            return (int) (value * ATTENUATION);
+
+        return value;
+    }
+}
@@ -0,0 +1,27 @@
+package me.aymen.anes.video;
+
+/**
+ * Output formats a frame can be converted to. Each format owns one
+ * lookup table inside {@link Palette}.
+ */
+public interface PixelFormat {
+    /**
+     * Indexed at zero
+     */
+    int SIZE = 3;
+
+    /**
+     * 32 bit colour with alpha channel in the most significant byte
+     */
+    int ARGB8888 = 0;
+
+    /**
+     * 16 bit colour. 5 bits for red, 6 for green and 5 for blue
+     */
+    int RGB565 = 1;
+
+    /**
+     * 8 bit luminance
+     */
+    int GRAYSCALE = 2;
+}
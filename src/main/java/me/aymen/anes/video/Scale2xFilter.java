@@ -0,0 +1,55 @@
+package me.aymen.anes.video;
+
+import static me.aymen.anes.PPU.HEIGHT;
+import static me.aymen.anes.PPU.WIDTH;
+
+/**
+ * Scale2x (also known as EPX). Doubles the frame while keeping edges
+ * of flat coloured areas sharp.
+ * See: http://www.scale2x.it/algorithm
+ */
+public class Scale2xFilter implements Filter {
+
+    @Override
+    public int getScale() {
+        return 2;
+    }
+
+    @Override
+    public void apply(int[] src, int[] dst, int from, int to) {
+        int width = WIDTH * 2;
+
+        for (int y = from; y < to; y++) {
+            // Neighbour rows are clamped to the frame edges
+            int up = (y > 0 ? y - 1 : y) * WIDTH;
+            int row = y * WIDTH;
+            int down = (y < HEIGHT - 1 ? y + 1 : y) * WIDTH;
+            int out = y * 2 * width;
+
+            for (int x = 0; x < WIDTH; x++) {
+                int left = x > 0 ? x - 1 : x;
+                int right = x < WIDTH - 1 ? x + 1 : x;
+
+                int a = src[up + x];
+                int b = src[row + right];
+                int c = src[row + left];
+                int d = src[down + x];
+                int p = src[row + x];
+
+                int e0 = p, e1 = p, e2 = p, e3 = p;
+                if (a != d && c != b) {
+                    e0 = c == a ? a : p;
+                    e1 = a == b ? b : p;
+                    e2 = c == d ? c : p;
+                    e3 = d == b ? b : p;
+                }
+
+                int i = out + x * 2;
+                dst[i] = e0;
+                dst[i + 1] = e1;
+                dst[i + width] = e2;
+                dst[i + width + 1] = e3;
+            }
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package me.aymen.anes;
 
+import me.aymen.anes.apu.APU;
 import me.aymen.anes.memory.Bus;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Test CPU instructions. Immediate addressing memory is assumed if direct memory is needed
@@ -17,6 +21,53 @@ public class CPUTest {
         cpu.setPC(0);
     }
 
+    private void load(int address, int... values) {
+        for (int i = 0; i < values.length; i++)
+            bus.write(values[i], address + i);
+    }
+
+    /**
+     * Test the extra cycle of indirect indexed reads is only taken when
+     * adding Y crosses a page
+     */
+    @Test
+    public void testIndirectIndexedPageCross() {
+        // LDA ($10),Y then LDA ($12),Y
+        load(0x0000, 0xB1, 0x10, 0xB1, 0x12);
+        load(0x0010, 0x10, 0x03, 0xFF, 0x03);
+        cpu.setY(1);
+
+        // $0310 + 1 stays on the page
+        assertEquals(5, cpu.step());
+        // $03FF + 1 crosses into $0400
+        assertEquals(6, cpu.step());
+    }
+
+    /**
+     * Test stores do not read their target, as reading $4015 acknowledges
+     * the frame IRQ
+     */
+    @Test
+    public void testStoreDoesNotRead() {
+        APU apu = new APU(bus, cpu);
+        bus.attach(apu, 0x4015, 0x4015);
+
+        // Run past the end of the first 4 step sequence
+        cpu.stall(30000);
+        apu.catchUp();
+        assertTrue(apu.isIRQ());
+
+        // LDA #$0F, STA $4015, LDA $4015
+        load(0x0000, 0xA9, 0x0F, 0x8D, 0x15, 0x40, 0xAD, 0x15, 0x40);
+        cpu.step();
+        cpu.step();
+        assertTrue(apu.isIRQ());
+
+        cpu.step();
+        assertEquals(0x40, cpu.getA() & 0x40);
+        assertFalse(apu.isIRQ());
+    }
+
 //    /**
 //     * Test initial value of A is what is set without any effect on flags
 //     */
@@ -0,0 +1,111 @@
+package me.aymen.anes;
+
+import me.aymen.anes.hash.Hash64;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NESTest {
+
+    private static long state(NES nes) {
+        byte[] state = nes.saveState();
+        int[] values = new int[state.length];
+        for (int i = 0; i < state.length; i++)
+            values[i] = state[i];
+        return Hash64.hash(values, 0, values.length);
+    }
+
+    @Test
+    public void testForkRunsIdentically() {
+        // Empty memory keeps the CPU looping on BRK, pushing to the stack
+        NES nes = new NES();
+        nes.runFrame();
+
+        NES fork = nes.fork();
+        assertEquals(state(nes), state(fork));
+
+        nes.runFrame();
+        fork.runFrame();
+        assertEquals(state(nes), state(fork));
+        assertEquals(nes.getCPU().getCycles(), fork.getCPU().getCycles());
+        assertEquals(2, fork.getPPU().getFrameCount());
+    }
+
+    @Test
+    public void testForkIsIndependent() {
+        NES nes = new NES();
+        NES fork = nes.fork();
+
+        fork.getBus().write(0x55, 0x0300);
+        fork.getCPU().setA(0x12);
+        assertEquals(0, nes.getBus().read(0x0300));
+        assertNotEquals(0x12, nes.getCPU().getA());
+    }
+
+    @Test
+    public void testForkCopiesFrameOnDraw() {
+        NES nes = new NES();
+        NES fork = nes.fork();
+        assertSame(nes.getPPU().getFrame(), fork.getPPU().getFrame());
+
+        fork.getPPU().frame()[0] = 0x21;
+        assertEquals(0x21, fork.getPPU().getFrame()[0]);
+        assertEquals(0, nes.getPPU().getFrame()[0]);
+
+        nes.getPPU().frame()[1] = 0x16;
+        assertEquals(0, fork.getPPU().getFrame()[1]);
+    }
+
+    @Test
+    public void testStateHash() {
+        NES nes = new NES();
+        nes.getBus().setVerifyHash(true);
+        nes.runFrame();
+
+        NES fork = nes.fork();
+        assertEquals(nes.getStateHash(), fork.getStateHash());
+
+        fork.getBus().write(1, 0x0400);
+        assertNotEquals(nes.getStateHash(), fork.getStateHash());
+        fork.getBus().write(0, 0x0400);
+        assertEquals(nes.getStateHash(), fork.getStateHash());
+
+        fork.getCPU().setA(nes.getCPU().getA() ^ 1);
+        assertNotEquals(nes.getStateHash(), fork.getStateHash());
+    }
+
+    @Test
+    public void testOAMDMA() {
+        NES nes = new NES();
+        for (int i = 0; i < 0x100; i++)
+            nes.getBus().write(i ^ 0x5A, 0x0300 + i);
+
+        // LDA #$03, STA $4014
+        int[] program = {0xA9, 0x03, 0x8D, 0x14, 0x40};
+        for (int i = 0; i < program.length; i++)
+            nes.getBus().write(program[i], 0x0200 + i);
+        nes.getCPU().setPC(0x0200);
+
+        nes.step();
+        int cycles = nes.step();
+        assertTrue(cycles == 4 + 513 || cycles == 4 + 514);
+        for (int i = 0; i < 0x100; i++)
+            assertEquals(i ^ 0x5A, nes.getPPU().getOAM()[i]);
+    }
+
+    @Test
+    public void testOAMDMAAlignment() {
+        // STA $4014 starting on an even, then an odd cycle
+        for (int odd = 0; odd < 2; odd++) {
+            NES nes = new NES();
+            int[] program = {0x8D, 0x14, 0x40};
+            for (int i = 0; i < program.length; i++)
+                nes.getBus().write(program[i], 0x0200 + i);
+            CPU cpu = nes.getCPU();
+            cpu.setPC(0x0200);
+            cpu.stall((odd - cpu.getCycles()) & 1);
+
+            assertEquals(4 + 513 + odd, nes.step());
+        }
+    }
+}
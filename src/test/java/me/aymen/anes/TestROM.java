@@ -0,0 +1,97 @@
+package me.aymen.anes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Builds iNES files for tests: one 16KB PRG bank, mirrored at 0x8000 and
+ * 0xC000, and no CHR. An empty ROM has all vectors at 0x0000, where zeroed
+ * RAM keeps the CPU looping on BRK
+ */
+public class TestROM {
+
+    private final byte[] prg = new byte[0x4000];
+
+    /**
+     * A loop calling a subroutine, followed by data, at 0xC000. NMI and
+     * IRQ handlers return at once:
+     * <pre>
+     * C000 LDX #$00
+     * C002 JSR $C010
+     * C005 BNE $C002
+     * C007 JMP $C007
+     * C00A data
+     * C010 INX
+     * C011 RTS
+     * C020 RTI
+     * </pre>
+     * NMI points to 0x8020, a mirror of the RTI
+     * @return ROM
+     */
+    public static TestROM callLoop() {
+        return new TestROM()
+                .put(0xC000,
+                        0xA2, 0x00,
+                        0x20, 0x10, 0xC0,
+                        0xD0, 0xFB,
+                        0x4C, 0x07, 0xC0,
+                        0x02, 0xFF, 0xFF)
+                .put(0xC010, 0xE8, 0x60)
+                .put(0xC020, 0x40)
+                .vectors(0x8020, 0xC000, 0xC020);
+    }
+
+    /**
+     * Set bytes of the bank
+     * @param address CPU address from 0x8000
+     * @param values bytes
+     * @return this ROM
+     */
+    public TestROM put(int address, int... values) {
+        for (int i = 0; i < values.length; i++)
+            prg[(address + i) & 0x3FFF] = (byte) values[i];
+        return this;
+    }
+
+    /**
+     * Set the interrupt and reset vectors
+     * @return this ROM
+     */
+    public TestROM vectors(int nmi, int reset, int irq) {
+        return put(0xFFFA, nmi & 0xFF, nmi >> 8, reset & 0xFF, reset >> 8,
+                irq & 0xFF, irq >> 8);
+    }
+
+    /**
+     * Write the ROM as test.nes
+     * @param directory where to write, such as a JUnit temporary directory
+     * @return path of the file
+     * @throws IOException if writing fails
+     */
+    public Path write(Path directory) throws IOException {
+        byte[] file = new byte[16 + prg.length];
+        file[0] = 'N';
+        file[1] = 'E';
+        file[2] = 'S';
+        file[3] = 0x1A;
+        file[4] = 1;
+        System.arraycopy(prg, 0, file, 16, prg.length);
+
+        Path path = directory.resolve("test.nes");
+        Files.write(path, file);
+        return path;
+    }
+
+    /**
+     * Write the ROM and load it in a new machine
+     * @param directory where to write the file
+     * @return machine after reset
+     * @throws IOException if writing fails
+     */
+    public NES load(Path directory) throws IOException {
+        NES nes = new NES();
+        nes.load(write(directory).toString());
+        return nes;
+    }
+}
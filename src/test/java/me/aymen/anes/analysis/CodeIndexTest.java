@@ -0,0 +1,99 @@
+package me.aymen.anes.analysis;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.TestROM;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private NES load() throws Exception {
+        return TestROM.callLoop().load(directory);
+    }
+
+    @Test
+    public void testCodeAndData() throws Exception {
+        CodeIndex index = CodeIndex.analyse(load());
+        assertEquals(1, index.getBanks().size());
+
+        for (int address = 0xC000; address < 0xC00A; address++)
+            assertTrue(index.isCode(address), String.format("%04X", address));
+        assertTrue(index.isCode(0x8000));
+        assertFalse(index.isCode(0xC00A));
+        assertFalse(index.isCode(0xC012));
+        assertTrue(index.isCode(0xC020));
+        assertFalse(index.isCode(0xFFFC));
+        assertFalse(index.isCode(0x0000));
+
+        CodeMap bank = index.getBank(0xC000);
+        assertEquals(CodeMap.OPCODE, bank.getKind(0xC002));
+        assertEquals(CodeMap.OPERAND, bank.getKind(0xC003));
+        assertEquals(0, bank.getConflicts());
+    }
+
+    @Test
+    public void testBlocks() throws Exception {
+        CodeMap bank = CodeIndex.analyse(load()).getBank(0xC000);
+        assertEquals(6, bank.getBlockCount());
+
+        // Branch target splits LDX from the call
+        int block = bank.findBlock(0xC000);
+        assertEquals(0xC002, bank.getBlockEnd(block));
+        assertArrayEquals(new int[] { 0xC002 }, bank.getSuccessors(block));
+
+        block = bank.findBlock(0xC003);
+        assertEquals(0xC002, bank.getBlockStart(block));
+        assertEquals(CodeMap.CALL, bank.getBlockFlags(block));
+        assertArrayEquals(new int[] { 0xC010, 0xC005 },
+                bank.getSuccessors(block));
+
+        block = bank.findBlock(0xC005);
+        assertArrayEquals(new int[] { 0xC002, 0xC007 },
+                bank.getSuccessors(block));
+
+        block = bank.findBlock(0xC007);
+        assertEquals(0, bank.getBlockFlags(block));
+        assertArrayEquals(new int[] { 0xC007 }, bank.getSuccessors(block));
+
+        block = bank.findBlock(0x8010);
+        assertEquals(0xC010, bank.getBlockStart(block));
+        assertEquals(CodeMap.RETURN, bank.getBlockFlags(block));
+        assertEquals(0, bank.getSuccessors(block).length);
+
+        assertEquals(-1, bank.findBlock(0xC00A));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        NES nes = load();
+        Path cache = directory.resolve("cache");
+
+        CodeIndex index = CodeIndex.load(cache, nes);
+        Path file = cache.resolve(String.format("%016x-v%d.idx",
+                nes.getROMHash(), CodeIndex.VERSION));
+        assertTrue(Files.exists(file));
+
+        CodeIndex cached = CodeIndex.load(cache, nes);
+        assertEquals(index.getROMHash(), cached.getROMHash());
+        CodeMap expected = index.getBank(0xC000);
+        CodeMap actual = cached.getBank(0xC000);
+        assertEquals(expected.getBlockCount(), actual.getBlockCount());
+        for (int i = 0; i < expected.getBlockCount(); i++) {
+            assertEquals(expected.getBlockStart(i), actual.getBlockStart(i));
+            assertEquals(expected.getBlockEnd(i), actual.getBlockEnd(i));
+            assertEquals(expected.getBlockFlags(i), actual.getBlockFlags(i));
+            assertArrayEquals(expected.getSuccessors(i),
+                    actual.getSuccessors(i));
+        }
+        for (int address = 0xC000; address < 0x10000; address++)
+            assertEquals(expected.getKind(address), actual.getKind(address));
+    }
+}
@@ -0,0 +1,85 @@
+package me.aymen.anes.analysis;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.NES;
+import me.aymen.anes.TestROM;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CoverageTest {
+
+    @TempDir
+    Path directory;
+
+    private NES load() throws Exception {
+        return TestROM.callLoop().load(directory);
+    }
+
+    private static Coverage run(NES nes) {
+        Coverage coverage = new Coverage(nes);
+        nes.getCPU().setCoverage(coverage);
+        // 256 calls, then the final loop
+        for (int i = 0; i < 1200; i++)
+            nes.step();
+        return coverage;
+    }
+
+    @Test
+    public void testExecuted() throws Exception {
+        assumeTrue(CPU.COVERAGE, "anes.cpu.coverage is not set");
+
+        Coverage coverage = run(load());
+        int[] executed = { 0xC000, 0xC002, 0xC005, 0xC007, 0xC010, 0xC011 };
+        for (int address : executed)
+            assertTrue(coverage.isExecuted(address),
+                    String.format("%04X", address));
+        assertTrue(coverage.isExecuted(0x8000));
+        assertFalse(coverage.isExecuted(0xC001));
+        assertFalse(coverage.isExecuted(0xC00A));
+        assertEquals(executed.length, coverage.getExecutedCount());
+    }
+
+    @Test
+    public void testEdges() throws Exception {
+        assumeTrue(CPU.COVERAGE, "anes.cpu.coverage is not set");
+
+        Coverage coverage = run(load());
+        assertEquals(255, coverage.getHits(0xC002, 0xC010));
+        assertEquals(255, coverage.getHits(0xC011, 0xC005));
+        assertEquals(255, coverage.getHits(0xC005, 0xC002));
+        assertEquals(1, coverage.getHits(0xC005, 0xC007));
+        assertTrue(coverage.getHits(0xC007, 0xC007) > 0);
+        assertEquals(5, coverage.getEdgeCount());
+    }
+
+    @Test
+    public void testMergeAndExport() throws Exception {
+        assumeTrue(CPU.COVERAGE, "anes.cpu.coverage is not set");
+
+        NES nes = load();
+        Coverage coverage = run(nes);
+        Coverage total = new Coverage(nes);
+        assertEquals(coverage.getExecutedCount() + coverage.getEdgeCount(),
+                total.merge(coverage));
+        assertEquals(0, total.merge(coverage));
+
+        Path file = directory.resolve("test.cov");
+        total.write(file);
+        Coverage read = Coverage.read(file);
+        assertEquals(total.getROMHash(), read.getROMHash());
+        assertEquals(total.getExecutedCount(), read.getExecutedCount());
+        assertEquals(total.getEdgeCount(), read.getEdgeCount());
+        // Hit counts add up
+        assertEquals(2, read.getHits(0xC005, 0xC007));
+        assertEquals(0, read.merge(coverage));
+
+        read.clear();
+        assertEquals(0, read.getExecutedCount());
+        assertEquals(0, read.getEdgeCount());
+    }
+}
@@ -0,0 +1,93 @@
+package me.aymen.anes.apu;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.NES;
+import me.aymen.anes.memory.Bus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class APUTest {
+    private NES nes;
+    private Bus bus;
+
+    @BeforeEach
+    public void setUp() {
+        // Empty memory keeps the CPU looping on BRK
+        nes = new NES();
+        bus = nes.getBus();
+    }
+
+    @Test
+    public void testSamplesPerFrame() {
+        short[] samples = new short[4096];
+        nes.runFrame();
+        nes.getAPU().readSamples(samples, 0, samples.length);
+
+        nes.runFrame();
+        int count = nes.getAPU().readSamples(samples, 0, samples.length);
+        // 44100 / 60.1 frames per second
+        assertTrue(Math.abs(count - 734) <= 2, "Samples: " + count);
+    }
+
+    @Test
+    public void testPulseOutput() {
+        bus.write(0x01, 0x4015);
+        bus.write(0xBF, 0x4000);    // Duty 50%, constant volume 15
+        bus.write(0xFD, 0x4002);    // Period for ~440Hz
+        bus.write(0x08, 0x4003);    // Length load
+
+        short[] samples = new short[4096];
+        nes.runFrame();
+        int count = nes.getAPU().readSamples(samples, 0, samples.length);
+
+        int max = 0;
+        for (int i = 0; i < count; i++)
+            max = Math.max(max, Math.abs(samples[i]));
+        assertTrue(max > 1000, "Peak: " + max);
+        assertEquals(0x01, bus.read(0x4015) & 0x01);
+    }
+
+    @Test
+    public void testFrameIRQ() {
+        bus.write(0x00, 0x4017);
+        nes.runFrame();
+        nes.runFrame();
+        assertEquals(0x40, bus.read(0x4015) & 0x40);
+        // Reading status acknowledges it
+        assertEquals(0, bus.read(0x4015) & 0x40);
+    }
+
+    @Test
+    public void testDMCIRQ() {
+        CPU cpu = nes.getCPU();
+        APU apu = nes.getAPU();
+        bus.write(0x40, 0x4017);    // Frame IRQ inhibited
+        bus.write(0x8F, 0x4010);    // IRQ enabled, fastest rate
+        bus.write(0x01, 0x4013);    // 17 bytes
+        bus.write(0x10, 0x4015);
+
+        // Each fetch is an event, and the IRQ comes with the last one
+        int fetches = 1;
+        while (!apu.isIRQ()) {
+            int event = apu.getNextEvent();
+            cpu.stall(event - 1 - cpu.getCycles());
+            apu.catchUp();
+            assertFalse(apu.isIRQ());
+            assertEquals(event, apu.getNextEvent());
+
+            cpu.stall(1);
+            int before = cpu.getCycles();
+            apu.catchUp();
+            if (cpu.getCycles() != before) {
+                // Fetch stalled the CPU
+                assertEquals(before + 4, cpu.getCycles());
+                fetches++;
+            }
+            assertTrue(fetches <= 17);
+        }
+        assertEquals(17, fetches);
+        assertEquals(0x80, bus.read(0x4015) & 0x80);
+    }
+}
@@ -0,0 +1,46 @@
+package me.aymen.anes.apu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlipBufferTest {
+
+    @Test
+    // Clock to sample conversion keeps the total number of samples exact
+    public void testSampleCount() {
+        BlipBuffer blip = new BlipBuffer(4096);
+        blip.setRates(APU.CLOCK_RATE, 48000);
+
+        int total = 0;
+        short[] samples = new short[4096];
+        for (int frame = 0; frame < 60; frame++) {
+            blip.endFrame(29830);
+            total += blip.read(samples, 0, samples.length);
+        }
+
+        assertEquals(60.0 * 29830 * 48000 / APU.CLOCK_RATE, total, 1);
+    }
+
+    @Test
+    // A step settles at its delta, overshooting no more than the usual
+    // Gibbs ringing of a band-limited step
+    public void testStep() {
+        BlipBuffer blip = new BlipBuffer(4096);
+        blip.setRates(APU.CLOCK_RATE, 44100);
+        blip.addDelta(1000, 0.5f);
+        blip.endFrame(20000);
+
+        short[] samples = new short[4096];
+        int count = blip.read(samples, 0, samples.length);
+
+        int peak = 0;
+        for (int i = 0; i < count; i++)
+            peak = Math.max(peak, samples[i]);
+
+        assertTrue(peak > 0.48 * 32767, "Peak: " + peak);
+        assertTrue(peak < 0.6 * 32767, "Peak: " + peak);
+        // Nothing before the step, delayed by half the kernel
+        assertEquals(0, samples[10]);
+    }
+}
@@ -0,0 +1,55 @@
+package me.aymen.anes.capture;
+
+import me.aymen.anes.PPU;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureTest {
+
+    @Test
+    public void testY4M() throws IOException {
+        Path file = Files.createTempFile("anes", ".y4m");
+        PPU ppu = new PPU();
+
+        try (CaptureWriter writer = new CaptureWriter();
+             Y4MCapture capture = new Y4MCapture(writer, file)) {
+            for (int i = 0; i < 3; i++)
+                capture.frameCompleted(ppu);
+        }
+
+        byte[] data = Files.readAllBytes(file);
+        String header = new String(data, 0, 9, "US-ASCII");
+        assertEquals("YUV4MPEG2", header);
+        int headerSize = new String(data, "US-ASCII").indexOf('\n') + 1;
+        assertEquals(headerSize + 3 * (6 + 256 * 240 * 3 / 2), data.length);
+        Files.delete(file);
+    }
+
+    @Test
+    public void testWav() throws IOException {
+        Path file = Files.createTempFile("anes", ".wav");
+        short[] samples = new short[20000];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = (short) i;
+
+        try (CaptureWriter writer = new CaptureWriter();
+             WavCapture capture = new WavCapture(writer, file, 44100, 1)) {
+            capture.write(samples, 0, samples.length);
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(44 + samples.length * 2, data.limit());
+        assertEquals(data.limit() - 8, data.getInt(4));
+        assertEquals(samples.length * 2, data.getInt(40));
+        assertEquals(19999, data.getShort(44 + 19999 * 2));
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,127 @@
+package me.aymen.anes.debug;
+
+import me.aymen.anes.NES;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DebuggerTest {
+
+    private static final int[] PROGRAM = {
+            0xA9, 0x05,         // LDA #$05
+            0x8D, 0x00, 0x03,   // STA $0300
+            0xAE, 0x00, 0x0B,   // LDX $0B00, mirror of $0300
+            0xE8,               // INX
+            0x4C, 0x00, 0x02,   // JMP $0200
+    };
+
+    private NES nes;
+    private Debugger debugger;
+
+    @BeforeEach
+    public void setUp() {
+        nes = new NES();
+        for (int i = 0; i < PROGRAM.length; i++)
+            nes.getBus().write(PROGRAM[i], 0x0200 + i);
+        nes.getCPU().setPC(0x0200);
+        debugger = new Debugger(nes);
+        debugger.setListener(null);
+    }
+
+    @Test
+    public void testBreakpoint() {
+        debugger.addBreakpoint(0x0205);
+        nes.runFrame();
+
+        assertTrue(nes.isSuspended());
+        assertEquals(0, nes.getPPU().getFrameCount());
+        assertEquals(0x0205, nes.getCPU().getPC());
+        assertEquals(Debugger.EXECUTE, debugger.getHit().getKind());
+        assertEquals(0x05, debugger.getHit().getStatus().A);
+
+        // Suspended machines do not run
+        nes.runFrame();
+        assertEquals(0x0205, nes.getCPU().getPC());
+
+        // Resuming lets the breakpoint through once
+        int cycles = nes.getCPU().getCycles();
+        debugger.resume();
+        nes.runFrame();
+        assertEquals(0x0205, nes.getCPU().getPC());
+        assertEquals(cycles + 4 + 2 + 3 + 2 + 4, nes.getCPU().getCycles());
+
+        debugger.remove(Debugger.EXECUTE, 0x0205);
+        debugger.resume();
+        nes.runFrame();
+        assertFalse(nes.isSuspended());
+        assertEquals(1, nes.getPPU().getFrameCount());
+    }
+
+    @Test
+    public void testWatchpoints() {
+        debugger.addWatchpoint(Debugger.WRITE, 0x0B00,
+                (cpu, value) -> value == 0x05);
+        debugger.addWatchpoint(Debugger.READ, 0x0300,
+                (cpu, value) -> cpu.getX() == 0x10);
+        nes.runFrame();
+
+        Debugger.Hit hit = debugger.getHit();
+        assertEquals(Debugger.WRITE, hit.getKind());
+        assertEquals(0x0300, hit.getAddress());
+        assertEquals(0x05, hit.getValue());
+        assertEquals(0x0205, nes.getCPU().getPC());
+        assertTrue(hit.toString().startsWith("Write of $05 at $0300"),
+                hit.toString());
+
+        // Condition of the read watchpoint does not hold
+        debugger.remove(Debugger.WRITE, 0x0300);
+        debugger.resume();
+        nes.runFrame();
+        assertFalse(nes.isSuspended());
+        assertEquals(5, nes.getBus().read(0x0300));
+    }
+
+    @Test
+    public void testStoreDoesNotRead() {
+        debugger.addWatchpoint(Debugger.READ, 0x0300);
+
+        // LDA #$05, STA $0300
+        nes.step();
+        nes.step();
+        assertNull(debugger.getHit());
+        assertFalse(nes.isSuspended());
+
+        // LDX $0B00
+        nes.step();
+        assertEquals(Debugger.READ, debugger.getHit().getKind());
+        assertEquals(0x05, debugger.getHit().getValue());
+    }
+
+    @Test
+    public void testBreakpointAfterWatchpoint() {
+        debugger.addWatchpoint(Debugger.WRITE, 0x0300);
+        debugger.addBreakpoint(0x0205);
+        nes.runFrame();
+        assertEquals(Debugger.WRITE, debugger.getHit().getKind());
+        assertEquals(0x0205, nes.getCPU().getPC());
+
+        // The breakpoint on the next instruction is not skipped
+        debugger.resume();
+        nes.runFrame();
+        assertTrue(nes.isSuspended());
+        assertEquals(Debugger.EXECUTE, debugger.getHit().getKind());
+        assertEquals(0x0205, nes.getCPU().getPC());
+    }
+
+    @Test
+    public void testDetach() {
+        debugger.addBreakpoint(0x0200);
+        debugger.addWatchpoint(Debugger.WRITE, 0x0300);
+        debugger.detach();
+
+        nes.runFrame();
+        assertFalse(nes.isSuspended());
+        assertNull(nes.getDebugger());
+    }
+}
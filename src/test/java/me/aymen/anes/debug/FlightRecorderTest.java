@@ -0,0 +1,97 @@
+package me.aymen.anes.debug;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.CPUStatus;
+import me.aymen.anes.NES;
+import me.aymen.anes.exception.UnsupportedOpcodeException;
+import me.aymen.anes.memory.Bus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightRecorderTest {
+
+    private static final int[] PROGRAM = {
+            0xA9, 0x42,         // LDA #$42
+            0xA2, 0x07,         // LDX #$07
+            0x8D, 0x00, 0x03,   // STA $0300
+            0xE8,               // INX
+            0x02,               // Unsupported
+    };
+
+    private static CPU load(Bus bus) {
+        for (int i = 0; i < PROGRAM.length; i++)
+            bus.write(PROGRAM[i], 0x0200 + i);
+        CPU cpu = new CPU(bus);
+        cpu.setPC(0x0200);
+        return cpu;
+    }
+
+    @Test
+    public void testUnsupportedOpcode() {
+        CPU cpu = load(new Bus());
+        FlightRecorder recorder = new FlightRecorder();
+        cpu.setRecorder(recorder);
+
+        UnsupportedOpcodeException e = assertThrows(
+                UnsupportedOpcodeException.class, () -> {
+                    while (true)
+                        cpu.step();
+                });
+        assertEquals(0x02, e.getOpcode());
+        assertEquals(0x0208, e.getAddress());
+        assertEquals(0x0208, cpu.getPC());
+
+        assertEquals(4, recorder.size());
+        CPUStatus last = recorder.get(0);
+        assertEquals(0x0207, last.PC);
+        assertEquals(0xE8, last.op);
+        assertEquals(0x42, last.A);
+        assertEquals(0x08, last.X);
+        assertEquals(-1, last.op1);
+
+        CPUStatus store = recorder.get(1);
+        assertEquals(0x00, store.op1);
+        assertEquals(0x03, store.op2);
+        assertEquals(0x0300, store.address);
+        assertEquals(4, store.cycle);
+
+        String[] lines = recorder.dump().split("\\R");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("0200  A9 42"), lines[0]);
+        assertTrue(lines[2].matches("0204  8D 00 03 +STA +\\$0300 .*"),
+                lines[2]);
+    }
+
+    @Test
+    public void testRingKeepsLatest() {
+        CPU cpu = load(new Bus());
+        FlightRecorder recorder = new FlightRecorder(2);
+        cpu.setRecorder(recorder);
+        for (int i = 0; i < 4; i++)
+            cpu.step();
+
+        assertEquals(2, recorder.size());
+        assertEquals(4, recorder.getCount());
+        assertEquals(0x0207, recorder.get(0).PC);
+        assertEquals(0x0204, recorder.get(1).PC);
+        assertThrows(IndexOutOfBoundsException.class, () -> recorder.get(2));
+    }
+
+    @Test
+    public void testDMAStall() {
+        NES nes = new NES();
+        // STA $4014
+        int[] program = {0x8D, 0x14, 0x40};
+        for (int i = 0; i < program.length; i++)
+            nes.getBus().write(program[i], 0x0200 + i);
+        nes.getCPU().setPC(0x0200);
+        FlightRecorder recorder = new FlightRecorder();
+        nes.getCPU().setRecorder(recorder);
+
+        int cycles = nes.step();
+        assertTrue(cycles > 0xFF);
+        assertEquals(cycles, recorder.get(0).cycle);
+        assertEquals(nes.getCPU().getCycles(), recorder.get(0).cycleCount);
+    }
+}
@@ -0,0 +1,134 @@
+package me.aymen.anes.debug;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.memory.Watcher;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RewinderTest {
+
+    private static final int[] PROGRAM = {
+            0xE6, 0x10,         // INC $10
+            0xA5, 0x10,         // LDA $10
+            0x9D, 0x00, 0x03,   // STA $0300,X
+            0xE8,               // INX
+            0x4C, 0x00, 0x02,   // JMP $0200
+    };
+
+    private static NES load() {
+        NES nes = new NES();
+        for (int i = 0; i < PROGRAM.length; i++)
+            nes.getBus().write(PROGRAM[i], 0x0200 + i);
+        nes.getCPU().setPC(0x0200);
+        return nes;
+    }
+
+    @Test
+    public void testStepBack() {
+        NES nes = load();
+        NES reference = load();
+        Rewinder rewinder = new Rewinder(nes);
+
+        nes.runFrame();
+        nes.runFrame();
+        for (int i = 0; i < 1000; i++)
+            nes.step();
+        long position = rewinder.getPosition();
+
+        // Back into the previous frame, then run forward alongside a
+        // machine never rewound
+        assertTrue(rewinder.stepBack(8000));
+        assertEquals(position - 8000, rewinder.getPosition());
+        for (long i = 0; i < rewinder.getPosition(); i++)
+            reference.step();
+        assertArrayEquals(reference.saveState(), nes.saveState());
+
+        for (int i = 0; i < 8000; i++) {
+            nes.step();
+            reference.step();
+        }
+        assertArrayEquals(reference.saveState(), nes.saveState());
+        assertEquals(position, rewinder.getPosition());
+    }
+
+    @Test
+    public void testStepBackFrames() {
+        NES nes = load();
+        Rewinder rewinder = new Rewinder(nes);
+
+        nes.runFrame();
+        byte[] first = nes.saveState();
+        nes.runFrame();
+        byte[] second = nes.saveState();
+        nes.step();
+
+        assertTrue(rewinder.stepBackFrames(1));
+        assertArrayEquals(second, nes.saveState());
+        assertTrue(rewinder.stepBackFrames(1));
+        assertArrayEquals(first, nes.saveState());
+        assertEquals(1, nes.getPPU().getFrameCount());
+
+        // Only the starting point is left
+        assertTrue(rewinder.stepBackFrames(1));
+        assertEquals(0, rewinder.getPosition());
+        assertFalse(rewinder.stepBackFrames(1));
+        assertFalse(rewinder.stepBack(1));
+    }
+
+    @Test
+    public void testBounded() {
+        NES nes = load();
+        // About 3300 writes per frame
+        Rewinder rewinder = new Rewinder(nes, 2, 2000);
+
+        for (int i = 0; i < 100; i++)
+            nes.step();
+        assertEquals(0, rewinder.getOldest());
+
+        // Journal only reaches back to the last frame end
+        nes.runFrame();
+        nes.runFrame();
+        nes.runFrame();
+        long end = rewinder.getPosition();
+        for (int i = 0; i < 10; i++)
+            nes.step();
+        assertEquals(end, rewinder.getOldest());
+        assertFalse(rewinder.stepBack(11));
+        assertFalse(rewinder.stepBackFrames(2));
+        assertTrue(rewinder.stepBack(10));
+        assertEquals(end, rewinder.getPosition());
+    }
+
+    @Test
+    public void testKeepsWatcher() {
+        NES nes = load();
+        int[] writes = new int[1];
+        Watcher watcher = new Watcher() {
+            @Override
+            public void read(int index, int value) {
+            }
+
+            @Override
+            public void write(int index, int value) {
+                writes[0]++;
+            }
+        };
+        nes.getBus().setWatcher(watcher);
+        nes.getBus().watch(0x00, false, true);
+        Rewinder rewinder = new Rewinder(nes);
+
+        nes.runFrame();
+        for (int i = 0; i < 100; i++)
+            nes.step();
+        writes[0] = 0;
+
+        // Writes run again are not reported
+        assertTrue(rewinder.stepBack(50));
+        assertEquals(0, writes[0]);
+        assertSame(watcher, nes.getBus().getWatcher());
+        for (int i = 0; i < 50; i++)
+            nes.step();
+        assertTrue(writes[0] > 0);
+    }
+}
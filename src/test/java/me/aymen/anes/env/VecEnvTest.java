@@ -0,0 +1,69 @@
+package me.aymen.anes.env;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.input.Controller;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VecEnvTest {
+
+    private static NES[] create(int count) {
+        // Empty memory keeps the CPU looping on BRK
+        NES[] envs = new NES[count];
+        for (int i = 0; i < count; i++)
+            envs[i] = new NES();
+        return envs;
+    }
+
+    @Test
+    public void testObservationLayout() {
+        VecEnv env = new VecEnv(create(3), Observation.FRAME
+                | Observation.RAM, 4);
+        assertEquals(64 * 60 + 0x800, env.getObservationSize());
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(3
+                * env.getObservationSize());
+        env.setBuffer(buffer);
+        env.setFrameSkip(4);
+        env.reset();
+        env.step(new int[]{Controller.A, Controller.B << 8, 0});
+
+        assertEquals(4, env.get(0).getPPU().getFrameCount());
+        assertEquals(Controller.A,
+                env.get(0).getControllers().get(0).getButtons());
+        assertEquals(Controller.B,
+                env.get(1).getControllers().get(1).getButtons());
+
+        // RAM of the last instance follows its frame
+        int[] memory = env.get(2).getBus().memory;
+        int base = 2 * env.getObservationSize() + 64 * 60;
+        for (int i = 0; i < 0x800; i++)
+            assertEquals((byte) memory[i], buffer.get(base + i));
+    }
+
+    @Test
+    public void testReset() {
+        VecEnv env = new VecEnv(create(2), Observation.RAM, 1);
+        env.setBuffer(ByteBuffer.allocateDirect(2 * 0x800));
+        env.step(new int[]{0, 0});
+        env.step(new int[]{0, 0});
+        assertEquals(2, env.get(1).getPPU().getFrameCount());
+
+        env.reset(1);
+        assertEquals(0, env.get(1).getPPU().getFrameCount());
+        assertEquals(2, env.get(0).getPPU().getFrameCount());
+        assertEquals(2, env.getSteps());
+    }
+
+    @Test
+    public void testInvalidBuffer() {
+        VecEnv env = new VecEnv(create(2), Observation.RAM, 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> env.setBuffer(ByteBuffer.allocate(2 * 0x800)));
+        assertThrows(IllegalArgumentException.class,
+                () -> env.setBuffer(ByteBuffer.allocateDirect(0x800)));
+    }
+}
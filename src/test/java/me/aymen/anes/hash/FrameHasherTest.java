@@ -0,0 +1,81 @@
+package me.aymen.anes.hash;
+
+import me.aymen.anes.PPU;
+import me.aymen.anes.memory.Bus;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameHasherTest {
+
+    private static Path record(int divergentFrame) throws IOException {
+        Path file = Files.createTempFile("anes", ".hash");
+        Bus bus = new Bus();
+        PPU ppu = new PPU();
+
+        try (FrameHasher hasher = new FrameHasher(bus)) {
+            hasher.streamTo(file);
+            for (int frame = 0; frame < 10; frame++) {
+                bus.write(frame, 0x10);
+                if (frame == divergentFrame)
+                    bus.write(0xFF, 0x7FF);
+                hasher.frameCompleted(ppu);
+            }
+        }
+
+        return file;
+    }
+
+    @Test
+    public void testFirstDivergence() throws IOException {
+        Path a = record(-1);
+        Path b = record(6);
+        Path c = record(-1);
+
+        assertEquals(6, FrameHasher.firstDivergence(a, b));
+        assertEquals(-1, FrameHasher.firstDivergence(a, c));
+
+        Files.delete(a);
+        Files.delete(b);
+        Files.delete(c);
+    }
+
+    @Test
+    public void testRAMOutsideInternalIgnored() {
+        Bus bus = new Bus();
+        PPU ppu = new PPU();
+        FrameHasher hasher = new FrameHasher(bus);
+
+        hasher.frameCompleted(ppu);
+        bus.write(1, 0x6000);
+        hasher.frameCompleted(ppu);
+        bus.write(1, 0x0000);
+        hasher.frameCompleted(ppu);
+
+        assertEquals(hasher.getRAMHash(0), hasher.getRAMHash(1));
+        assertNotEquals(hasher.getRAMHash(1), hasher.getRAMHash(2));
+        assertEquals(hasher.getFrameHash(0), hasher.getFrameHash(2));
+    }
+
+    @Test
+    public void testForkedBus() {
+        PPU ppu = new PPU();
+        Bus parent = new Bus();
+        parent.write(1, 0x10);
+        Bus fork = parent.fork();
+        fork.write(2, 0x10);
+        Bus expected = new Bus();
+        expected.write(2, 0x10);
+
+        FrameHasher forkHasher = new FrameHasher(fork);
+        FrameHasher expectedHasher = new FrameHasher(expected);
+        forkHasher.frameCompleted(ppu);
+        expectedHasher.frameCompleted(ppu);
+
+        assertEquals(expectedHasher.getRAMHash(0), forkHasher.getRAMHash(0));
+    }
+}
@@ -0,0 +1,65 @@
+package me.aymen.anes.input;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.memory.Bus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControllerTest {
+    private NES nes;
+    private Bus bus;
+
+    @BeforeEach
+    public void setUp() {
+        nes = new NES();
+        bus = nes.getBus();
+    }
+
+    private int readPort(int index) {
+        bus.write(1, 0x4016);
+        bus.write(0, 0x4016);
+        int result = 0;
+        for (int i = 0; i < 8; i++)
+            result |= (bus.read(index) & 1) << i;
+        return result;
+    }
+
+    @Test
+    public void testShiftOrder() {
+        nes.getControllers().get(0).setButtons(Controller.A
+                | Controller.START | Controller.RIGHT);
+        nes.getControllers().get(1).setButtons(Controller.B);
+
+        assertEquals(0x89, readPort(0x4016));
+        assertEquals(0x02, readPort(0x4017));
+        // All buttons read, 1 returned afterwards
+        assertEquals(1, bus.read(0x4016) & 1);
+    }
+
+    @Test
+    public void testStrobeHigh() {
+        nes.getControllers().get(0).setButtons(Controller.A);
+        bus.write(1, 0x4016);
+        assertEquals(1, bus.read(0x4016) & 1);
+        assertEquals(1, bus.read(0x4016) & 1);
+    }
+
+    @Test
+    public void testScript() {
+        Controller controller = nes.getControllers().get(0);
+        controller.setButtons(Controller.SELECT);
+        controller.setScript(new int[]{Controller.UP, Controller.DOWN});
+
+        assertEquals(Controller.UP, readPort(0x4016));
+        nes.runFrame();
+        assertEquals(Controller.DOWN, readPort(0x4016));
+        nes.runFrame();
+        // Last entry is held
+        assertEquals(Controller.DOWN, readPort(0x4016));
+
+        controller.setScript(null);
+        assertEquals(Controller.SELECT, readPort(0x4016));
+    }
+}
@@ -1,6 +1,7 @@
 package me.aymen.anes.memory;
 
 import me.aymen.anes.CPU;
+import me.aymen.anes.NES;
 import me.aymen.anes.memory.Bus;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -42,4 +43,91 @@ class BusTest {
         bus.write(10, 0x8000);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testForkCopiesOnWrite() {
+        bus.write(1, 0x0010);
+        bus.memory[0x8000] = 0xEA;
+        Bus fork = bus.fork();
+        assertEquals(1, fork.read(0x0010));
+        assertEquals(0xEA, fork.read(0x8000));
+
+        fork.write(2, 0x0010);
+        bus.write(3, 0x0011);
+        assertEquals(1, bus.read(0x0010));
+        assertEquals(2, fork.read(0x0010));
+        assertEquals(0, fork.read(0x0011));
+        assertEquals(3, bus.read(0x0011));
+    }
+
+    @Test
+    public void testLoadCartridgeIntoFork() {
+        bus.setVerifyHash(true);
+        Bus fork = bus.fork();
+
+        fork.loadCartridge(0x7FFF, new byte[] {(byte) 0xA9, (byte) 0xEA});
+        assertEquals(0xA9, fork.read(0x7FFF));
+        assertEquals(0xEA, fork.read(0x8000));
+        assertEquals(0, bus.read(0x7FFF));
+        assertEquals(0, bus.read(0x8000));
+
+        // Hash is kept up to date, ROM aside
+        assertNotEquals(bus.getHash(), fork.getHash());
+        fork.write(0, 0x7FFF);
+        assertEquals(bus.getHash(), fork.getHash());
+    }
+
+    @Test
+    public void testIncrementalHash() {
+        bus.setVerifyHash(true);
+        long empty = bus.getHash();
+
+        bus.write(0x12, 0x0010);
+        bus.write(0x34, 0x6000);
+        long written = bus.getHash();
+        assertNotEquals(empty, written);
+
+        // Hash depends on content only, not on how it was reached
+        bus.write(0x00, 0x0010);
+        bus.write(0x00, 0x6000);
+        assertEquals(empty, bus.getHash());
+
+        // Direct writes need a rehash
+        bus.memory[0x0020] = 1;
+        assertThrows(IllegalStateException.class, () -> bus.getHash());
+        bus.rehash();
+        assertNotEquals(empty, bus.getHash());
+    }
+
+    @Test
+    public void testPeek() {
+        NES nes = new NES();
+        Bus bus = nes.getBus();
+        for (int i = 0; i < 0x800; i++)
+            bus.write(i & 0xFF, i);
+
+        // Mirrors and wrap around at the end of memory
+        int[] values = new int[0x310];
+        bus.peek(0x17F8, values, 0, values.length);
+        for (int i = 0; i < values.length; i++)
+            assertEquals(bus.read(0x17F8 + i), values[i]);
+        bus.peek(0xFFFF, values, 0, 2);
+        assertEquals(bus.read(0xFFFF), values[0]);
+        assertEquals(bus.read(0x0000), values[1]);
+
+        // Devices are not disturbed
+        nes.runFrame();
+        assertEquals(0x80, bus.peek(0x2002) & 0x80);
+        assertEquals(0x80, bus.peek(0x3FFA) & 0x80);
+        assertEquals(0x80, bus.read(0x2002) & 0x80);
+        assertEquals(0, bus.peek(0x2002) & 0x80);
+
+        nes.getControllers().get(0).setButtons(0x01);
+        bus.write(1, 0x4016);
+        bus.write(0, 0x4016);
+        assertEquals(1, bus.peek(0x4016) & 1);
+        assertEquals(1, bus.peek(0x4016) & 1);
+        assertEquals(1, bus.read(0x4016) & 1);
+        assertEquals(0, bus.peek(0x4016) & 1);
+    }
+}
@@ -0,0 +1,46 @@
+package me.aymen.anes.memory;
+
+import me.aymen.anes.NES;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountingBusTest {
+
+    @Test
+    public void testCounts() throws IOException {
+        CountingBus bus = new CountingBus();
+        NES nes = new NES(bus);
+
+        // LDA #$03, STA $4014, STA $0800
+        int[] program = {0xA9, 0x03, 0x8D, 0x14, 0x40, 0x8D, 0x00, 0x08};
+        for (int i = 0; i < program.length; i++)
+            bus.write(program[i], 0x0200 + i);
+        nes.getCPU().setPC(0x0200);
+        bus.resetCounts();
+
+        for (int i = 0; i < 3; i++)
+            nes.step();
+
+        assertEquals(8, bus.getCPUReads(0x02));
+        assertEquals(256, bus.getDMAReads(0x03));
+        assertEquals(0, bus.getCPUReads(0x03));
+        assertEquals(1, bus.getCPUWrites(0x40));
+        // Stores do not read, and mirrors count apart
+        assertEquals(0, bus.getCPUReads(0x08));
+        assertEquals(1, bus.getCPUWrites(0x08));
+        assertEquals(0, bus.getCPUWrites(0x00));
+
+        StringWriter csv = new StringWriter();
+        bus.writeCSV(csv);
+        // Same line separator on every platform
+        assertFalse(csv.toString().contains("\r"));
+        String[] lines = csv.toString().split("\n");
+        assertEquals(257, lines.length);
+        assertEquals("3,$0300,RAM,0,0,256", lines[4]);
+        assertEquals("64,$4000,APU and IO registers,0,1,0", lines[65]);
+    }
+}
@@ -0,0 +1,70 @@
+package me.aymen.anes.metrics;
+
+import me.aymen.anes.AddressMode;
+import me.aymen.anes.CPU;
+import me.aymen.anes.memory.Bus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CPUStatsTest {
+
+    private static final int[] PROGRAM = {
+            0xA0, 0xF0,         // LDY #$F0
+            0xB1, 0x10,         // LDA ($10),Y    crosses from $0320
+            0xB1, 0x12,         // LDA ($12),Y    stays in $0400 page
+            0xF0, 0x00,         // BEQ +0         taken
+            0xD0, 0x00,         // BNE +0         not taken
+    };
+
+    private Bus bus;
+    private CPU cpu;
+
+    @BeforeEach
+    public void setUp() {
+        bus = new Bus();
+        cpu = new CPU(bus);
+        cpu.setPC(0x0200);
+        for (int i = 0; i < PROGRAM.length; i++)
+            bus.write(PROGRAM[i], 0x0200 + i);
+        bus.write(0x20, 0x10);
+        bus.write(0x03, 0x11);
+        bus.write(0x00, 0x12);
+        bus.write(0x04, 0x13);
+    }
+
+    @Test
+    public void testIndirectIndexedPageCross() {
+        cpu.step();
+        assertEquals(6, cpu.step());
+        assertEquals(5, cpu.step());
+    }
+
+    @Test
+    public void testCounts() {
+        assumeTrue(CPU.STATS, "anes.cpu.stats is not set");
+
+        CPUStats stats = new CPUStats();
+        cpu.setStats(stats);
+        for (int i = 0; i < 5; i++)
+            cpu.step();
+
+        // Not visible until published
+        assertEquals(0, stats.getSnapshot().getInstructions());
+        stats.publish();
+
+        CPUStats.Snapshot snapshot = stats.getSnapshot();
+        assertEquals(5, snapshot.getInstructions());
+        assertEquals(2, snapshot.getExecutions(0xB1));
+        assertEquals(11, snapshot.getCycles(0xB1));
+        assertEquals(2, snapshot.getAddressMode(AddressMode.INDY_P));
+        assertEquals(1, snapshot.getPageCrosses());
+        assertEquals(1, snapshot.getBranchesTaken());
+        assertEquals(1, snapshot.getBranchesNotTaken());
+
+        stats.reset();
+        assertEquals(0, stats.getInstructions());
+    }
+}
@@ -0,0 +1,53 @@
+package me.aymen.anes.metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import me.aymen.anes.NES;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventsTest {
+
+    @Test
+    public void testEvents(@TempDir Path dir) throws IOException {
+        NES nes = new NES();
+        Path file = dir.resolve("events.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(FrameEvent.class);
+            recording.enable(SaveStateEvent.class);
+            recording.start();
+            nes.runFrame();
+            nes.runFrame();
+            nes.saveState();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        int frames = 0;
+        int states = 0;
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.equals("me.aymen.anes.Frame")) {
+                frames++;
+                assertEquals(frames, event.getInt("frame"));
+                // First frame starts at reset rather than at vertical blank
+                assertTrue(event.getInt("cycles") > 20000);
+                assertTrue(event.getLong("emulatedTime") > 10_000_000L);
+            } else if (name.equals("me.aymen.anes.SaveState")) {
+                states++;
+                assertTrue(event.getInt("size") > 0x8000);
+            }
+        }
+        assertEquals(2, frames);
+        assertEquals(1, states);
+    }
+}
@@ -0,0 +1,85 @@
+package me.aymen.anes.metrics;
+
+import me.aymen.anes.CPU;
+import me.aymen.anes.memory.Bus;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ProfilerTest {
+
+    private static void load(Bus bus, int address, int... program) {
+        for (int i = 0; i < program.length; i++)
+            bus.write(program[i], address + i);
+    }
+
+    @Test
+    public void testCallTree() throws IOException {
+        assumeTrue(CPU.PROFILE, "anes.cpu.profile is not set");
+
+        Bus bus = new Bus();
+        load(bus, 0x0200,
+                0x20, 0x00, 0x03,   // JSR $0300
+                0x4C, 0x00, 0x02);  // JMP $0200
+        load(bus, 0x0300,
+                0x20, 0x00, 0x04,   // JSR $0400
+                0x60);              // RTS
+        load(bus, 0x0400,
+                0xEA,               // NOP
+                0x60);              // RTS
+        CPU cpu = new CPU(bus);
+        cpu.setPC(0x0200);
+
+        Profiler profiler = new Profiler();
+        cpu.setProfiler(profiler);
+        // Six instructions per loop
+        for (int i = 0; i < 60; i++)
+            cpu.step();
+
+        assertEquals(10 * 2, profiler.getCycles(0x0400));
+        assertEquals(10 * 6, profiler.getCycles(0x0401));
+        int[] spots = profiler.getHotSpots(10);
+        assertEquals(6, spots.length);
+        assertEquals(10 * 6, profiler.getCycles(spots[0]));
+        assertEquals(0x0400, spots[5]);
+
+        List<Profiler.Edge> graph = profiler.getCallGraph();
+        assertEquals(2, graph.size());
+        for (Profiler.Edge edge : graph) {
+            assertEquals(10, edge.getCalls());
+            if (edge.getCallee() == 0x0400) {
+                assertEquals(0x0300, edge.getCaller());
+                assertEquals(10 * 8, edge.getCycles());
+            } else {
+                assertEquals(-1, edge.getCaller());
+                assertEquals(0x0300, edge.getCallee());
+                assertEquals(10 * (6 + 6 + 8), edge.getCycles());
+            }
+        }
+
+        StringWriter folded = new StringWriter();
+        profiler.writeFolded(folded);
+        assertEquals("root 90\nroot;$0300 120\nroot;$0300;$0400 80\n",
+                folded.toString());
+    }
+
+    @Test
+    public void testFullTree() {
+        Profiler profiler = new Profiler(2);
+        profiler.instruction(0x0200, 0x20, 6, 0x0300);
+        profiler.instruction(0x0300, 0x20, 6, 0x0400);
+        // Not tracked, so attributed to $0300
+        profiler.instruction(0x0400, 0xEA, 2, 0x0401);
+        profiler.instruction(0x0401, 0x60, 6, 0x0303);
+        profiler.instruction(0x0303, 0xEA, 2, 0x0304);
+
+        List<Profiler.Edge> graph = profiler.getCallGraph();
+        assertEquals(1, graph.size());
+        assertEquals(16, graph.get(0).getCycles());
+    }
+}
@@ -0,0 +1,124 @@
+package me.aymen.anes.movie;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.hash.Hash64;
+import me.aymen.anes.input.Controller;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieTest {
+
+    // Enables NMI, then keeps adding the A button of port 1 to $10.
+    // NMI counts frames in $12, IRQ acknowledges the frame counter
+    private static final int[] PROGRAM = {
+            0xA9, 0x80, 0x8D, 0x00, 0x20,
+            0xA9, 0x01, 0x8D, 0x16, 0x40,
+            0xA9, 0x00, 0x8D, 0x16, 0x40,
+            0xAD, 0x16, 0x40, 0x29, 0x01,
+            0x18, 0x65, 0x10, 0x85, 0x10,
+            0xE6, 0x11, 0x4C, 0x05, 0x80,
+            0xE6, 0x12, 0x40,
+            0xAD, 0x15, 0x40, 0x40
+    };
+
+    private static NES create() {
+        NES nes = new NES();
+        int[] memory = nes.getBus().memory;
+        for (int i = 0; i < PROGRAM.length; i++)
+            memory[0x8000 + i] = PROGRAM[i];
+        memory[0xFFFA] = 0x1E;
+        memory[0xFFFB] = 0x80;
+        memory[0xFFFC] = 0x00;
+        memory[0xFFFD] = 0x80;
+        memory[0xFFFE] = 0x21;
+        memory[0xFFFF] = 0x80;
+        nes.getCPU().reset();
+        nes.getAPU().reset();
+        return nes;
+    }
+
+    private static long ram(NES nes) {
+        return Hash64.hash(nes.getBus().memory, 0, 0x800);
+    }
+
+    @Test
+    public void testStateRoundTrip() {
+        NES nes = create();
+        nes.getControllers().get(0).setButtons(Controller.A);
+        for (int i = 0; i < 5; i++)
+            nes.runFrame();
+
+        byte[] state = nes.saveState();
+        nes.runFrame();
+        long expected = ram(nes);
+
+        NES other = create();
+        other.loadState(state);
+        other.getControllers().get(0).setButtons(Controller.A);
+        other.runFrame();
+        assertEquals(expected, ram(other));
+        assertEquals(nes.getCPU().getCycles(), other.getCPU().getCycles());
+    }
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        NES nes = create();
+        nes.runFrame();
+
+        MovieRecorder recorder = new MovieRecorder(nes, 16);
+        recorder.start();
+        long[] hashes = new long[50];
+        for (int i = 0; i < hashes.length; i++) {
+            nes.getControllers().get(0).setButtons(i % 3 == 0
+                    ? Controller.A : 0);
+            nes.runFrame();
+            hashes[i] = ram(nes);
+        }
+        Movie recorded = recorder.stop();
+        assertEquals(50, recorded.getFrames());
+        assertEquals(4, recorded.getKeyframes());
+        // Input did change what was computed
+        assertNotEquals(0, nes.getBus().memory[0x10]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recorded.write(out);
+        Movie movie = Movie.read(new ByteArrayInputStream(out.toByteArray()));
+
+        // Published buttons must not matter during playback
+        NES replay = create();
+        replay.getControllers().get(0).setButtons(Controller.A);
+        MoviePlayer player = new MoviePlayer(replay, movie);
+        player.runToEnd();
+        assertEquals(50, player.getFrame());
+        assertEquals(hashes[49], ram(replay));
+
+        player.seek(37);
+        assertEquals(hashes[36], ram(replay));
+        player.seek(5);
+        assertEquals(hashes[4], ram(replay));
+        player.runFrame();
+        assertEquals(hashes[5], ram(replay));
+    }
+
+    @Test
+    public void testFM2Import() throws Exception {
+        String fm2 = "version 3\n"
+                + "port0 1\n"
+                + "port1 1\n"
+                + "|0|........|........||\n"
+                + "|0|R......A|.......A||\n"
+                + "|0|...UT...|........||\n";
+        Movie movie = FM2.read(new StringReader(fm2));
+
+        assertEquals(3, movie.getFrames());
+        assertEquals(0, movie.getButtons(0, 0));
+        assertEquals(Controller.RIGHT | Controller.A, movie.getButtons(1, 0));
+        assertEquals(Controller.A, movie.getButtons(1, 1));
+        assertEquals(Controller.UP | Controller.START, movie.getButtons(2, 0));
+    }
+}
@@ -0,0 +1,83 @@
+package me.aymen.anes.session;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.TestROM;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testHibernateAndRestore() throws Exception {
+        String rom = new TestROM().write(directory).toString();
+        Path states = directory.resolve("states");
+        SessionStore store = new SessionStore(states, 2);
+
+        store.create("a", rom);
+        long stateHash = store.execute("a", nes -> {
+            nes.runFrame();
+            nes.getBus().write(0x42, 0x0300);
+            return nes.getStateHash();
+        });
+        store.create("b", rom);
+        store.create("c", rom);
+
+        // Least recently used session went to disk
+        assertEquals(2, store.getResident());
+        assertFalse(store.isResident("a"));
+        assertTrue(Files.exists(states.resolve("a.state")));
+        assertEquals(1, store.getHibernations());
+        assertTrue(store.getCompressionRatio() > 10,
+                "Ratio: " + store.getCompressionRatio());
+
+        assertEquals(stateHash, (long) store.execute("a",
+                NES::getStateHash));
+        assertEquals(1, store.getRestores());
+        assertEquals(2, store.getResident());
+        assertFalse(Files.exists(states.resolve("a.state")));
+        assertFalse(store.isResident("b"));
+
+        store.remove("b");
+        assertFalse(Files.exists(states.resolve("b.state")));
+        assertEquals(2, store.getSessions());
+    }
+
+    @Test
+    public void testFailedRestore() throws Exception {
+        String rom = new TestROM().write(directory).toString();
+        Path states = directory.resolve("states");
+        SessionStore store = new SessionStore(states, 1);
+        store.create("a", rom);
+        store.create("b", rom);
+
+        Path file = states.resolve("a.state");
+        byte[] snapshot = Files.readAllBytes(file);
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(RuntimeException.class,
+                () -> store.execute("a", NES::getStateHash));
+
+        // Once restored, the session can still be evicted
+        Files.write(file, snapshot);
+        store.execute("a", NES::getStateHash);
+        assertTrue(store.isResident("a"));
+        store.execute("b", NES::getStateHash);
+        assertFalse(store.isResident("a"));
+    }
+
+    @Test
+    public void testInvalidId() throws Exception {
+        SessionStore store = new SessionStore(directory, 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> store.create("../a", "rom.nes"));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.execute("missing", NES::getStateHash));
+    }
+}
@@ -0,0 +1,107 @@
+package me.aymen.anes.state;
+
+import me.aymen.anes.NES;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageStoreTest {
+
+    @Test
+    public void testDeduplication() throws Exception {
+        // Empty memory keeps the CPU looping on BRK
+        NES nes = new NES();
+        Path directory = Files.createTempDirectory("anes");
+
+        byte[][] states = new byte[20][];
+        long[] ids = new long[states.length];
+        try (PageStore store = PageStore.open(directory)) {
+            for (int i = 0; i < states.length; i++) {
+                nes.runFrame();
+                nes.getBus().write(i, 0x0300 + i);
+                states[i] = nes.saveState();
+                ids[i] = store.put(states[i]);
+            }
+
+            for (int i = 0; i < states.length; i++)
+                assertArrayEquals(states[i], store.get(ids[i]));
+            // States differ in a few pages only
+            assertTrue(store.getStoredBytes() * 10 < store.getLogicalBytes(),
+                    store.getStoredBytes() + " of " + store.getLogicalBytes());
+        }
+    }
+
+    @Test
+    public void testCompactAndReopen() throws Exception {
+        Path directory = Files.createTempDirectory("anes");
+        byte[][] states = new byte[50][];
+        long[] ids = new long[states.length];
+
+        try (PageStore store = PageStore.open(directory)) {
+            for (int i = 0; i < states.length; i++) {
+                // Every page distinct
+                states[i] = new byte[PageStore.PAGE_SIZE * 40 + 7];
+                for (int j = 0; j < states[i].length; j += PageStore.PAGE_SIZE) {
+                    states[i][j] = (byte) (j / PageStore.PAGE_SIZE);
+                    states[i][j + 1] = (byte) i;
+                }
+                ids[i] = store.put(states[i]);
+            }
+            long size = Files.size(directory.resolve("pages.dat"));
+
+            for (int i = 0; i < states.length; i += 2)
+                store.remove(ids[i]);
+            store.compact();
+            assertTrue(Files.size(directory.resolve("pages.dat")) < size);
+            assertEquals(25, store.getSnapshots());
+        }
+
+        try (PageStore store = PageStore.open(directory)) {
+            for (int i = 1; i < states.length; i += 2)
+                assertArrayEquals(states[i], store.get(ids[i]));
+            assertFalse(store.contains(ids[0]));
+
+            // Ids are not reused
+            long id = store.put(states[0]);
+            assertTrue(id > ids[states.length - 1]);
+        }
+    }
+
+    private static byte[] pages(int count, int seed) {
+        byte[] state = new byte[PageStore.PAGE_SIZE * count];
+        for (int i = 0; i < state.length; i++)
+            state[i] = (byte) (i / PageStore.PAGE_SIZE + seed);
+        return state;
+    }
+
+    @Test
+    public void testCrashKeepsLastFlush(@TempDir Path directory)
+            throws Exception {
+        byte[] state = pages(4, 1);
+        PageStore store = PageStore.open(directory);
+        long id = store.put(state);
+        store.flush();
+
+        // Slots released by the removal must not be reused before the
+        // index on disk stops referring to them
+        store.remove(id);
+        store.put(pages(4, 100));
+
+        // Reopen as after a crash, from the index written by the flush
+        try (PageStore reopened = PageStore.open(directory)) {
+            assertEquals(1, reopened.getSnapshots());
+            assertArrayEquals(state, reopened.get(id));
+        }
+
+        // Once flushed, the released slots are free again
+        store.flush();
+        assertEquals(4, store.getPages());
+        store.put(pages(4, 200));
+        assertEquals(8, store.getPages());
+        store.close();
+    }
+}
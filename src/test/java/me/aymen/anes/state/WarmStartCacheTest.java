@@ -0,0 +1,55 @@
+package me.aymen.anes.state;
+
+import me.aymen.anes.NES;
+import me.aymen.anes.TestROM;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WarmStartCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testStartFromCache() throws Exception {
+        String rom = new TestROM().write(directory).toString();
+        Path entries = directory.resolve("cache");
+        WarmStartCache cache = new WarmStartCache(entries, 30);
+
+        NES first = cache.start(rom);
+        assertEquals(30, first.getPPU().getFrameCount());
+        assertEquals(1, cache.getMisses());
+
+        NES second = cache.start(rom);
+        assertEquals(1, cache.getHits());
+        assertEquals(first.getStateHash(), second.getStateHash());
+        assertEquals(30, second.getPPU().getFrameCount());
+
+        // A different target is a different entry
+        cache.setFrame(10);
+        assertEquals(10, cache.start(rom).getPPU().getFrameCount());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testCorruptedEntry() throws Exception {
+        String rom = new TestROM().write(directory).toString();
+        Path entries = directory.resolve("cache");
+        WarmStartCache cache = new WarmStartCache(entries, 5);
+        long expected = cache.start(rom).getStateHash();
+
+        try (Stream<Path> files = Files.list(entries)) {
+            Path entry = files.findFirst().get();
+            Files.write(entry, new byte[]{1, 2, 3});
+        }
+
+        assertEquals(expected, cache.start(rom).getStateHash());
+        assertEquals(0, cache.getHits());
+    }
+}
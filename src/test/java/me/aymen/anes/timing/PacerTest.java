@@ -0,0 +1,33 @@
+package me.aymen.anes.timing;
+
+import me.aymen.anes.NES;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PacerTest {
+
+    @Test
+    // 30 frames take about half a second, spent mostly parked
+    public void testFrameClock() {
+        Pacer pacer = new Pacer(new NES());
+        long start = System.nanoTime();
+        for (int i = 0; i < 30; i++)
+            pacer.runFrame();
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed >= 29 * Pacer.FRAME_NANOS, "Elapsed " + elapsed);
+        assertTrue(pacer.getParkedNanos() > elapsed / 2);
+    }
+
+    @Test
+    public void testTurbo() {
+        Pacer pacer = new Pacer(new NES());
+        pacer.setMode(PacingMode.TURBO);
+        for (int i = 0; i < 30; i++)
+            pacer.runFrame();
+
+        assertEquals(0, pacer.getParkedNanos());
+        assertEquals(30, pacer.getFrames());
+    }
+}
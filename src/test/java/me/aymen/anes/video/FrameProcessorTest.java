@@ -0,0 +1,57 @@
+package me.aymen.anes.video;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static me.aymen.anes.PPU.HEIGHT;
+import static me.aymen.anes.PPU.WIDTH;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameProcessorTest {
+
+    private static int[] pattern() {
+        int[] frame = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++)
+            frame[i] = (i * 7 + i / WIDTH) & 0x3F;
+        return frame;
+    }
+
+    @Test
+    // Parallel result must match running the filter on a single stripe
+    public void testStripesMatchSerial() {
+        int[] frame = pattern();
+        int[] argb = new int[frame.length];
+        Palette.convert(frame, argb, PixelFormat.ARGB8888);
+
+        Filter[] filters = {new NearestFilter(3), new Scale2xFilter(),
+                new NtscFilter()};
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        for (Filter filter : filters) {
+            int scale = filter.getScale();
+            int[] expected = new int[argb.length * scale * scale];
+            filter.apply(argb, expected, 0, HEIGHT);
+
+            FrameProcessor processor = new FrameProcessor(filter, pool);
+            assertArrayEquals(expected, processor.process(frame));
+        }
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void testNearest() {
+        int[] src = new int[WIDTH * HEIGHT];
+        src[WIDTH + 1] = 5;
+        int[] dst = new int[src.length * 4];
+        new NearestFilter(2).apply(src, dst, 0, HEIGHT);
+
+        int width = WIDTH * 2;
+        assertEquals(5, dst[2 * width + 2]);
+        assertEquals(5, dst[2 * width + 3]);
+        assertEquals(5, dst[3 * width + 2]);
+        assertEquals(5, dst[3 * width + 3]);
+        assertEquals(0, dst[2 * width + 4]);
+    }
+}
@@ -0,0 +1,54 @@
+package me.aymen.anes.video;
+
+import me.aymen.anes.PPU;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaletteTest {
+
+    @Test
+    public void testNoEmphasis() {
+        assertEquals(0xFF666666, Palette.convert(0x00, PixelFormat.ARGB8888));
+        assertEquals(0xFF000000, Palette.convert(0x0F, PixelFormat.ARGB8888));
+    }
+
+    @Test
+    // Red emphasis darkens green and blue only
+    public void testRedEmphasis() {
+        PPU ppu = new PPU();
+        ppu.setMask(0x20);
+        int argb = Palette.convert(ppu.pixel(0x30), PixelFormat.ARGB8888);
+        assertEquals(0xFF, (argb >> 16) & 0xFF);
+        assertTrue(((argb >> 8) & 0xFF) < 0xFE);
+        assertTrue((argb & 0xFF) < 0xFF);
+    }
+
+    @Test
+    public void testGrayscaleMask() {
+        PPU ppu = new PPU();
+        ppu.setMask(0x01);
+        assertEquals(0x20, ppu.pixel(0x2A));
+    }
+
+    @Test
+    public void testConvertFrame() {
+        int[] src = {0x00, 0x30, 0x1FF};
+        int[] argb = new int[3];
+        short[] rgb565 = new short[3];
+        byte[] gray = new byte[3];
+
+        Palette.convert(src, argb, PixelFormat.ARGB8888);
+        Palette.convert(src, rgb565);
+        Palette.convert(src, gray);
+
+        for (int i = 0; i < src.length; i++) {
+            assertEquals(Palette.convert(src[i], PixelFormat.ARGB8888),
+                    argb[i]);
+            assertEquals(Palette.convert(src[i], PixelFormat.RGB565),
+                    rgb565[i] & 0xFFFF);
+            assertEquals(Palette.convert(src[i], PixelFormat.GRAYSCALE),
+                    gray[i] & 0xFF);
+        }
+    }
+}